@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.TimeUnit;
+import la.alsocan.jsonshapeshifter.Transformation;
+import la.alsocan.jsonshapeshifter.bindings.Binding;
+import la.alsocan.jsonshapeshifter.schemas.ENodeType;
+import la.alsocan.jsonshapeshifter.schemas.Schema;
+import la.alsocan.jsonshapeshifter.schemas.SchemaNode;
+import la.alsocan.symbiot.api.to.bindings.AbstractNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.ArrayConstantBindingTo;
+import la.alsocan.symbiot.api.to.bindings.ArrayNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.BindingTo;
+import la.alsocan.symbiot.api.to.bindings.BooleanConstantBindingTo;
+import la.alsocan.symbiot.api.to.bindings.BooleanNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.IntegerConstantBindingTo;
+import la.alsocan.symbiot.api.to.bindings.IntegerNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.NumberConstantBindingTo;
+import la.alsocan.symbiot.api.to.bindings.NumberNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.StringConstantBindingTo;
+import la.alsocan.symbiot.api.to.bindings.StringNodeBindingTo;
+import la.alsocan.symbiot.core.streams.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building each kind of binding (done for every binding of every 
+ * stream build). Node bindings point to a node of the array-heavy shape.
+ * 
+ * Handlebars bindings are left aside, as they cannot be created yet.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BindingBuildBenchmark {
+	
+	@Param({
+		ArrayConstantBindingTo.TYPE, ArrayNodeBindingTo.TYPE, 
+		BooleanConstantBindingTo.TYPE, BooleanNodeBindingTo.TYPE, 
+		IntegerConstantBindingTo.TYPE, IntegerNodeBindingTo.TYPE, 
+		NumberConstantBindingTo.TYPE, NumberNodeBindingTo.TYPE, 
+		StringConstantBindingTo.TYPE, StringNodeBindingTo.TYPE})
+	private String type;
+	
+	private Stream stream;
+	private BindingTo binding;
+	
+	@Setup
+	public void setUp() {
+		
+		Schema schema = Schema.buildSchema(Shape.ARRAYS.schema(new ObjectMapper()));
+		stream = new Stream(1, 1, 1, new Transformation(schema, schema));
+		
+		switch (type) {
+			case ArrayConstantBindingTo.TYPE:
+				ArrayConstantBindingTo arrayConstant = new ArrayConstantBindingTo();
+				arrayConstant.setNbIterations(10);
+				binding = arrayConstant;
+				break;
+			case BooleanConstantBindingTo.TYPE:
+				BooleanConstantBindingTo booleanConstant = new BooleanConstantBindingTo();
+				booleanConstant.setConstant(true);
+				binding = booleanConstant;
+				break;
+			case IntegerConstantBindingTo.TYPE:
+				IntegerConstantBindingTo integerConstant = new IntegerConstantBindingTo();
+				integerConstant.setConstant(42);
+				binding = integerConstant;
+				break;
+			case NumberConstantBindingTo.TYPE:
+				NumberConstantBindingTo numberConstant = new NumberConstantBindingTo();
+				numberConstant.setConstant(4.2);
+				binding = numberConstant;
+				break;
+			case StringConstantBindingTo.TYPE:
+				StringConstantBindingTo stringConstant = new StringConstantBindingTo();
+				stringConstant.setConstant("constant");
+				binding = stringConstant;
+				break;
+			case ArrayNodeBindingTo.TYPE:
+				binding = nodeBinding(new ArrayNodeBindingTo(), schema, ENodeType.ARRAY);
+				break;
+			case BooleanNodeBindingTo.TYPE:
+				binding = nodeBinding(new BooleanNodeBindingTo(), schema, ENodeType.BOOLEAN);
+				break;
+			case IntegerNodeBindingTo.TYPE:
+				binding = nodeBinding(new IntegerNodeBindingTo(), schema, ENodeType.INTEGER);
+				break;
+			case NumberNodeBindingTo.TYPE:
+				binding = nodeBinding(new NumberNodeBindingTo(), schema, ENodeType.NUMBER);
+				break;
+			case StringNodeBindingTo.TYPE:
+				binding = nodeBinding(new StringNodeBindingTo(), schema, ENodeType.STRING);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown binding type '" + type + "'");
+		}
+	}
+	
+	@Benchmark
+	public Binding<?> build() {
+		return binding.build(stream);
+	}
+	
+	private static BindingTo nodeBinding(AbstractNodeBindingTo binding, Schema schema, ENodeType nodeType) {
+		
+		// any node of that type will do (the last one found is kept)
+		for (SchemaNode node : schema) {
+			if (node.getType() == nodeType) {
+				binding.setSourceNode(node.getSchemaPointer());
+				binding.setTargetNode(node.getSchemaPointer());
+			}
+		}
+		return binding;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import la.alsocan.jsonshapeshifter.schemas.Schema;
+import la.alsocan.symbiot.access.BindingDao;
+import la.alsocan.symbiot.access.InputDao;
+import la.alsocan.symbiot.access.OutputDao;
+import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.access.storage.SchemaMigrator;
+import la.alsocan.symbiot.api.to.StreamTo;
+import la.alsocan.symbiot.api.to.bindings.BindingTo;
+import la.alsocan.symbiot.api.to.bindings.StringConstantBindingTo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+/**
+ * Cost of the database round trips done when serving the API and building 
+ * streams, against an embedded (in-memory) Derby database. One stream has 
+ * all the nodes of the shape bound, among a hundred streams.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DaoBenchmark {
+	
+	private static final String URL = "jdbc:derby:memory:symbiotBenchmark";
+	private static final int STREAMS = 100;
+	
+	@Param({"SMALL", "LARGE", "NESTED", "ARRAYS"})
+	private Shape shape;
+	
+	private Fixture fixture;
+	private StreamDao streamDao;
+	private BindingDao bindingDao;
+	private int boundStreamId;
+	private int emptyStreamId;
+	private StringConstantBindingTo binding;
+	
+	@Setup
+	public void setUp() throws Exception {
+		
+		ObjectMapper om = new ObjectMapper();
+		fixture = new Fixture(om);
+		DBI dbi = new DBI(URL + ";create=true");
+		try (Handle h = dbi.open()) {
+			new SchemaMigrator().migrate(h.getConnection());
+		}
+		streamDao = dbi.onDemand(StreamDao.class);
+		bindingDao = new BindingDao(dbi);
+		
+		// streams between an input and an output of the shape
+		int inputId = new InputDao(dbi).insert(fixture.input(shape));
+		int outputId = new OutputDao(dbi).insert(fixture.output(shape));
+		List<BindingTo> bindings = shape.bindings(Schema.buildSchema(shape.schema(om)));
+		boundStreamId = streamDao.insert(inputId, outputId, bindings.size(), "");
+		for (BindingTo b : bindings) {
+			bindingDao.insert(b, boundStreamId);
+		}
+		emptyStreamId = streamDao.insert(inputId, outputId, bindings.size(), "");
+		for (int i = 2; i < STREAMS; i++) {
+			streamDao.insert(inputId, outputId, bindings.size(), "");
+		}
+		
+		binding = new StringConstantBindingTo();
+		binding.setTargetNode(bindings.get(0).getTargetNode());
+		binding.setConstant("constant");
+	}
+	
+	@TearDown
+	public void tearDown() {
+		
+		try {
+			new DBI(URL + ";drop=true").open().close();
+		} catch (RuntimeException ex) {
+			// derby reports a successful drop as an error
+			if (!(ex.getCause() instanceof SQLException)) {
+				throw ex;
+			}
+		}
+		fixture.delete();
+	}
+	
+	@Benchmark
+	public StreamTo findStream() {
+		return streamDao.findById(boundStreamId);
+	}
+	
+	@Benchmark
+	public List<StreamTo> findStreamPage() {
+		return streamDao.findPage(0, STREAMS);
+	}
+	
+	@Benchmark
+	public List<BindingTo> findBindings() {
+		return bindingDao.findAll(boundStreamId);
+	}
+	
+	@Benchmark
+	public int insertAndDeleteBinding() {
+		int id = bindingDao.insert(binding, emptyStreamId);
+		bindingDao.delete(id, emptyStreamId);
+		return id;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import la.alsocan.symbiot.api.to.drivers.DriverTo;
+import la.alsocan.symbiot.api.to.drivers.InputDefinitionTo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of looking up a definition of a driver (done on every stream build): 
+ * the hash index built when the driver is deserialized, compared to the 
+ * sorted map which was lazily built before.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DefinitionLookupBenchmark {
+	
+	@Param({"4", "32", "256"})
+	private int definitions;
+	
+	private DriverTo driver;
+	private Map<String, InputDefinitionTo> sortedIndex;
+	private String[] ids;
+	private int next;
+	
+	@Setup
+	public void setUp() throws Exception {
+		
+		// a driver as read from the drivers folder (long, similar ids)
+		ObjectMapper om = new ObjectMapper();
+		ObjectNode json = om.createObjectNode()
+				  .put("id", "benchmark-driver")
+				  .put("name", "benchmark driver")
+				  .put("version", "1.0.0");
+		ArrayNode defs = json.putArray("inputDefinitions");
+		ids = new String[definitions];
+		for (int i = 0; i < definitions; i++) {
+			ids[i] = "benchmark-driver-input-definition-" + i;
+			defs.addObject()
+					  .put("type", "apiPushInputDefinition")
+					  .put("id", ids[i])
+					  .put("name", "definition " + i)
+					  .putObject("schemaNode").put("type", "object");
+		}
+		json.putArray("outputDefinitions");
+		driver = om.treeToValue(json, DriverTo.class);
+		
+		sortedIndex = new TreeMap<>();
+		driver.getInputDefinitions().forEach((def) -> sortedIndex.put(def.getId(), def));
+	}
+	
+	@Benchmark
+	public InputDefinitionTo hashIndex() {
+		return driver.getInputDefinition(nextId());
+	}
+	
+	@Benchmark
+	public InputDefinitionTo sortedIndex() {
+		return sortedIndex.get(nextId());
+	}
+	
+	private String nextId() {
+		
+		// a new string (as read from the database), so that hash codes are not cached
+		String id = ids[next];
+		next = (next + 1) % ids.length;
+		return new String(id);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import la.alsocan.symbiot.access.DriverDao;
+import la.alsocan.symbiot.api.to.inputs.ApiPushInputTo;
+import la.alsocan.symbiot.api.to.inputs.InputTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.api.to.outputs.PollingOutputTo;
+
+/**
+ * A drivers folder holding one driver, with an input and an output definition 
+ * per {@link Shape}, and the inputs/outputs which use them.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+class Fixture {
+	
+	static final String DRIVER_ID = "benchmark-driver";
+	
+	private final File folder;
+	private final DriverDao driverDao;
+	
+	Fixture(ObjectMapper om) throws IOException {
+		
+		ObjectNode json = om.createObjectNode()
+				  .put("id", DRIVER_ID)
+				  .put("name", "benchmark driver")
+				  .put("version", "1.0.0");
+		ArrayNode inputDefs = json.putArray("inputDefinitions");
+		ArrayNode outputDefs = json.putArray("outputDefinitions");
+		for (Shape shape : Shape.values()) {
+			inputDefs.addObject()
+					  .put("type", "apiPushInputDefinition")
+					  .put("id", inputDefinitionId(shape))
+					  .put("name", shape + " input")
+					  .set("schemaNode", shape.schema(om));
+			outputDefs.addObject()
+					  .put("type", "pollingOutputDefinition")
+					  .put("id", outputDefinitionId(shape))
+					  .put("name", shape + " output")
+					  .put("ttl", 60)
+					  .set("schemaNode", shape.schema(om));
+		}
+		
+		folder = Files.createTempDirectory("symbiot-bench-drivers").toFile();
+		om.writeValue(new File(folder, DRIVER_ID + ".json"), json);
+		driverDao = new DriverDao(om, folder);
+	}
+	
+	DriverDao getDriverDao() {
+		return driverDao;
+	}
+	
+	InputTo input(Shape shape) {
+		
+		ApiPushInputTo to = new ApiPushInputTo();
+		to.setDriverId(DRIVER_ID);
+		to.setInputDefinitionId(inputDefinitionId(shape));
+		to.setName(shape + " input");
+		return to;
+	}
+	
+	OutputTo output(Shape shape) {
+		
+		PollingOutputTo to = new PollingOutputTo();
+		to.setDriverId(DRIVER_ID);
+		to.setOutputDefinitionId(outputDefinitionId(shape));
+		to.setName(shape + " output");
+		to.setTtl(60);
+		return to;
+	}
+	
+	void delete() {
+		
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		folder.delete();
+	}
+	
+	private static String inputDefinitionId(Shape shape) {
+		return shape.name().toLowerCase() + "-input";
+	}
+	
+	private static String outputDefinitionId(Shape shape) {
+		return shape.name().toLowerCase() + "-output";
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.List;
+import la.alsocan.jsonshapeshifter.schemas.Schema;
+import la.alsocan.jsonshapeshifter.schemas.SchemaNode;
+import la.alsocan.symbiot.api.to.bindings.AbstractNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.ArrayNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.BindingTo;
+import la.alsocan.symbiot.api.to.bindings.BooleanNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.IntegerNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.NumberNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.StringNodeBindingTo;
+
+/**
+ * Shapes of device payloads used by the benchmarks, each with its JSON schema 
+ * and a matching payload. Streams built from a shape use the same schema for 
+ * input and output, every node being bound to its source counterpart (so that 
+ * transformations touch the whole payload).
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public enum Shape {
+	
+	// a few fields (a typical sensor reading)
+	SMALL {
+		@Override
+		void fill(ObjectNode schema, ObjectNode payload) {
+			fields(schema, payload, 5);
+		}
+	},
+	
+	// many fields (a full device report)
+	LARGE {
+		@Override
+		void fill(ObjectNode schema, ObjectNode payload) {
+			fields(schema, payload, 200);
+		}
+	},
+	
+	// objects nested 8 levels deep, with a few fields at each level
+	NESTED {
+		@Override
+		void fill(ObjectNode schema, ObjectNode payload) {
+			ObjectNode s = schema;
+			ObjectNode p = payload;
+			for (int depth = 0; depth < 8; depth++) {
+				fields(s, p, 3);
+				s = properties(s).putObject("child").put("type", "object");
+				p = p.putObject("child");
+			}
+			fields(s, p, 3);
+		}
+	},
+	
+	// an array of readings (a batch sent by a gateway)
+	ARRAYS {
+		@Override
+		void fill(ObjectNode schema, ObjectNode payload) {
+			fields(schema, payload, 2);
+			ObjectNode items = properties(schema).putObject("readings")
+					  .put("type", "array")
+					  .putObject("items").put("type", "object");
+			ArrayNode readings = payload.putArray("readings");
+			ObjectNode item = readings.addObject();
+			fields(items, item, 3);
+			for (int i = 1; i < 500; i++) {
+				readings.add(item.deepCopy());
+			}
+		}
+	};
+	
+	private static final String[] TYPES = {"string", "integer", "number", "boolean"};
+	
+	abstract void fill(ObjectNode schema, ObjectNode payload);
+	
+	public ObjectNode schema(ObjectMapper om) {
+		ObjectNode schema = om.createObjectNode().put("type", "object");
+		fill(schema, om.createObjectNode());
+		return schema;
+	}
+	
+	public ObjectNode payload(ObjectMapper om) {
+		ObjectNode payload = om.createObjectNode();
+		fill(om.createObjectNode(), payload);
+		return payload;
+	}
+	
+	/**
+	 * @param schema The (compiled) schema of the shape
+	 * @return A binding per node, parents first (as they are created through the API)
+	 */
+	public List<BindingTo> bindings(Schema schema) {
+		
+		List<BindingTo> bindings = new ArrayList<>();
+		for (SchemaNode node : schema) {
+			AbstractNodeBindingTo binding;
+			switch (node.getType()) {
+				case ARRAY:
+					binding = new ArrayNodeBindingTo();
+					break;
+				case STRING:
+					binding = new StringNodeBindingTo();
+					break;
+				case INTEGER:
+					binding = new IntegerNodeBindingTo();
+					break;
+				case NUMBER:
+					binding = new NumberNodeBindingTo();
+					break;
+				case BOOLEAN:
+					binding = new BooleanNodeBindingTo();
+					break;
+				default:
+					continue;
+			}
+			binding.setTargetNode(node.getSchemaPointer());
+			binding.setSourceNode(node.getSchemaPointer());
+			bindings.add(binding);
+		}
+		bindings.sort((b1, b2) -> b1.getTargetNode().compareTo(b2.getTargetNode()));
+		return bindings;
+	}
+	
+	private static void fields(ObjectNode schema, ObjectNode payload, int count) {
+		
+		ObjectNode properties = properties(schema);
+		for (int i = 0; i < count; i++) {
+			String type = TYPES[i % TYPES.length];
+			String name = "field" + i;
+			properties.putObject(name).put("type", type);
+			switch (type) {
+				case "string":
+					payload.put(name, "value of field " + i);
+					break;
+				case "integer":
+					payload.put(name, i * 1000);
+					break;
+				case "number":
+					payload.put(name, i * 1.5);
+					break;
+				default:
+					payload.put(name, i % 2 == 0);
+					break;
+			}
+		}
+	}
+	
+	private static ObjectNode properties(ObjectNode schema) {
+		return schema.has("properties") ? (ObjectNode)schema.get("properties") : schema.putObject("properties");
+	}
+}
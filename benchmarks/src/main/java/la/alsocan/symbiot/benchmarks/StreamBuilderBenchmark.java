@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import la.alsocan.jsonshapeshifter.schemas.Schema;
+import la.alsocan.symbiot.api.to.StreamTo;
+import la.alsocan.symbiot.api.to.bindings.BindingTo;
+import la.alsocan.symbiot.api.to.inputs.InputTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.core.streams.SchemaCache;
+import la.alsocan.symbiot.core.streams.Stream;
+import la.alsocan.symbiot.core.streams.StreamBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building a stream from its stored parts (done for every stream at 
+ * startup, and whenever a stream or one of its bindings changes), with the 
+ * schemas found in the cache or compiled again.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamBuilderBenchmark {
+	
+	@Param({"SMALL", "LARGE", "NESTED", "ARRAYS"})
+	private Shape shape;
+	
+	private Fixture fixture;
+	private SchemaCache schemaCache;
+	private StreamTo to;
+	private InputTo inputTo;
+	private OutputTo outputTo;
+	private List<BindingTo> bindings;
+	
+	@Setup
+	public void setUp() throws Exception {
+		
+		ObjectMapper om = new ObjectMapper();
+		fixture = new Fixture(om);
+		schemaCache = new SchemaCache(new MetricRegistry());
+		to = new StreamTo();
+		to.setId(1);
+		inputTo = fixture.input(shape);
+		outputTo = fixture.output(shape);
+		bindings = shape.bindings(Schema.buildSchema(shape.schema(om)));
+	}
+	
+	@TearDown
+	public void tearDown() {
+		fixture.delete();
+	}
+	
+	@Benchmark
+	public Stream cachedSchemas() {
+		return StreamBuilder.build(to, inputTo, outputTo, fixture.getDriverDao(), schemaCache, bindings);
+	}
+	
+	@Benchmark
+	public Stream uncachedSchemas() {
+		schemaCache.invalidate(Fixture.DRIVER_ID);
+		return StreamBuilder.build(to, inputTo, outputTo, fixture.getDriverDao(), schemaCache, bindings);
+	}
+}
@@ -25,29 +25,59 @@ package la.alsocan.symbiot;
 
 import com.fasterxml.jackson.databind.SerializationFeature;
 import io.dropwizard.Application;
+import io.dropwizard.db.ManagedPooledDataSource;
 import io.dropwizard.jdbi.DBIFactory;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import java.sql.SQLException;
+import la.alsocan.symbiot.cli.BenchPushCommand;
 import la.alsocan.symbiot.cli.DropCreateDatabaseCommand;
+import la.alsocan.symbiot.cli.MigrateDatabaseCommand;
 import la.alsocan.symbiot.health.PingHealthCheck;
 import la.alsocan.symbiot.access.BindingDao;
 import la.alsocan.symbiot.access.DriverDao;
 import la.alsocan.symbiot.access.InputDao;
 import la.alsocan.symbiot.access.OutputDao;
 import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.access.storage.SchemaMigrator;
+import la.alsocan.symbiot.access.storage.StorageBackend;
 import la.alsocan.symbiot.api.resources.BindingResource;
+import la.alsocan.symbiot.api.resources.DeadLetterResource;
 import la.alsocan.symbiot.api.resources.DriverResource;
 import la.alsocan.symbiot.api.resources.InputResource;
 import la.alsocan.symbiot.api.resources.OutputResource;
 import la.alsocan.symbiot.api.resources.PingResource;
+import la.alsocan.symbiot.api.resources.RuntimeResource;
 import la.alsocan.symbiot.api.resources.StreamResource;
+import la.alsocan.symbiot.api.to.outputs.FilesystemOutputTo;
+import la.alsocan.symbiot.api.to.outputs.PollingOutputTo;
+import la.alsocan.symbiot.api.to.outputs.WebhookOutputTo;
 import la.alsocan.symbiot.core.StreamLoader;
+import la.alsocan.symbiot.core.inputs.ApiPullEngine;
+import la.alsocan.symbiot.core.inputs.FilesystemInputWatcher;
+import la.alsocan.symbiot.core.inputs.WriteAheadLog;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.outputs.FilesystemOutputWriter;
+import la.alsocan.symbiot.core.outputs.LoggingOutputHandler;
+import la.alsocan.symbiot.core.outputs.OutputDispatcher;
+import la.alsocan.symbiot.core.outputs.PollingOutputStore;
+import la.alsocan.symbiot.core.outputs.WebhookOutputHandler;
+import la.alsocan.symbiot.core.streams.DeadLetterReplayer;
+import la.alsocan.symbiot.core.streams.DeadLetterStore;
+import la.alsocan.symbiot.core.streams.LegalNodeIndex;
+import la.alsocan.symbiot.core.streams.SchemaCache;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
 
 /**
  * @author Florian Poulin - https://github.com/fpoulin
  */
 public class ServerApplication extends Application<ServerConfiguration> {
+	
+	// cache prepared statements per pooled connection (the DAOs use fixed statements)
+	private static final String JDBC_INTERCEPTORS = "StatementCache(prepared=true,max=256)";
 
 	public static void main(String[] args) throws Exception {
 		new ServerApplication().run(args);
@@ -61,10 +91,12 @@ public class ServerApplication extends Application<ServerConfiguration> {
 	@Override
 	public void initialize(Bootstrap<ServerConfiguration> bootstrap) {
 		bootstrap.addCommand(new DropCreateDatabaseCommand("drop-and-create-db"));
+		bootstrap.addCommand(new MigrateDatabaseCommand("migrate"));
+		bootstrap.addCommand(new BenchPushCommand("bench-push"));
 	}
 
 	@Override
-	public void run(ServerConfiguration conf, Environment env) throws ClassNotFoundException {
+	public void run(ServerConfiguration conf, Environment env) throws ClassNotFoundException, SQLException {
 
 		// health checks
 		env.healthChecks().register("ping", new PingHealthCheck());
@@ -72,24 +104,95 @@ public class ServerApplication extends Application<ServerConfiguration> {
 		// configure object mapper
 		env.getObjectMapper().configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
 		
-		// init JDBI
+		// init JDBI (the storage backend is selected by the url)
+		final StorageBackend storage = StorageBackend.forUrl(conf.getDataSourceFactory().getUrl());
 		final DBIFactory factory = new DBIFactory();
-		final DBI jdbi = factory.build(env, conf.getDataSourceFactory(), "derby");
+		final ManagedPooledDataSource dataSource = (ManagedPooledDataSource)conf.getDataSourceFactory().build(env.metrics(), storage.getName());
+		dataSource.setJdbcInterceptors(JDBC_INTERCEPTORS);
+		final DBI jdbi = factory.build(env, conf.getDataSourceFactory(), dataSource, storage.getName());
+		try (Handle h = jdbi.open()) {
+			new SchemaMigrator().migrate(h.getConnection());
+		}
 		final StreamDao streamDao = jdbi.onDemand(StreamDao.class);
 		final BindingDao bindingDao = new BindingDao(jdbi);
 		final DriverDao driverDao = new DriverDao(env.getObjectMapper());
 		final InputDao inputDao = new InputDao(jdbi);
 		final OutputDao outputDao = new OutputDao(jdbi);
 		
+		// compiled schemas and streams
+		final SchemaCache schemaCache = new SchemaCache(env.metrics());
+		final LegalNodeIndex legalNodeIndex = new LegalNodeIndex(env.metrics());
+		final StreamRegistry streamRegistry = new StreamRegistry(bindingDao, driverDao, inputDao, outputDao, streamDao, schemaCache);
+		
+		// drivers are hot-reloaded (only what depends on a changed definition is rebuilt)
+		env.lifecycle().manage(driverDao);
+		driverDao.addListener((change) -> {
+			change.getDriverIds().forEach((driverId) -> {
+				schemaCache.invalidate(driverId);
+				legalNodeIndex.invalidate(driverId);
+			});
+			streamRegistry.recompile(change);
+		});
+		
+		// per-stage timers of the ingestion path
+		final StageMetrics stageMetrics = new StageMetrics(conf.getStageMetricsConfiguration(), env.metrics());
+		
+		// dead letters (managed first, so that they stop last)
+		final DeadLetterStore deadLetterStore = new DeadLetterStore(conf.getDeadLetterConfiguration(), 
+				  env.getObjectMapper(), env.metrics());
+		env.lifecycle().manage(deadLetterStore);
+		
+		// output handlers (managed before the dispatcher, so that they stop after it)
+		final WebhookOutputHandler webhookHandler = new WebhookOutputHandler(conf.getWebhookConfiguration(), 
+				  driverDao, env.getObjectMapper(), env.metrics());
+		env.lifecycle().manage(webhookHandler);
+		final PollingOutputStore pollingStore = new PollingOutputStore(conf.getPollingConfiguration(), env.getObjectMapper());
+		env.lifecycle().manage(pollingStore);
+		final FilesystemOutputWriter filesystemWriter = new FilesystemOutputWriter(conf.getFilesystemConfiguration(), env.getObjectMapper());
+		env.lifecycle().manage(filesystemWriter);
+		
+		// output dispatch engine
+		final OutputDispatcher outputDispatcher = new OutputDispatcher(conf.getDispatchConfiguration(), 
+				  new LoggingOutputHandler(env.getObjectMapper()), deadLetterStore, stageMetrics, env.metrics());
+		outputDispatcher.register(WebhookOutputTo.TYPE, webhookHandler);
+		outputDispatcher.register(PollingOutputTo.TYPE, pollingStore);
+		outputDispatcher.register(FilesystemOutputTo.TYPE, filesystemWriter);
+		env.lifecycle().manage(outputDispatcher);
+		final DeadLetterReplayer deadLetterReplayer = new DeadLetterReplayer(conf.getDeadLetterConfiguration(), 
+				  deadLetterStore, streamRegistry, outputDispatcher);
+		env.lifecycle().manage(deadLetterReplayer);
+		
+		// stream execution and inputs
+		final StreamExecutor streamExecutor = new StreamExecutor(conf.getStreamRuntimeConfiguration(), 
+				  streamRegistry, outputDispatcher, deadLetterStore, stageMetrics, env.metrics());
+		
+		// the log stops after the runtime (payloads completed while draining are checkpointed)
+		final WriteAheadLog writeAheadLog = new WriteAheadLog(conf.getWriteAheadLogConfiguration(), 
+				  env.getObjectMapper(), streamExecutor, stageMetrics, env.metrics());
+		env.lifecycle().manage(writeAheadLog);
+		env.lifecycle().manage(streamExecutor);
+		final ApiPullEngine apiPullEngine = new ApiPullEngine(conf.getApiPullConfiguration(), streamRegistry, 
+				  streamExecutor, driverDao, env.getObjectMapper(), env.metrics());
+		env.lifecycle().manage(apiPullEngine);
+		final FilesystemInputWatcher filesystemWatcher = new FilesystemInputWatcher(conf.getFilesystemInputConfiguration(), 
+				  streamRegistry, streamExecutor, env.getObjectMapper(), env.metrics());
+		env.lifecycle().manage(filesystemWatcher);
+		
 		// register resources
 		env.jersey().register(new PingResource(conf.getEcho()));
-		env.jersey().register(new StreamResource(bindingDao, driverDao, inputDao, outputDao, streamDao));
-		env.jersey().register(new BindingResource(bindingDao, driverDao, inputDao, outputDao, streamDao));
+		env.jersey().register(new StreamResource(bindingDao, driverDao, inputDao, outputDao, streamDao, schemaCache, streamRegistry, legalNodeIndex, streamExecutor, deadLetterStore, stageMetrics));
+		env.jersey().register(new BindingResource(jdbi, bindingDao, driverDao, inputDao, outputDao, schemaCache, streamRegistry));
 		env.jersey().register(new DriverResource(driverDao));
-		env.jersey().register(new InputResource(driverDao, inputDao, outputDao, streamDao, bindingDao, env.getObjectMapper()));
-		env.jersey().register(new OutputResource(driverDao, outputDao, streamDao));
+		env.jersey().register(new InputResource(driverDao, inputDao, streamDao, streamRegistry, streamExecutor, writeAheadLog, 
+				  apiPullEngine, filesystemWatcher, stageMetrics, env.getObjectMapper()));
+		env.jersey().register(new OutputResource(driverDao, outputDao, streamDao, streamRegistry, pollingStore, outputDispatcher, filesystemWriter, stageMetrics));
+		env.jersey().register(new RuntimeResource(streamRegistry, streamExecutor));
+		env.jersey().register(new DeadLetterResource(deadLetterStore, deadLetterReplayer, streamRegistry));
 		
-		// upon server startup, load streams
-		env.lifecycle().addServerLifecycleListener(new StreamLoader());
+		// load streams and replay undelivered payloads before the connectors open 
+		// (managed last, so that it starts after everything else), then start inputs
+		final StreamLoader streamLoader = new StreamLoader(streamRegistry, writeAheadLog, apiPullEngine, filesystemWatcher);
+		env.lifecycle().manage(streamLoader);
+		env.lifecycle().addServerLifecycleListener(streamLoader);
 	}
 }
@@ -26,6 +26,16 @@ package la.alsocan.symbiot;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 import io.dropwizard.db.DataSourceFactory;
+import la.alsocan.symbiot.core.inputs.ApiPullConfiguration;
+import la.alsocan.symbiot.core.inputs.FilesystemInputConfiguration;
+import la.alsocan.symbiot.core.inputs.WriteAheadLogConfiguration;
+import la.alsocan.symbiot.core.metrics.StageMetricsConfiguration;
+import la.alsocan.symbiot.core.outputs.DispatchConfiguration;
+import la.alsocan.symbiot.core.outputs.FilesystemConfiguration;
+import la.alsocan.symbiot.core.outputs.PollingConfiguration;
+import la.alsocan.symbiot.core.outputs.WebhookConfiguration;
+import la.alsocan.symbiot.core.streams.DeadLetterConfiguration;
+import la.alsocan.symbiot.core.streams.StreamRuntimeConfiguration;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
@@ -41,11 +51,101 @@ public class ServerConfiguration extends Configuration {
 	@NotNull
 	@JsonProperty
 	private final DataSourceFactory database = new DataSourceFactory();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final DispatchConfiguration dispatch = new DispatchConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final WebhookConfiguration webhooks = new WebhookConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final PollingConfiguration polling = new PollingConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final FilesystemConfiguration files = new FilesystemConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final ApiPullConfiguration pull = new ApiPullConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final FilesystemInputConfiguration watch = new FilesystemInputConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final StreamRuntimeConfiguration runtime = new StreamRuntimeConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final WriteAheadLogConfiguration wal = new WriteAheadLogConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final DeadLetterConfiguration deadLetters = new DeadLetterConfiguration();
+	
+	@Valid
+	@NotNull
+	@JsonProperty
+	private final StageMetricsConfiguration stageMetrics = new StageMetricsConfiguration();
 
 	public DataSourceFactory getDataSourceFactory() {
 		return database;
 	}
 	
+	public DispatchConfiguration getDispatchConfiguration() {
+		return dispatch;
+	}
+	
+	public WebhookConfiguration getWebhookConfiguration() {
+		return webhooks;
+	}
+	
+	public PollingConfiguration getPollingConfiguration() {
+		return polling;
+	}
+	
+	public FilesystemConfiguration getFilesystemConfiguration() {
+		return files;
+	}
+	
+	public ApiPullConfiguration getApiPullConfiguration() {
+		return pull;
+	}
+	
+	public FilesystemInputConfiguration getFilesystemInputConfiguration() {
+		return watch;
+	}
+	
+	public StreamRuntimeConfiguration getStreamRuntimeConfiguration() {
+		return runtime;
+	}
+	
+	public WriteAheadLogConfiguration getWriteAheadLogConfiguration() {
+		return wal;
+	}
+	
+	public DeadLetterConfiguration getDeadLetterConfiguration() {
+		return deadLetters;
+	}
+	
+	public StageMetricsConfiguration getStageMetricsConfiguration() {
+		return stageMetrics;
+	}
+	
 	public String getEcho() {
 		return echo;
 	}
@@ -23,6 +23,11 @@
  */
 package la.alsocan.symbiot.access;
 
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +36,8 @@ import org.joda.time.DateTimeZone;
 import org.skife.jdbi.v2.BaseResultSetMapper;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.util.IntegerColumnMapper;
 
 import la.alsocan.symbiot.api.to.bindings.AbstractNodeBindingTo;
@@ -48,6 +55,11 @@ import la.alsocan.symbiot.api.to.bindings.StringNodeBindingTo;
 
 /**
  * Dao for bindings, using a single table inheritance strategy (to keep it <i>simple</i>).
+ * <p>
+ * All types are written with the same statements (columns which do not apply 
+ * to a type are set to null), so that prepared statements can be cached. Every 
+ * method can also run on a handle provided by the caller (ex: in a transaction).
+ * 
  * @author Florian Poulin - https://github.com/fpoulin
  */
 public class BindingDao {
@@ -70,246 +82,190 @@ public class BindingDao {
 			  + "CONSTRAINT stream_fk FOREIGN KEY (streamId) "
 			  + " REFERENCES " + StreamDao.TABLE_NAME + " (id) ON DELETE CASCADE)";
 	
+	// at most one binding per target node (index created by a migration, see SchemaMigrator)
+	public static final String TARGET_INDEX = "bindings_target_idx";
+	
+	// SQL state of unique constraint violations
+	private static final String DUPLICATE_KEY = "23505";
+	
+	private static final String INSERT = "INSERT INTO " + TABLE_NAME
+			  + " (lastModificationDate, streamId, type, targetNode, "
+			  + "sourceNode, arrayConstant, booleanConstant, integerConstant, numberConstant, stringConstant) "
+			  + "VALUES (CURRENT_TIMESTAMP, :streamId, :type, :targetNode, "
+			  + ":sourceNode, :arrayConstant, :booleanConstant, :integerConstant, :numberConstant, :stringConstant)";
+	private static final String UPDATE = "UPDATE " + TABLE_NAME + " SET "
+			  + "lastModificationDate = CURRENT_TIMESTAMP, "
+			  + "type = :type, "
+			  + "sourceNode = :sourceNode, "
+			  + "arrayConstant = :arrayConstant, "
+			  + "booleanConstant = :booleanConstant, "
+			  + "integerConstant = :integerConstant, "
+			  + "numberConstant = :numberConstant, "
+			  + "stringConstant = :stringConstant "
+			  + "WHERE streamId = :streamId AND id = :id";
+	private static final String SELECT_BY_STREAM = "SELECT * FROM " + TABLE_NAME + " WHERE streamId = :streamId";
+	private static final String SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE streamId = :streamId AND id = :id";
+	private static final String DELETE = "DELETE FROM " + TABLE_NAME + " WHERE streamId = :streamId AND id = :id";
+	private static final String DELETE_BY_STREAM = "DELETE FROM " + TABLE_NAME + " WHERE streamId = :streamId";
+	
 	private final DBI jdbi;
+	private final BindingMapper mapper;
 	
 	public BindingDao(DBI jdbi) {
 		this.jdbi = jdbi;
+		this.mapper = new BindingMapper();
 	}
 	
-	// FIXME: improve this ugly method (ex: using one über-TO which is always inserte the same way)
 	public int insert(BindingTo bindingTo, int streamId) {
-		
-		int id;
 		try (Handle h = jdbi.open()) {
-			id = -1;
-			switch(bindingTo.getType()) {
-				case ArrayNodeBindingTo.TYPE:
-				case BooleanNodeBindingTo.TYPE:
-				case IntegerNodeBindingTo.TYPE:
-				case NumberNodeBindingTo.TYPE:
-				case StringNodeBindingTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (lastModificationDate, streamId, type, targetNode, sourceNode) "
-						+ "VALUES (CURRENT_TIMESTAMP, :streamId, :type, :targetNode, :sourceNode)")
-						.bind("streamId", streamId)
-						.bind("type", bindingTo.getType())
-						.bind("targetNode", bindingTo.getTargetNode())
-						.bind("sourceNode", ((AbstractNodeBindingTo)bindingTo).getSourceNode())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-				case ArrayConstantBindingTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (lastModificationDate, streamId, type, targetNode, arrayConstant) "
-						+ "VALUES (CURRENT_TIMESTAMP, :streamId, :type, :targetNode, :arrayConstant)")
-						.bind("streamId", streamId)
-						.bind("type", "arrayConstant")
-						.bind("targetNode", bindingTo.getTargetNode())
-						.bind("arrayConstant", ((ArrayConstantBindingTo)bindingTo).getNbIterations())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-				case BooleanConstantBindingTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (lastModificationDate, streamId, type, targetNode, booleanConstant) "
-						+ "VALUES (CURRENT_TIMESTAMP, :streamId, :type, :targetNode, :booleanConstant)")
-						.bind("streamId", streamId)
-						.bind("type", "booleanConstant")
-						.bind("targetNode", bindingTo.getTargetNode())
-						.bind("booleanConstant", ((BooleanConstantBindingTo)bindingTo).getConstant())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-				case IntegerConstantBindingTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (lastModificationDate, streamId, type, targetNode, integerConstant) "
-						+ "VALUES (CURRENT_TIMESTAMP, :streamId, :type, :targetNode, :integerConstant)")
-						.bind("streamId", streamId)
-						.bind("type", "integerConstant")
-						.bind("targetNode", bindingTo.getTargetNode())
-						.bind("integerConstant", ((IntegerConstantBindingTo)bindingTo).getConstant())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-				case NumberConstantBindingTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (lastModificationDate, streamId, type, targetNode, numberConstant) "
-						+ "VALUES (CURRENT_TIMESTAMP, :streamId, :type, :targetNode, :numberConstant)")
-						.bind("streamId", streamId)
-						.bind("type", "numberConstant")
-						.bind("targetNode", bindingTo.getTargetNode())
-						.bind("numberConstant", ((NumberConstantBindingTo)bindingTo).getConstant())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-				case StringConstantBindingTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (lastModificationDate, streamId, type, targetNode, stringConstant) "
-						+ "VALUES (CURRENT_TIMESTAMP, :streamId, :type, :targetNode, :stringConstant)")
-						.bind("streamId", streamId)
-						.bind("type", "stringConstant")
-						.bind("targetNode", bindingTo.getTargetNode())
-						.bind("stringConstant", ((StringConstantBindingTo)bindingTo).getConstant())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-			}
+			return insert(h, bindingTo, streamId);
 		}
-		return id;
+	}
+	
+	/**
+	 * Insert a binding (fails with a duplicate key if its target node is already bound).
+	 * @see #isDuplicate(RuntimeException)
+	 */
+	public int insert(Handle h, BindingTo bindingTo, int streamId) {
+		return bindFields(h.createStatement(INSERT), bindingTo)
+				  .bind("streamId", streamId)
+				  .bind("targetNode", bindingTo.getTargetNode())
+				  .executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
+				  .first();
 	}
 	
 	public List<BindingTo> findAll(int streamId) {
 		try(Handle h = jdbi.open()){
-			return h.createQuery("SELECT * FROM " + TABLE_NAME + " WHERE streamId = :streamId")
-					  .bind("streamId", streamId)
-					  .map(new BindingMapper())
-					  .list();
+			return findAll(h, streamId);
 		}
 	}
 	
-	public BindingTo findById(int id, int streamId) {
+	public List<BindingTo> findAll(Handle h, int streamId) {
+		return h.createQuery(SELECT_BY_STREAM)
+				  .bind("streamId", streamId)
+				  .map(mapper)
+				  .list();
+	}
+	
+	/**
+	 * Find the bindings of several streams in a single query.
+	 * @param streamIds The stream ids (one page of streams, not the whole table)
+	 * @return The bindings, by stream id (streams without bindings are absent)
+	 */
+	public Map<Integer, List<BindingTo>> findAllByStreams(Collection<Integer> streamIds) {
+		
+		if (streamIds.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<Integer, List<BindingTo>> bindings = new HashMap<>();
 		try(Handle h = jdbi.open()){
-			return h.createQuery("SELECT * FROM " + TABLE_NAME + " WHERE streamId = :streamId AND id = :id")
-					  .bind("streamId", streamId)
-					  .bind("id", id)
-					  .map(new BindingMapper())
-					  .first();
+			List<Map<String, Object>> rows = InClause.bind(h.createQuery("SELECT * FROM " + TABLE_NAME 
+					  + " WHERE streamId IN (" + InClause.placeholders("streamId", streamIds.size()) + ")"), 
+					  "streamId", streamIds)
+					  .list();
+			for (Map<String, Object> row : rows) {
+				bindings.computeIfAbsent((Integer)row.get("streamId"), (id) -> new LinkedList<>())
+						  .add(mapper.mapInternal(0, row));
+			}
 		}
+		return bindings;
 	}
 	
-	public int countByTargetNode( String targetNode, int streamId) {
+	public BindingTo findById(int id, int streamId) {
 		try(Handle h = jdbi.open()){
-			return h.createQuery("SELECT COUNT(*) FROM " + TABLE_NAME 
-					  + " WHERE streamId = :streamId "
-					  + "AND targetNode = :targetNode")
-					  .bind("streamId", streamId)
-					  .bind("targetNode", targetNode)
-					  .map(IntegerColumnMapper.PRIMITIVE)
-					  .first();
+			return findById(h, id, streamId);
 		}
 	}
 	
+	public BindingTo findById(Handle h, int id, int streamId) {
+		return h.createQuery(SELECT_BY_ID)
+				  .bind("streamId", streamId)
+				  .bind("id", id)
+				  .map(mapper)
+				  .first();
+	}
+	
 	public void update(int id, int streamId, BindingTo newTo) {
-		
 		try (Handle h = jdbi.open()) {
-			switch(newTo.getType()) {
-				case ArrayNodeBindingTo.TYPE:
-				case BooleanNodeBindingTo.TYPE:
-				case IntegerNodeBindingTo.TYPE:
-				case NumberNodeBindingTo.TYPE:
-				case StringNodeBindingTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "type = :type, "
-						+ "sourceNode = :sourceNode, "
-						+ "arrayConstant = NULL, "
-						+ "booleanConstant = NULL, "
-						+ "integerConstant = NULL, "
-						+ "numberConstant = NULL, "
-						+ "stringConstant = NULL "
-						+ "WHERE streamId = :streamId AND id = :id")
-						.bind("streamId", streamId)
-						.bind("id", id)
-						.bind("type", newTo.getType())
-						.bind("sourceNode", ((AbstractNodeBindingTo)newTo).getSourceNode())
-						.execute();
-					break;
-				case ArrayConstantBindingTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "type = :type, "
-						+ "sourceNode = NULL, "
-						+ "arrayConstant = :arrayConstant, "
-						+ "booleanConstant = NULL, "
-						+ "integerConstant = NULL, "
-						+ "numberConstant = NULL, "
-						+ "stringConstant = NULL "
-						+ "WHERE streamId = :streamId AND id = :id")
-						.bind("streamId", streamId)
-						.bind("id", id)
-						.bind("type", ArrayConstantBindingTo.TYPE)
-						.bind("arrayConstant", ((ArrayConstantBindingTo)newTo).getNbIterations())
-						.execute();
-					break;
-				case BooleanConstantBindingTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "type = :type, "
-						+ "sourceNode = NULL, "
-						+ "arrayConstant = NULL, "
-						+ "booleanConstant = :booleanConstant, "
-						+ "integerConstant = NULL, "
-						+ "numberConstant = NULL, "
-						+ "stringConstant = NULL "
-						+ "WHERE streamId = :streamId AND id = :id")
-						.bind("streamId", streamId)
-						.bind("id", id)
-						.bind("type", BooleanConstantBindingTo.TYPE)
-						.bind("booleanConstant", ((BooleanConstantBindingTo)newTo).getConstant())
-						.execute();
-					break;
-				case IntegerConstantBindingTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "type = :type, "
-						+ "sourceNode = NULL, "
-						+ "arrayConstant = NULL, "
-						+ "booleanConstant = NULL, "
-						+ "integerConstant = :integerConstant, "
-						+ "numberConstant = NULL, "
-						+ "stringConstant = NULL "
-						+ "WHERE streamId = :streamId AND id = :id")
-						.bind("streamId", streamId)
-						.bind("id", id)
-						.bind("type", IntegerConstantBindingTo.TYPE)
-						.bind("integerConstant", ((IntegerConstantBindingTo)newTo).getConstant())
-						.execute();
-					break;
-				case NumberConstantBindingTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "type = :type, "
-						+ "sourceNode = NULL, "
-						+ "arrayConstant = NULL, "
-						+ "booleanConstant = NULL, "
-						+ "integerConstant = NULL, "
-						+ "numberConstant = :numberConstant, "
-						+ "stringConstant = NULL "
-						+ "WHERE streamId = :streamId AND id = :id")
-						.bind("streamId", streamId)
-						.bind("id", id)
-						.bind("type", NumberConstantBindingTo.TYPE)
-						.bind("numberConstant", ((NumberConstantBindingTo)newTo).getConstant())
-						.execute();
-					break;
-				case StringConstantBindingTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "type = :type, "
-						+ "sourceNode = NULL, "
-						+ "arrayConstant = NULL, "
-						+ "booleanConstant = NULL, "
-						+ "integerConstant = NULL, "
-						+ "numberConstant = NULL, "
-						+ "stringConstant = :stringConstant "
-						+ "WHERE streamId = :streamId AND id = :id")
-						.bind("streamId", streamId)
-						.bind("id", id)
-						.bind("type", StringConstantBindingTo.TYPE)
-						.bind("stringConstant", ((StringConstantBindingTo)newTo).getConstant())
-						.execute();
-					break;
-			}
+			update(h, id, streamId, newTo);
 		}
 	}
 	
+	public void update(Handle h, int id, int streamId, BindingTo newTo) {
+		bindFields(h.createStatement(UPDATE), newTo)
+				  .bind("streamId", streamId)
+				  .bind("id", id)
+				  .execute();
+	}
+	
 	public void delete(int id, int streamId) {
 		try(Handle h = jdbi.open()){
-			h.createStatement("DELETE FROM " + TABLE_NAME + " WHERE streamId = :streamId AND id = :id")
+			delete(h, id, streamId);
+		}
+	}
+	
+	public void delete(Handle h, int id, int streamId) {
+		h.createStatement(DELETE)
+				  .bind("streamId", streamId)
+				  .bind("id", id)
+				  .execute();
+	}
+	
+	/**
+	 * Replace all the bindings of a stream (a delete and a single JDBC batch). 
+	 * Should be called in a transaction.
+	 * @param h The handle to use
+	 * @param streamId The stream id
+	 * @param bindingTos The new bindings (already validated)
+	 */
+	public void replaceAll(Handle h, int streamId, List<BindingTo> bindingTos) {
+		
+		h.createStatement(DELETE_BY_STREAM)
+				  .bind("streamId", streamId)
+				  .execute();
+		if (bindingTos.isEmpty()) {
+			return;
+		}
+		PreparedBatch batch = h.prepareBatch(INSERT);
+		bindingTos.stream().forEach((to) -> {
+			bindFields(batch.add(), to)
 					  .bind("streamId", streamId)
-					  .bind("id", id)
-					  .execute();
+					  .bind("targetNode", to.getTargetNode());
+		});
+		batch.execute();
+	}
+	
+	/**
+	 * @param ex An exception thrown while inserting a binding
+	 * @return True if the target node of the binding was already bound
+	 */
+	public static boolean isDuplicate(RuntimeException ex) {
+		
+		for (Throwable t = ex; t != null; t = t.getCause()) {
+			if (t instanceof SQLException && DUPLICATE_KEY.equals(((SQLException)t).getSQLState())) {
+				return true;
+			}
 		}
+		return false;
+	}
+	
+	private static <T extends SQLStatement<T>> T bindFields(T statement, BindingTo to) {
+		
+		// specific fields (null when they do not apply)
+		AbstractNodeBindingTo nodeTo = to instanceof AbstractNodeBindingTo ? (AbstractNodeBindingTo)to : null;
+		return statement
+				  .bind("type", to.getType())
+				  .bind("sourceNode", nodeTo == null ? null : nodeTo.getSourceNode())
+				  .bind("arrayConstant", to instanceof ArrayConstantBindingTo 
+							 ? (Integer)((ArrayConstantBindingTo)to).getNbIterations() : null)
+				  .bind("booleanConstant", to instanceof BooleanConstantBindingTo 
+							 ? (Boolean)((BooleanConstantBindingTo)to).getConstant() : null)
+				  .bind("integerConstant", to instanceof IntegerConstantBindingTo 
+							 ? (Integer)((IntegerConstantBindingTo)to).getConstant() : null)
+				  .bind("numberConstant", to instanceof NumberConstantBindingTo 
+							 ? (Double)((NumberConstantBindingTo)to).getConstant() : null)
+				  .bind("stringConstant", to instanceof StringConstantBindingTo 
+							 ? ((StringConstantBindingTo)to).getConstant() : null);
 	}
 	
 	private class BindingMapper extends BaseResultSetMapper<BindingTo> {
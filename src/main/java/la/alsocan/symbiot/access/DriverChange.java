@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * What changed in the drivers folder: the drivers which were added, removed or 
+ * modified, and among their definitions the ones which actually differ.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class DriverChange {
+	
+	private final Set<String> driverIds;
+	private final Set<String> inputDefinitions;
+	private final Set<String> outputDefinitions;
+
+	DriverChange(Set<String> driverIds, Set<String> inputDefinitions, Set<String> outputDefinitions) {
+		this.driverIds = Collections.unmodifiableSet(driverIds);
+		this.inputDefinitions = Collections.unmodifiableSet(inputDefinitions);
+		this.outputDefinitions = Collections.unmodifiableSet(outputDefinitions);
+	}
+	
+	public boolean isEmpty() {
+		return driverIds.isEmpty();
+	}
+	
+	public Set<String> getDriverIds() {
+		return driverIds;
+	}
+	
+	public boolean isInputDefinitionChanged(String driverId, String definitionId) {
+		return inputDefinitions.contains(DriverDao.key(driverId, definitionId));
+	}
+	
+	public boolean isOutputDefinitionChanged(String driverId, String definitionId) {
+		return outputDefinitions.contains(DriverDao.key(driverId, definitionId));
+	}
+
+	@Override
+	public String toString() {
+		return "drivers " + driverIds + ", input definitions " + inputDefinitions 
+				  + ", output definitions " + outputDefinitions;
+	}
+}
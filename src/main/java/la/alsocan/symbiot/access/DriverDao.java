@@ -24,69 +24,323 @@
 package la.alsocan.symbiot.access;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.lifecycle.Managed;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import la.alsocan.symbiot.api.to.drivers.DriverTo;
+import la.alsocan.symbiot.api.to.drivers.InputDefinitionTo;
+import la.alsocan.symbiot.api.to.drivers.OutputDefinitionTo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Registry of the drivers found in the <code>drivers</code> folder.
+ * <p>
+ * The folder is watched once started: changed files are parsed by a background 
+ * thread, then a new immutable snapshot of the drivers (which index their 
+ * definitions) is swapped atomically, so that lookups never block nor see a partial update. 
+ * Listeners are then told which definitions changed, so that only what depends 
+ * on them gets rebuilt.
+ * 
  * @author Florian Poulin - https://github.com/fpoulin
  */
-public class DriverDao {
+public class DriverDao implements Managed {
 	
 	private Logger LOG = LoggerFactory.getLogger(DriverDao.class);
 	private static final String DRIVER_FOLDER_NAME = "drivers";
-	private final Map<String, DriverTo> drivers;
+	
+	// a file is usually written in several steps (wait for the last one)
+	private static final long RELOAD_DELAY_MS = 500;
+	
+	private final ObjectMapper om;
+	private final File folder;
+	private final List<Listener> listeners;
+	private final AtomicBoolean reloadPending;
+	private volatile Snapshot snapshot;
+	private WatchService watchService;
+	private ScheduledExecutorService scheduler;
+	private Thread watchThread;
 
 	public DriverDao(ObjectMapper om) {
+		this(om, new File(jarFolder() + File.separatorChar + DRIVER_FOLDER_NAME));
+	}
+	
+	/**
+	 * Same as above, loading drivers from the given folder (rather than from 
+	 * the folder next to the jar).
+	 */
+	public DriverDao(ObjectMapper om, File folder) {
 		
 		// open drivers folder
-		String jarFolder;
+		this.folder = folder;
+		if (!folder.exists() || !folder.isDirectory()) {
+			throw new IllegalStateException("Could not find folder '"+folder.getPath()+"'");
+		}
+		
+		// load drivers in memory
+		this.om = om;
+		this.listeners = new CopyOnWriteArrayList<>();
+		this.reloadPending = new AtomicBoolean();
+		this.snapshot = new Snapshot();
+		reload();
+	}
+	
+	private static String jarFolder() {
 		try {
-			URL url = getClass().getProtectionDomain().getCodeSource().getLocation();
-			File jarFile = new File(url.toURI());
-			jarFolder = jarFile.getParentFile().getPath();
+			URL url = DriverDao.class.getProtectionDomain().getCodeSource().getLocation();
+			return new File(url.toURI()).getParentFile().getPath();
 		} catch (URISyntaxException ex) {
-			jarFolder = "<unable to resolve>";
+			return "<unable to resolve>";
 		}
-		String driverFolderPath = jarFolder + File.separatorChar + DRIVER_FOLDER_NAME;
-		File folder = new File(driverFolderPath);
-		if (!folder.exists() || !folder.isDirectory()) {
-			throw new IllegalStateException("Could not find folder '"+driverFolderPath+"'");
+	}
+	
+	@Override
+	public void start() throws Exception {
+		
+		watchService = FileSystems.getDefault().newWatchService();
+		folder.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, 
+				  StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "driver-loader");
+			t.setDaemon(true);
+			return t;
+		});
+		watchThread = new Thread(this::watch, "driver-watcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	@Override
+	public void stop() throws Exception {
+		
+		// closing the service also ends the watch thread
+		watchService.close();
+		scheduler.shutdownNow();
+		watchThread.join(1000);
+	}
+	
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * @return All drivers (immutable list, no copy)
+	 */
+	public List<DriverTo> findAll() {
+		return snapshot.all;
+	}
+	
+	public DriverTo findById(String id) {
+		return snapshot.drivers.get(id);
+	}
+	
+	/**
+	 * @param driverId The driver id
+	 * @param definitionId The input definition id
+	 * @return The input definition, or null if the driver or the definition is unknown
+	 */
+	public InputDefinitionTo findInputDefinition(String driverId, String definitionId) {
+		DriverTo driver = snapshot.drivers.get(driverId);
+		return driver == null ? null : driver.getInputDefinition(definitionId);
+	}
+	
+	/**
+	 * @param driverId The driver id
+	 * @param definitionId The output definition id
+	 * @return The output definition, or null if the driver or the definition is unknown
+	 */
+	public OutputDefinitionTo findOutputDefinition(String driverId, String definitionId) {
+		DriverTo driver = snapshot.drivers.get(driverId);
+		return driver == null ? null : driver.getOutputDefinition(definitionId);
+	}
+	
+	/**
+	 * Rescan the drivers folder (only new or modified files are parsed), swap 
+	 * the snapshot and notify the listeners of the definitions which changed.
+	 * @return The changes
+	 */
+	public synchronized DriverChange reload() {
+		
+		Snapshot previous = snapshot;
+		File[] files = folder.listFiles((File dir, String name) -> { return name.endsWith(".json"); });
+		if (files == null) {
+			LOG.warn("Could not list driver folder '" + folder.getPath() + "'");
+			return new DriverChange(Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
 		}
+		Arrays.sort(files);
 		
-		// load drivers in memory
-		drivers = new LinkedHashMap<>();
-		for (File file : folder.listFiles((File dir, String name) -> { return name.endsWith(".json"); })) {
-			DriverTo to;
-			try {
-				to = om.readValue(file, DriverTo.class);
-				if (!drivers.containsKey(to.getId())) {
-					drivers.put(to.getId(), to);
-				} else {
-					LOG.warn("The driver file '"+file.getName()+"' uses a conflicting ID '"+to.getId()+"'");
-					LOG.info("Check driver with name '"+drivers.get(to.getId()).getName()+"' to resolve conflict");
-					LOG.info("Driver file '"+file.getName()+"' will not be loaded");
+		Map<String, LoadedFile> loaded = new HashMap<>();
+		Map<String, DriverTo> drivers = new LinkedHashMap<>();
+		for (File file : files) {
+			LoadedFile lf = previous.files.get(file.getName());
+			if (lf == null || lf.lastModified != file.lastModified() || lf.length != file.length()) {
+				try {
+					lf = new LoadedFile(file, om.readValue(file, DriverTo.class));
+				} catch (IOException ex) {
+					
+					// keep the previous version, if any (the file may still be written)
+					LOG.warn("Malformed driver '"+file.getName()+"': " + ex.getMessage());
+					LOG.info("Driver '"+file.getName()+"' will not be " + (lf == null ? "loaded" : "updated"));
 				}
-			} catch (IOException ex) {
-				LOG.warn("Malformed driver '"+file.getName()+"': " + ex.getMessage());
-				LOG.info("Driver '"+file.getName()+"' will not be loaded");
+			}
+			if (lf == null) {
+				continue;
+			}
+			DriverTo to = lf.driver;
+			if (!drivers.containsKey(to.getId())) {
+				loaded.put(file.getName(), lf);
+				drivers.put(to.getId(), to);
+			} else {
+				LOG.warn("The driver file '"+file.getName()+"' uses a conflicting ID '"+to.getId()+"'");
+				LOG.info("Check driver with name '"+drivers.get(to.getId()).getName()+"' to resolve conflict");
+				LOG.info("Driver file '"+file.getName()+"' will not be loaded");
 			}
 		}
+		
+		Snapshot next = new Snapshot(loaded, drivers);
+		DriverChange change = diff(previous, next);
+		snapshot = next;
+		if (!change.isEmpty()) {
+			LOG.info(previous.drivers.isEmpty() 
+					  ? "Loaded " + next.all.size() + " driver(s)" 
+					  : "Drivers reloaded, changed: " + change);
+			listeners.forEach((listener) -> {
+				try {
+					listener.driversChanged(change);
+				} catch (RuntimeException ex) {
+					LOG.error("Driver listener failed", ex);
+				}
+			});
+		}
+		return change;
 	}
-	  
-	public List<DriverTo> findAll() {
-		return new LinkedList<>(drivers.values());
+	
+	private DriverChange diff(Snapshot previous, Snapshot next) {
+		
+		Set<String> driverIds = new HashSet<>(previous.drivers.keySet());
+		driverIds.addAll(next.drivers.keySet());
+		Set<String> changedDrivers = new HashSet<>();
+		Set<String> changedInputs = new HashSet<>();
+		Set<String> changedOutputs = new HashSet<>();
+		for (String driverId : driverIds) {
+			DriverTo a = previous.drivers.get(driverId);
+			DriverTo b = next.drivers.get(driverId);
+			if (a == b) {
+				continue;
+			}
+			changedDrivers.add(driverId);
+			diff(driverId, 
+					  a == null ? Collections.emptyMap() : a.getInputDefinitionsIndex(), 
+					  b == null ? Collections.emptyMap() : b.getInputDefinitionsIndex(), changedInputs);
+			diff(driverId, 
+					  a == null ? Collections.emptyMap() : a.getOutputDefinitionsIndex(), 
+					  b == null ? Collections.emptyMap() : b.getOutputDefinitionsIndex(), changedOutputs);
+		}
+		return new DriverChange(changedDrivers, changedInputs, changedOutputs);
 	}
 	
-	public DriverTo findById(String id) {
-		return drivers.get(id);
+	private <T> void diff(String driverId, Map<String, T> previous, Map<String, T> next, Set<String> changed) {
+		
+		Set<String> ids = new HashSet<>(previous.keySet());
+		ids.addAll(next.keySet());
+		for (String id : ids) {
+			T a = previous.get(id);
+			T b = next.get(id);
+			if (a == null || b == null || !om.valueToTree(a).equals(om.valueToTree(b))) {
+				changed.add(key(driverId, id));
+			}
+		}
+	}
+	
+	private void watch() {
+		
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException ex) {
+				return;
+			}
+			key.pollEvents();
+			key.reset();
+			
+			// coalesce the events of a burst into a single reload
+			if (reloadPending.compareAndSet(false, true)) {
+				scheduler.schedule(() -> {
+					reloadPending.set(false);
+					try {
+						reload();
+					} catch (RuntimeException ex) {
+						LOG.error("Could not reload drivers", ex);
+					}
+				}, RELOAD_DELAY_MS, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+	
+	static String key(String driverId, String definitionId) {
+		return driverId + '|' + definitionId;
+	}
+	
+	/**
+	 * Notified (by the loader thread) after the snapshot was swapped.
+	 */
+	public interface Listener {
+		void driversChanged(DriverChange change);
+	}
+	
+	private static class LoadedFile {
+		
+		private final long lastModified;
+		private final long length;
+		private final DriverTo driver;
+
+		public LoadedFile(File file, DriverTo driver) {
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			this.driver = driver;
+		}
+	}
+	
+	/**
+	 * Immutable state of the registry (definitions are indexed by the drivers 
+	 * themselves, see {@link DriverTo#getInputDefinition(String)}).
+	 */
+	private static class Snapshot {
+		
+		private final Map<String, LoadedFile> files;
+		private final Map<String, DriverTo> drivers;
+		private final List<DriverTo> all;
+
+		public Snapshot() {
+			this(Collections.emptyMap(), Collections.emptyMap());
+		}
+		
+		public Snapshot(Map<String, LoadedFile> files, Map<String, DriverTo> drivers) {
+			this.files = Collections.unmodifiableMap(files);
+			this.drivers = Collections.unmodifiableMap(drivers);
+			this.all = Collections.unmodifiableList(new ArrayList<>(drivers.values()));
+		}
 	}
 }
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access;
+
+import java.util.Collection;
+import java.util.Iterator;
+import org.skife.jdbi.v2.SQLStatement;
+
+/**
+ * Helper to build <code>IN (...)</code> clauses for a set of ids, as JDBI 
+ * cannot bind collections.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+final class InClause {
+	
+	private InClause() {
+	}
+	
+	/**
+	 * @param name The parameter name prefix
+	 * @param count The number of ids
+	 * @return A list of named parameters, such as <code>:id0, :id1, :id2</code>
+	 */
+	static String placeholders(String name, int count) {
+		
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(':').append(name).append(i);
+		}
+		return sb.toString();
+	}
+	
+	static <T extends SQLStatement<T>> T bind(T statement, String name, Collection<Integer> ids) {
+		
+		Iterator<Integer> it = ids.iterator();
+		for (int i = 0; it.hasNext(); i++) {
+			statement.bind(name + i, it.next());
+		}
+		return statement;
+	}
+}
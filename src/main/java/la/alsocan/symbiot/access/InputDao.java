@@ -23,6 +23,13 @@
  */
 package la.alsocan.symbiot.access;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +38,7 @@ import org.joda.time.DateTimeZone;
 import org.skife.jdbi.v2.BaseResultSetMapper;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.util.IntegerColumnMapper;
 
 import la.alsocan.symbiot.api.to.inputs.ApiPullInputTo;
@@ -40,6 +48,11 @@ import la.alsocan.symbiot.api.to.inputs.InputTo;
 
 /**
  * Dao for inputs, using a single table inheritance strategy (to keep it <i>simple</i>).
+ * <p>
+ * All types are written with the same statements (columns which do not apply 
+ * to a type are set to null), so that prepared statements can be cached. Every 
+ * method can also run on a handle provided by the caller (ex: in a transaction).
+ * 
  * @author Florian Poulin - https://github.com/fpoulin
  */
 public class InputDao {
@@ -63,148 +76,165 @@ public class InputDao {
 			  + "deleteAfterRead BOOLEAN, "
 			  + "CONSTRAINT input_key PRIMARY KEY (id))";
 	
-			// FIXME: handle headers here
+	// headers of API pull inputs are stored as a JSON object (column added by a migration, see SchemaMigrator)
+	private static final ObjectMapper OM = new ObjectMapper();
+	private static final TypeReference<Map<String, String>> HEADERS_TYPE = new TypeReference<Map<String, String>>() {};
+	
+	private static final String INSERT = "INSERT INTO " + TABLE_NAME
+			  + " (creationDate, lastModificationDate, driverId, inputDefinitionId, type, name, description, "
+			  + "frequency, url, method, headers, folder, regex, deleteAfterRead) "
+			  + "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :inputDefinitionId, :type, :name, :description, "
+			  + ":frequency, :url, :method, :headers, :folder, :regex, :deleteAfterRead)";
+	private static final String UPDATE = "UPDATE " + TABLE_NAME + " SET "
+			  + "lastModificationDate = CURRENT_TIMESTAMP, "
+			  + "name = :name, "
+			  + "description = :description, "
+			  + "frequency = :frequency, "
+			  + "url = :url, "
+			  + "method = :method, "
+			  + "headers = :headers, "
+			  + "folder = :folder, "
+			  + "regex = :regex, "
+			  + "deleteAfterRead = :deleteAfterRead "
+			  + "WHERE id = :id";
+	private static final String SELECT_ALL = "SELECT * FROM " + TABLE_NAME;
+	private static final String SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = :id";
+	private static final String DELETE = "DELETE FROM " + TABLE_NAME + " WHERE id = :id";
 	
 	private final DBI jdbi;
+	private final InputMapper mapper;
 	
 	public InputDao(DBI jdbi) {
 		this.jdbi = jdbi;
+		this.mapper = new InputMapper();
 	}
 	
 	public int insert(InputTo inputTo) {
-		
-		int id;
 		try (Handle h = jdbi.open()) {
-			id = -1;
-			switch(inputTo.getType()) {
-				case ApiPushInputTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (creationDate, lastModificationDate, driverId, inputDefinitionId, type, name, description) "
-						+ "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :inputDefinitionId, :type, :name, :description)")
-						.bind("driverId", inputTo.getDriverId())
-						.bind("inputDefinitionId", inputTo.getInputDefinitionId())
-						.bind("type", ApiPushInputTo.TYPE)
-						.bind("name", inputTo.getName())
-						.bind("description", inputTo.getDescription())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-				case ApiPullInputTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (creationDate, lastModificationDate, driverId, inputDefinitionId, type, name, description, frequency, url, method) "
-						+ "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :inputDefinitionId, :type, :name, :description, :frequency, :url, :method)")
-						.bind("driverId", inputTo.getDriverId())
-						.bind("inputDefinitionId", inputTo.getInputDefinitionId())
-						.bind("type", ApiPullInputTo.TYPE)
-						.bind("name", inputTo.getName())
-						.bind("description", inputTo.getDescription())
-						.bind("frequency", ((ApiPullInputTo)inputTo).getFrequency())
-						.bind("url", ((ApiPullInputTo)inputTo).getUrl())
-						.bind("method", ((ApiPullInputTo)inputTo).getMethod())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					
-						// FIXME: handle headers here
-					
-					break;
-				case FilesystemInputTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (creationDate, lastModificationDate, driverId, inputDefinitionId, type, name, description, folder, regex, deleteAfterRead) "
-						+ "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :inputDefinitionId, :type, :name, :description, :folder, :regex, :deleteAfterRead)")
-						.bind("driverId", inputTo.getDriverId())
-						.bind("inputDefinitionId", inputTo.getInputDefinitionId())
-						.bind("type", FilesystemInputTo.TYPE)
-						.bind("name", inputTo.getName())
-						.bind("description", inputTo.getDescription())
-						.bind("folder", ((FilesystemInputTo)inputTo).getFolder())
-						.bind("regex", ((FilesystemInputTo)inputTo).getRegex())
-						.bind("deleteAfterRead", ((FilesystemInputTo)inputTo).getDeleteAfterRead())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-			}
+			return insert(h, inputTo);
 		}
-		return id;
+	}
+	
+	public int insert(Handle h, InputTo inputTo) {
+		return bindFields(h.createStatement(INSERT), inputTo)
+				  .bind("driverId", inputTo.getDriverId())
+				  .bind("inputDefinitionId", inputTo.getInputDefinitionId())
+				  .bind("type", inputTo.getType())
+				  .executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
+				  .first();
 	}
 	
 	public List<InputTo> findAll() {
 		try(Handle h = jdbi.open()){
-			return h.createQuery("SELECT * FROM " + TABLE_NAME)
-					  .map(new InputMapper())
-					  .list();
+			return findAll(h);
+		}
+	}
+	
+	public List<InputTo> findAll(Handle h) {
+		return h.createQuery(SELECT_ALL)
+				  .map(mapper)
+				  .list();
+	}
+	
+	/**
+	 * Find several inputs in a single query.
+	 * @param ids The input ids
+	 * @return The inputs, by id
+	 */
+	public Map<Integer, InputTo> findByIds(Collection<Integer> ids) {
+		
+		if (ids.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<Integer, InputTo> tos = new HashMap<>();
+		try(Handle h = jdbi.open()){
+			InClause.bind(h.createQuery("SELECT * FROM " + TABLE_NAME 
+					  + " WHERE id IN (" + InClause.placeholders("id", ids.size()) + ")"), "id", ids)
+					  .map(mapper)
+					  .list()
+					  .forEach((to) -> tos.put(to.getId(), to));
 		}
+		return tos;
 	}
 	
 	public InputTo findById(int id) {
 		try(Handle h = jdbi.open()){
-			return h.createQuery("SELECT * FROM " + TABLE_NAME + " WHERE id = :id")
-					  .bind("id", id)
-					  .map(new InputMapper())
-					  .first();
+			return findById(h, id);
 		}
 	}
 	
+	public InputTo findById(Handle h, int id) {
+		return h.createQuery(SELECT_BY_ID)
+				  .bind("id", id)
+				  .map(mapper)
+				  .first();
+	}
+	
 	public void update(int id, InputTo newTo) {
-		
 		try (Handle h = jdbi.open()) {
-			switch(newTo.getType()) {
-				case ApiPushInputTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "name = :name, "
-						+ "description = :description "
-						+ "WHERE id = :id")
-						.bind("id", id)
-						.bind("name", newTo.getName())
-						.bind("description", newTo.getDescription())
-						.execute();
-					break;
-				case ApiPullInputTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "name = :name, "
-						+ "description = :description, "
-						+ "frequency = :frequency, "
-						+ "url = :url, "
-						+ "method = :method "
-						+ "WHERE id = :id")
-						.bind("id", id)
-						.bind("name", newTo.getName())
-						.bind("description", newTo.getDescription())
-						.bind("frequency", ((ApiPullInputTo)newTo).getFrequency())
-						.bind("url", ((ApiPullInputTo)newTo).getUrl())
-						.bind("method", ((ApiPullInputTo)newTo).getMethod())
-						.execute();
-					
-						// FIXME: handle headers here
-					
-					break;
-				case FilesystemInputTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "name = :name, "
-						+ "description = :description, "
-						+ "folder = :folder, "
-						+ "regex = :regex, "
-						+ "deleteAfterRead = :deleteAfterRead "
-						+ "WHERE id = :id")
-						.bind("id", id)
-						.bind("name", newTo.getName())
-						.bind("description", newTo.getDescription())
-						.bind("folder", ((FilesystemInputTo)newTo).getFolder())
-						.bind("regex", ((FilesystemInputTo)newTo).getRegex())
-						.bind("deleteAfterRead", ((FilesystemInputTo)newTo).getDeleteAfterRead())
-						.execute();
-					break;
-			}
+			update(h, id, newTo);
 		}
 	}
 	
+	public void update(Handle h, int id, InputTo newTo) {
+		bindFields(h.createStatement(UPDATE), newTo)
+				  .bind("id", id)
+				  .execute();
+	}
+	
 	public void delete(int id) {
 		try(Handle h = jdbi.open()){
-			h.createStatement("DELETE FROM " + TABLE_NAME + " WHERE id = :id")
-					  .bind("id", id)
-					  .execute();
+			delete(h, id);
+		}
+	}
+	
+	public void delete(Handle h, int id) {
+		h.createStatement(DELETE)
+				  .bind("id", id)
+				  .execute();
+	}
+	
+	private static <T extends SQLStatement<T>> T bindFields(T statement, InputTo to) {
+		
+		// common fields
+		statement.bind("name", to.getName())
+				  .bind("description", to.getDescription());
+		
+		// specific fields (null when they do not apply)
+		ApiPullInputTo pullTo = to instanceof ApiPullInputTo ? (ApiPullInputTo)to : null;
+		FilesystemInputTo fsTo = to instanceof FilesystemInputTo ? (FilesystemInputTo)to : null;
+		
+		return statement
+				  .bind("frequency", pullTo == null ? null : pullTo.getFrequency())
+				  .bind("url", pullTo == null ? null : pullTo.getUrl())
+				  .bind("method", pullTo == null ? null : pullTo.getMethod())
+				  .bind("headers", pullTo == null ? null : encodeHeaders(pullTo.getHeaders()))
+				  .bind("folder", fsTo == null ? null : fsTo.getFolder())
+				  .bind("regex", fsTo == null ? null : fsTo.getRegex())
+				  .bind("deleteAfterRead", fsTo == null ? null : fsTo.getDeleteAfterRead());
+	}
+	
+	private static String encodeHeaders(Map<String, String> headers) {
+		
+		if (headers == null) {
+			return null;
+		}
+		try {
+			return OM.writeValueAsString(headers);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	private static Map<String, String> decodeHeaders(String headers) {
+		
+		if (headers == null) {
+			return null;
+		}
+		try {
+			return OM.readValue(headers, HEADERS_TYPE);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
 		}
 	}
 	
@@ -222,12 +252,10 @@ public class InputDao {
 					break;
 				case ApiPullInputTo.TYPE:
 					to = new ApiPullInputTo();
-					((ApiPullInputTo)to).setFrequency((int)row.get("frequency"));
+					((ApiPullInputTo)to).setFrequency((Integer)row.get("frequency"));
 					((ApiPullInputTo)to).setUrl((String)row.get("url"));
 					((ApiPullInputTo)to).setMethod((String)row.get("method"));
-					
-					// FIXME: handle headers here
-					
+					((ApiPullInputTo)to).setHeaders(decodeHeaders((String)row.get("headers")));
 					break;
 				case FilesystemInputTo.TYPE:
 					to = new FilesystemInputTo();
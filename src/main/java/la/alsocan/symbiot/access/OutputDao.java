@@ -23,6 +23,9 @@
  */
 package la.alsocan.symbiot.access;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +34,7 @@ import org.joda.time.DateTimeZone;
 import org.skife.jdbi.v2.BaseResultSetMapper;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.util.IntegerColumnMapper;
 
 import la.alsocan.symbiot.api.to.outputs.FilesystemOutputTo;
@@ -40,6 +44,11 @@ import la.alsocan.symbiot.api.to.outputs.WebhookOutputTo;
 
 /**
  * Dao for outputs, using a single table inheritance strategy (to keep it <i>simple</i>).
+ * <p>
+ * All types are written with the same statements (columns which do not apply 
+ * to a type are set to null), so that prepared statements can be cached. Every 
+ * method can also run on a handle provided by the caller (ex: in a transaction).
+ * 
  * @author Florian Poulin - https://github.com/fpoulin
  */
 public class OutputDao {
@@ -63,143 +72,137 @@ public class OutputDao {
 	
 			// FIXME: handle headers here
 	
+	private static final String INSERT = "INSERT INTO " + TABLE_NAME
+			  + " (creationDate, lastModificationDate, driverId, outputDefinitionId, type, name, description, "
+			  + "url, method, ttl, folder) "
+			  + "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :outputDefinitionId, :type, :name, :description, "
+			  + ":url, :method, :ttl, :folder)";
+	private static final String UPDATE = "UPDATE " + TABLE_NAME + " SET "
+			  + "lastModificationDate = CURRENT_TIMESTAMP, "
+			  + "name = :name, "
+			  + "description = :description, "
+			  + "url = :url, "
+			  + "method = :method, "
+			  + "ttl = :ttl, "
+			  + "folder = :folder "
+			  + "WHERE id = :id";
+	private static final String SELECT_ALL = "SELECT * FROM " + TABLE_NAME;
+	private static final String SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = :id";
+	private static final String DELETE = "DELETE FROM " + TABLE_NAME + " WHERE id = :id";
+	
 	private final DBI jdbi;
+	private final OutputMapper mapper;
 	
 	public OutputDao(DBI jdbi) {
 		this.jdbi = jdbi;
+		this.mapper = new OutputMapper();
 	}
 	
 	public int insert(OutputTo outputTo) {
-		
-		int id;
 		try (Handle h = jdbi.open()) {
-			id = -1;
-			switch(outputTo.getType()) {
-				case WebhookOutputTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (creationDate, lastModificationDate, driverId, outputDefinitionId, type, name, description, url, method) "
-						+ "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :outputDefinitionId, :type, :name, :description, :url, :method)")
-						.bind("driverId", outputTo.getDriverId())
-						.bind("outputDefinitionId", outputTo.getOutputDefinitionId())
-						.bind("type", WebhookOutputTo.TYPE)
-						.bind("name", outputTo.getName())
-						.bind("description", outputTo.getDescription())
-						.bind("url", ((WebhookOutputTo)outputTo).getUrl())
-						.bind("method", ((WebhookOutputTo)outputTo).getMethod())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					
-					// FIXME: handle headers here
-					
-					break;
-				case PollingOutputTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (creationDate, lastModificationDate, driverId, outputDefinitionId, type, name, description, ttl) "
-						+ "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :outputDefinitionId, :type, :name, :description, :ttl)")
-						.bind("driverId", outputTo.getDriverId())
-						.bind("outputDefinitionId", outputTo.getOutputDefinitionId())
-						.bind("type", PollingOutputTo.TYPE)
-						.bind("name", outputTo.getName())
-						.bind("description", outputTo.getDescription())
-						.bind("ttl", ((PollingOutputTo)outputTo).getTtl())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-				case FilesystemOutputTo.TYPE:
-					id = h.createStatement("INSERT INTO " + TABLE_NAME
-						+ " (creationDate, lastModificationDate, driverId, outputDefinitionId, type, name, description, folder) "
-						+ "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :driverId, :outputDefinitionId, :type, :name, :description, :folder)")
-						.bind("driverId", outputTo.getDriverId())
-						.bind("outputDefinitionId", outputTo.getOutputDefinitionId())
-						.bind("type", FilesystemOutputTo.TYPE)
-						.bind("name", outputTo.getName())
-						.bind("description", outputTo.getDescription())
-						.bind("folder", ((FilesystemOutputTo)outputTo).getFolder())
-						.executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
-						.first();
-					break;
-			}
+			return insert(h, outputTo);
 		}
-		return id;
+	}
+	
+	public int insert(Handle h, OutputTo outputTo) {
+		return bindFields(h.createStatement(INSERT), outputTo)
+				  .bind("driverId", outputTo.getDriverId())
+				  .bind("outputDefinitionId", outputTo.getOutputDefinitionId())
+				  .bind("type", outputTo.getType())
+				  .executeAndReturnGeneratedKeys(IntegerColumnMapper.PRIMITIVE)
+				  .first();
 	}
 	
 	public List<OutputTo> findAll() {
 		try(Handle h = jdbi.open()){
-			return h.createQuery("SELECT * FROM " + TABLE_NAME)
-					  .map(new OutputMapper())
-					  .list();
+			return findAll(h);
 		}
 	}
 	
+	public List<OutputTo> findAll(Handle h) {
+		return h.createQuery(SELECT_ALL)
+				  .map(mapper)
+				  .list();
+	}
+	
+	/**
+	 * Find several outputs in a single query.
+	 * @param ids The output ids
+	 * @return The outputs, by id
+	 */
+	public Map<Integer, OutputTo> findByIds(Collection<Integer> ids) {
+		
+		if (ids.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<Integer, OutputTo> tos = new HashMap<>();
+		try(Handle h = jdbi.open()){
+			InClause.bind(h.createQuery("SELECT * FROM " + TABLE_NAME 
+					  + " WHERE id IN (" + InClause.placeholders("id", ids.size()) + ")"), "id", ids)
+					  .map(mapper)
+					  .list()
+					  .forEach((to) -> tos.put(to.getId(), to));
+		}
+		return tos;
+	}
+	
 	public OutputTo findById(int id) {
 		try(Handle h = jdbi.open()){
-			return h.createQuery("SELECT * FROM " + TABLE_NAME + " WHERE id = :id")
-					  .bind("id", id)
-					  .map(new OutputMapper())
-					  .first();
+			return findById(h, id);
 		}
 	}
 	
+	public OutputTo findById(Handle h, int id) {
+		return h.createQuery(SELECT_BY_ID)
+				  .bind("id", id)
+				  .map(mapper)
+				  .first();
+	}
+	
 	public void update(int id, OutputTo newTo) {
-		
 		try (Handle h = jdbi.open()) {
-			switch(newTo.getType()) {
-				case WebhookOutputTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "name = :name, "
-						+ "description = :description, "
-						+ "url = :url, "
-						+ "method = :method "
-						+ "WHERE id = :id")
-						.bind("id", id)
-						.bind("name", newTo.getName())
-						.bind("description", newTo.getDescription())
-						.bind("url", ((WebhookOutputTo)newTo).getUrl())
-						.bind("method", ((WebhookOutputTo)newTo).getMethod())
-						.execute();
-					
-					// FIXME: handle headers here
-					
-					break;
-				case PollingOutputTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "name = :name, "
-						+ "description = :description, "
-						+ "ttl = :ttl "
-						+ "WHERE id = :id")
-						.bind("id", id)
-						.bind("name", newTo.getName())
-						.bind("description", newTo.getDescription())
-						.bind("ttl", ((PollingOutputTo)newTo).getTtl())
-						.execute();
-					break;
-				case FilesystemOutputTo.TYPE:
-					h.createStatement("UPDATE " + TABLE_NAME + " SET "
-						+ "lastModificationDate = CURRENT_TIMESTAMP, "
-						+ "name = :name, "
-						+ "description = :description, "
-						+ "folder = :folder "
-						+ "WHERE id = :id")
-						.bind("id", id)
-						.bind("name", newTo.getName())
-						.bind("description", newTo.getDescription())
-						.bind("folder", ((FilesystemOutputTo)newTo).getFolder())
-						.execute();
-					break;
-			}
+			update(h, id, newTo);
 		}
 	}
 	
+	public void update(Handle h, int id, OutputTo newTo) {
+		bindFields(h.createStatement(UPDATE), newTo)
+				  .bind("id", id)
+				  .execute();
+	}
+	
 	public void delete(int id) {
 		try(Handle h = jdbi.open()){
-			h.createStatement("DELETE FROM " + TABLE_NAME + " WHERE id = :id")
-					  .bind("id", id)
-					  .execute();
+			delete(h, id);
 		}
 	}
 	
+	public void delete(Handle h, int id) {
+		h.createStatement(DELETE)
+				  .bind("id", id)
+				  .execute();
+	}
+	
+	private static <T extends SQLStatement<T>> T bindFields(T statement, OutputTo to) {
+		
+		// common fields
+		statement.bind("name", to.getName())
+				  .bind("description", to.getDescription());
+		
+		// specific fields (null when they do not apply)
+		WebhookOutputTo webhookTo = to instanceof WebhookOutputTo ? (WebhookOutputTo)to : null;
+		PollingOutputTo pollingTo = to instanceof PollingOutputTo ? (PollingOutputTo)to : null;
+		FilesystemOutputTo fsTo = to instanceof FilesystemOutputTo ? (FilesystemOutputTo)to : null;
+		
+		// FIXME: handle headers here
+		
+		return statement
+				  .bind("url", webhookTo == null ? null : webhookTo.getUrl())
+				  .bind("method", webhookTo == null ? null : webhookTo.getMethod())
+				  .bind("ttl", pollingTo == null ? null : pollingTo.getTtl())
+				  .bind("folder", fsTo == null ? null : fsTo.getFolder());
+	}
+	
 	private class OutputMapper extends BaseResultSetMapper<OutputTo> {
 		@Override
 		protected OutputTo mapInternal(int index, Map<String, Object> row) {
@@ -219,7 +222,7 @@ public class OutputDao {
 					break;
 				case PollingOutputTo.TYPE:
 					to = new PollingOutputTo();
-					((PollingOutputTo)to).setTtl((int)row.get("ttl"));
+					((PollingOutputTo)to).setTtl((Integer)row.get("ttl"));
 					break;
 				case FilesystemOutputTo.TYPE:
 					to = new FilesystemOutputTo();
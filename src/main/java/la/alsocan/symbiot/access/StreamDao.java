@@ -50,18 +50,93 @@ public interface StreamDao {
 			  + "CONSTRAINT input_fk FOREIGN KEY (inputId) REFERENCES "+InputDao.TABLE_NAME+" (id) ON DELETE RESTRICT,"
 			  + "CONSTRAINT output_fk FOREIGN KEY (outputId) REFERENCES "+OutputDao.TABLE_NAME+" (id) ON DELETE RESTRICT)";
 	
+	// nodes which remain to be bound (column added by a migration, see SchemaMigrator)
+	static final String UNBOUND_NODES = "unboundNodes";
+	
+	// lookups by input (ingestion path) and by output, ordered by id (pagination)
+	static final String INPUT_INDEX = "streams_input_idx";
+	static final String OUTPUT_INDEX = "streams_output_idx";
+	
 	@SqlUpdate("INSERT INTO " + TABLE_NAME
-			  + " (creationDate, lastModificationDate, inputId, outputId, totalBindings) "
-			  + "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :inputId, :outputId, :totalBindings)")
+			  + " (creationDate, lastModificationDate, inputId, outputId, totalBindings, unboundNodes) "
+			  + "VALUES (CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, :inputId, :outputId, :totalBindings, :unboundNodes)")
 	@GetGeneratedKeys
 	int insert(
 			  @Bind("inputId") int inputId, 
 			  @Bind("outputId") int outputId,
-			  @Bind("totalBindings") int totalBindings);
+			  @Bind("totalBindings") int totalBindings,
+			  @Bind("unboundNodes") String unboundNodes);
+	
+	/**
+	 * Store the nodes which remain to be bound (to be called whenever bindings change).
+	 * @param id The stream id
+	 * @param unboundNodes The node pointers, as encoded by {@link StreamMapper#encodeNodes(java.util.List)}
+	 */
+	@SqlUpdate("UPDATE " + TABLE_NAME + " SET "
+			  + "lastModificationDate = CURRENT_TIMESTAMP, "
+			  + "unboundNodes = :unboundNodes "
+			  + "WHERE id = :id")
+	void updateUnboundNodes(
+			  @Bind("id") int id, 
+			  @Bind("unboundNodes") String unboundNodes);
+	
+	/**
+	 * Lock a stream until the end of the transaction, so that concurrent changes 
+	 * of its bindings run one after the other.
+	 * @param id The stream id
+	 * @return The number of locked streams (0 if it does not exist)
+	 */
+	@SqlUpdate("UPDATE " + TABLE_NAME + " SET "
+			  + "lastModificationDate = CURRENT_TIMESTAMP "
+			  + "WHERE id = :id")
+	int lock(@Bind("id") int id);
 	
 	@SqlQuery("SELECT * FROM " + TABLE_NAME)
 	List<StreamTo> findAll();
 	
+	/**
+	 * Find a page of streams (keyset pagination, ordered by id).
+	 * @param cursor Only return streams with a greater id
+	 * @param limit The maximum number of streams
+	 * @return The streams
+	 */
+	@SqlQuery("SELECT * FROM " + TABLE_NAME + " WHERE id > :cursor "
+			  + "ORDER BY id FETCH FIRST :limit ROWS ONLY")
+	List<StreamTo> findPage(
+			  @Bind("cursor") int cursor, 
+			  @Bind("limit") int limit);
+	
+	/**
+	 * Same as above, for the streams of an input.
+	 */
+	@SqlQuery("SELECT * FROM " + TABLE_NAME + " WHERE inputId = :inputId AND id > :cursor "
+			  + "ORDER BY id FETCH FIRST :limit ROWS ONLY")
+	List<StreamTo> findPageByInput(
+			  @Bind("inputId") int inputId, 
+			  @Bind("cursor") int cursor, 
+			  @Bind("limit") int limit);
+	
+	/**
+	 * Same as above, for the streams of an output.
+	 */
+	@SqlQuery("SELECT * FROM " + TABLE_NAME + " WHERE outputId = :outputId AND id > :cursor "
+			  + "ORDER BY id FETCH FIRST :limit ROWS ONLY")
+	List<StreamTo> findPageByOutput(
+			  @Bind("outputId") int outputId, 
+			  @Bind("cursor") int cursor, 
+			  @Bind("limit") int limit);
+	
+	/**
+	 * Same as above, for the streams between an input and an output.
+	 */
+	@SqlQuery("SELECT * FROM " + TABLE_NAME + " WHERE inputId = :inputId AND outputId = :outputId AND id > :cursor "
+			  + "ORDER BY id FETCH FIRST :limit ROWS ONLY")
+	List<StreamTo> findPageByInputAndOutput(
+			  @Bind("inputId") int inputId, 
+			  @Bind("outputId") int outputId, 
+			  @Bind("cursor") int cursor, 
+			  @Bind("limit") int limit);
+	
 	@SqlQuery("SELECT * FROM " + TABLE_NAME + " WHERE id = :id")
 	StreamTo findById(@Bind("id") int id);
 	
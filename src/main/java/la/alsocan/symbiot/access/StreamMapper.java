@@ -25,6 +25,9 @@ package la.alsocan.symbiot.access;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import la.alsocan.symbiot.api.to.StreamTo;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -35,6 +38,9 @@ import org.skife.jdbi.v2.tweak.ResultSetMapper;
  * @author Florian Poulin - https://github.com/fpoulin
  */
 public class StreamMapper implements ResultSetMapper<StreamTo> {
+	
+	// node pointers are stored as a single column, one per line
+	private static final String NODE_SEPARATOR = "\n";
 
 	@Override
 	public StreamTo map(int index, ResultSet r, StatementContext ctx) throws SQLException {
@@ -47,7 +53,21 @@ public class StreamMapper implements ResultSetMapper<StreamTo> {
 		to.setInputId(r.getInt("inputId"));
 		to.setOutputId(r.getInt("outputId"));
 		to.setTotalBindings(r.getInt("totalBindings"));
+		to.setUnboundNodes(decodeNodes(r.getString("unboundNodes")));
 		
 		return to;
 	}
+	
+	public static String encodeNodes(List<String> nodes) {
+		return String.join(NODE_SEPARATOR, nodes);
+	}
+	
+	private static List<String> decodeNodes(String nodes) {
+		
+		// null for streams stored before the column existed (to be recomputed)
+		if (nodes == null) {
+			return null;
+		}
+		return nodes.isEmpty() ? Collections.emptyList() : Arrays.asList(nodes.split(NODE_SEPARATOR));
+	}
 }
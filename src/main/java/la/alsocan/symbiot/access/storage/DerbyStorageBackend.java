@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access.storage;
+
+import io.dropwizard.db.DataSourceFactory;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Embedded Derby database, stored in a folder (<code>jdbc:derby:symbiotDB</code>).
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class DerbyStorageBackend implements StorageBackend {
+	
+	private static final String PREFIX = "jdbc:derby:";
+
+	@Override
+	public String getName() {
+		return "derby";
+	}
+
+	@Override
+	public boolean accepts(String url) {
+		return url.startsWith(PREFIX) && !url.startsWith(InMemoryStorageBackend.DERBY_PREFIX);
+	}
+
+	@Override
+	public boolean isEphemeral() {
+		return false;
+	}
+
+	@Override
+	public Connection dropAndCreate(DataSourceFactory conf) throws Exception {
+		
+		// the database is a folder, named after the url (ignoring attributes)
+		String url = conf.getUrl();
+		int attributes = url.indexOf(';');
+		String name = url.substring(PREFIX.length(), attributes < 0 ? url.length() : attributes);
+		File f = new File(name);
+		Class.forName(conf.getDriverClass());
+		if (f.exists() && f.isDirectory()) {
+			
+			// make sure it is not booted (Derby always reports a shutdown as an error)
+			try {
+				DriverManager.getConnection(PREFIX + name + ";shutdown=true", conf.getUser(), conf.getPassword()).close();
+			} catch (SQLException ex) {
+				// expected
+			}
+			FileUtils.deleteDirectory(f);
+		}
+		
+		return DriverManager.getConnection(url + ";create=true", conf.getUser(), conf.getPassword());
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access.storage;
+
+import io.dropwizard.db.DataSourceFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+/**
+ * Embedded H2 database, stored in a file (<code>jdbc:h2:./symbiotDB</code>). 
+ * Much lighter than Derby per statement, which matters for the configuration API.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class H2StorageBackend implements StorageBackend {
+	
+	private static final String PREFIX = "jdbc:h2:";
+
+	@Override
+	public String getName() {
+		return "h2";
+	}
+
+	@Override
+	public boolean accepts(String url) {
+		return url.startsWith(PREFIX) && !url.startsWith(InMemoryStorageBackend.H2_PREFIX);
+	}
+
+	@Override
+	public boolean isEphemeral() {
+		return false;
+	}
+
+	@Override
+	public Connection dropAndCreate(DataSourceFactory conf) throws Exception {
+		
+		// H2 creates the database on first connection
+		Class.forName(conf.getDriverClass());
+		Connection c = DriverManager.getConnection(conf.getUrl(), conf.getUser(), conf.getPassword());
+		try (Statement s = c.createStatement()) {
+			s.execute("DROP ALL OBJECTS");
+		}
+		return c;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access.storage;
+
+import io.dropwizard.db.DataSourceFactory;
+import java.sql.Connection;
+
+/**
+ * In-memory database, for tests and ephemeral nodes: everything is lost on 
+ * shutdown, and the schema is created on startup.
+ * <p>
+ * Use <code>jdbc:h2:mem:symbiotDB;DB_CLOSE_DELAY=-1</code> (otherwise the 
+ * database vanishes when the pool closes its last connection), or 
+ * <code>jdbc:derby:memory:symbiotDB;create=true</code>.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class InMemoryStorageBackend implements StorageBackend {
+	
+	static final String H2_PREFIX = "jdbc:h2:mem:";
+	static final String DERBY_PREFIX = "jdbc:derby:memory:";
+
+	@Override
+	public String getName() {
+		return "memory";
+	}
+
+	@Override
+	public boolean accepts(String url) {
+		return url.startsWith(H2_PREFIX) || url.startsWith(DERBY_PREFIX);
+	}
+
+	@Override
+	public boolean isEphemeral() {
+		return true;
+	}
+
+	@Override
+	public Connection dropAndCreate(DataSourceFactory conf) throws Exception {
+		throw new IllegalStateException("In-memory databases are created on startup, there is nothing to drop");
+	}
+}
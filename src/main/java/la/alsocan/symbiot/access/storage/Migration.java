@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access.storage;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+/**
+ * A schema change, identified by its version.
+ * <p>
+ * Migrations are forward-only: once released, a migration is never modified 
+ * nor removed (a new one is appended instead, see {@link SchemaMigrator}).
+ * <p>
+ * Some databases (H2) commit DDL statements as they run, so a migration that 
+ * fails half-way may leave some of its changes behind. Each step can therefore 
+ * be guarded by a detector, and is skipped when its change is already there.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public final class Migration {
+	
+	private final int version;
+	private final String description;
+	private final Detector detector;
+	private final Step[] steps;
+
+	/**
+	 * @param version The version (strictly increasing)
+	 * @param description What the migration does
+	 * @param detector Tells if a database without versions (created before 
+	 * migrations existed) already has this change
+	 * @param statements The SQL statements to run (in a single transaction)
+	 */
+	public Migration(int version, String description, Detector detector, String... statements) {
+		this(version, description, detector, steps(statements));
+	}
+	
+	/**
+	 * @param version The version (strictly increasing)
+	 * @param description What the migration does
+	 * @param detector Tells if a database without versions (created before 
+	 * migrations existed) already has this change
+	 * @param steps The steps to run (in a single transaction)
+	 */
+	public Migration(int version, String description, Detector detector, Step... steps) {
+		this.version = version;
+		this.description = description;
+		this.detector = detector;
+		this.steps = steps;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public Step[] getSteps() {
+		return steps;
+	}
+	
+	boolean isPresent(DatabaseMetaData meta) throws SQLException {
+		return detector.isPresent(meta);
+	}
+	
+	private static Step[] steps(String[] statements) {
+		Step[] steps = new Step[statements.length];
+		for (int i = 0; i < statements.length; i++) {
+			steps[i] = new Step((meta) -> false, statements[i]);
+		}
+		return steps;
+	}
+	
+	@FunctionalInterface
+	public interface Detector {
+		boolean isPresent(DatabaseMetaData meta) throws SQLException;
+	}
+	
+	/**
+	 * One SQL statement of a migration.
+	 */
+	public static final class Step {
+		
+		private final Detector detector;
+		private final String statement;
+
+		/**
+		 * @param detector Tells if the change of this statement is already there 
+		 * (the statement is then skipped)
+		 * @param statement The SQL statement
+		 */
+		public Step(Detector detector, String statement) {
+			this.detector = detector;
+			this.statement = statement;
+		}
+
+		public String getStatement() {
+			return statement;
+		}
+		
+		boolean isPresent(DatabaseMetaData meta) throws SQLException {
+			return detector.isPresent(meta);
+		}
+	}
+}
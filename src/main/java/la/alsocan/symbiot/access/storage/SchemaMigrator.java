@@ -0,0 +1,300 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access.storage;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import la.alsocan.symbiot.access.storage.Migration.Step;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the pending migrations to a database (on startup, or with the 
+ * <code>migrate</code> command), and records them in a version table.
+ * <p>
+ * A database created before migrations existed has no version table: it is 
+ * baselined first, by recording the migrations its schema already has.
+ * <p>
+ * Each migration runs in a transaction, but H2 commits DDL statements as they 
+ * run: a failed migration may then leave some of its steps applied. This is why 
+ * each step checks whether its change is already there before running, so that 
+ * the migration can simply be retried.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class SchemaMigrator {
+	
+	public static final String TABLE_NAME = "schema_version";
+	public static final String DDL = 
+			  "CREATE TABLE " + TABLE_NAME + "("
+			  + "version INTEGER NOT NULL, "
+			  + "description VARCHAR(256) NOT NULL, "
+			  + "appliedDate TIMESTAMP NOT NULL, "
+			  + "CONSTRAINT schema_version_key PRIMARY KEY (version))";
+	
+	// never modify nor remove a released migration, append a new one instead 
+	// (its SQL is written out here, so that later changes to the DAOs do not alter it)
+	private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+		new Migration(1, "Create tables", 
+				  (meta) -> hasTable(meta, "streams"),
+				  new Step((meta) -> hasTable(meta, "inputs"), 
+							 "CREATE TABLE inputs("
+							 + "id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), "
+							 + "creationDate TIMESTAMP NOT NULL, "
+							 + "lastModificationDate TIMESTAMP NOT NULL, "
+							 + "driverId VARCHAR(32) NOT NULL, "
+							 + "inputDefinitionId VARCHAR(32) NOT NULL, "
+							 + "type VARCHAR(32) NOT NULL, "
+							 + "name VARCHAR(32) NOT NULL, "
+							 + "description VARCHAR(512) NOT NULL, "
+							 + "frequency INTEGER, "
+							 + "url VARCHAR(256), "
+							 + "method VARCHAR(6), "
+							 + "folder VARCHAR(256), "
+							 + "regex VARCHAR(64), "
+							 + "deleteAfterRead BOOLEAN, "
+							 + "CONSTRAINT input_key PRIMARY KEY (id))"),
+				  new Step((meta) -> hasTable(meta, "outputs"), 
+							 "CREATE TABLE outputs("
+							 + "id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), "
+							 + "creationDate TIMESTAMP NOT NULL, "
+							 + "lastModificationDate TIMESTAMP NOT NULL, "
+							 + "driverId VARCHAR(32) NOT NULL, "
+							 + "outputDefinitionId VARCHAR(32) NOT NULL, "
+							 + "type VARCHAR(32) NOT NULL, "
+							 + "name VARCHAR(32) NOT NULL, "
+							 + "description VARCHAR(512) NOT NULL, "
+							 + "url VARCHAR(256), "
+							 + "method VARCHAR(6), "
+							 + "ttl INTEGER, "
+							 + "folder VARCHAR(256), "
+							 + "CONSTRAINT output_key PRIMARY KEY (id))"),
+				  new Step((meta) -> hasTable(meta, "streams"), 
+							 "CREATE TABLE streams("
+							 + "id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), "
+							 + "creationDate TIMESTAMP NOT NULL, "
+							 + "lastModificationDate TIMESTAMP NOT NULL, "
+							 + "inputId INTEGER NOT NULL, "
+							 + "outputId INTEGER NOT NULL, "
+							 + "totalBindings INTEGER NOT NULL, "
+							 + "CONSTRAINT streams_key PRIMARY KEY (id),"
+							 + "CONSTRAINT input_fk FOREIGN KEY (inputId) REFERENCES inputs (id) ON DELETE RESTRICT,"
+							 + "CONSTRAINT output_fk FOREIGN KEY (outputId) REFERENCES outputs (id) ON DELETE RESTRICT)"),
+				  new Step((meta) -> hasTable(meta, "bindings"), 
+							 "CREATE TABLE bindings("
+							 + "id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), "
+							 + "lastModificationDate TIMESTAMP NOT NULL, "
+							 + "streamId INTEGER NOT NULL, "
+							 + "type VARCHAR(32) NOT NULL, "
+							 + "targetNode VARCHAR(256) NOT NULL, "
+							 + "sourceNode VARCHAR(256), "
+							 + "arrayConstant INTEGER, "
+							 + "booleanConstant BOOLEAN, "
+							 + "integerConstant INTEGER, "
+							 + "numberConstant DOUBLE PRECISION, "
+							 + "stringConstant VARCHAR(512), "
+							 + "CONSTRAINT binding_key PRIMARY KEY (id),"
+							 + "CONSTRAINT stream_fk FOREIGN KEY (streamId) "
+							 + " REFERENCES streams (id) ON DELETE CASCADE)")),
+		new Migration(2, "Store the unbound nodes of streams", 
+				  (meta) -> hasColumn(meta, "streams", "unboundNodes"), 
+				  new Step((meta) -> hasColumn(meta, "streams", "unboundNodes"), 
+							 "ALTER TABLE streams ADD COLUMN unboundNodes CLOB")),
+		new Migration(3, "Index stream and binding lookups", 
+				  (meta) -> hasIndex(meta, "bindings", "bindings_target_idx"), 
+				  new Step((meta) -> hasIndex(meta, "streams", "streams_input_idx"), 
+							 "CREATE INDEX streams_input_idx ON streams (inputId, id)"),
+				  new Step((meta) -> hasIndex(meta, "streams", "streams_output_idx"), 
+							 "CREATE INDEX streams_output_idx ON streams (outputId, id)"),
+				  // keeps the most recent binding of each target node (duplicates could be created before the index)
+				  new Step((meta) -> hasIndex(meta, "bindings", "bindings_target_idx"), 
+							 "DELETE FROM bindings WHERE id NOT IN "
+							 + "(SELECT MAX(id) FROM bindings GROUP BY streamId, targetNode)"),
+				  new Step((meta) -> hasIndex(meta, "bindings", "bindings_target_idx"), 
+							 "CREATE UNIQUE INDEX bindings_target_idx ON bindings (streamId, targetNode)")),
+		new Migration(4, "Store the headers of inputs", 
+				  (meta) -> hasColumn(meta, "inputs", "headers"), 
+				  new Step((meta) -> hasColumn(meta, "inputs", "headers"), 
+							 "ALTER TABLE inputs ADD COLUMN headers VARCHAR(4096)"))
+	));
+	
+	private static final Logger LOG = LoggerFactory.getLogger(SchemaMigrator.class);
+	
+	private final List<Migration> migrations;
+
+	public SchemaMigrator() {
+		this(MIGRATIONS);
+	}
+	
+	SchemaMigrator(List<Migration> migrations) {
+		this.migrations = migrations;
+	}
+	
+	/**
+	 * @return The version of the schema expected by this code
+	 */
+	public int getLatestVersion() {
+		return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+	}
+	
+	/**
+	 * Bring a database up to date.
+	 * @param c A connection to the database (possibly empty)
+	 * @return The number of migrations applied
+	 * @throws SQLException If a migration failed (it is rolled back as far as 
+	 * the database allows, and the following ones are not applied)
+	 */
+	public int migrate(Connection c) throws SQLException {
+		
+		boolean autoCommit = c.getAutoCommit();
+		try {
+			int current = currentVersion(c);
+			int applied = 0;
+			for (Migration m : migrations) {
+				if (m.getVersion() > current) {
+					apply(c, m);
+					applied++;
+				}
+			}
+			if (applied > 0) {
+				LOG.info("Schema migrated from version " + current + " to " + getLatestVersion());
+			} else if (current > getLatestVersion()) {
+				LOG.warn("Schema version " + current + " is newer than expected (" + getLatestVersion() + ")");
+			}
+			return applied;
+		} finally {
+			c.setAutoCommit(autoCommit);
+		}
+	}
+	
+	/**
+	 * @param c A connection to the database
+	 * @return The current version (creates the version table if needed, and 
+	 * baselines databases created before migrations existed)
+	 * @throws SQLException If the version could not be read
+	 */
+	public int currentVersion(Connection c) throws SQLException {
+		
+		DatabaseMetaData meta = c.getMetaData();
+		if (hasTable(meta, TABLE_NAME)) {
+			try (Statement s = c.createStatement(); 
+				  ResultSet rs = s.executeQuery("SELECT MAX(version) FROM " + TABLE_NAME)) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		}
+		
+		// version table is missing (new or legacy database)
+		boolean autoCommit = c.getAutoCommit();
+		c.setAutoCommit(false);
+		int baseline = 0;
+		try {
+			try (Statement s = c.createStatement()) {
+				s.executeUpdate(DDL);
+			}
+			for (Migration m : migrations) {
+				if (!m.isPresent(meta)) {
+					break;
+				}
+				record(c, m, m.getDescription() + " (baseline)");
+				baseline = m.getVersion();
+			}
+			c.commit();
+		} catch (SQLException ex) {
+			c.rollback();
+			throw ex;
+		} finally {
+			c.setAutoCommit(autoCommit);
+		}
+		if (baseline > 0) {
+			LOG.info("Existing schema baselined at version " + baseline);
+		}
+		return baseline;
+	}
+	
+	private void apply(Connection c, Migration m) throws SQLException {
+		
+		c.setAutoCommit(false);
+		try {
+			DatabaseMetaData meta = c.getMetaData();
+			try (Statement s = c.createStatement()) {
+				for (Step step : m.getSteps()) {
+					if (!step.isPresent(meta)) {
+						s.executeUpdate(step.getStatement());
+					}
+				}
+			}
+			record(c, m, m.getDescription());
+			c.commit();
+		} catch (SQLException ex) {
+			c.rollback();
+			throw new SQLException("Migration " + m.getVersion() + " (" + m.getDescription() + ") failed", ex);
+		}
+		LOG.info("Applied migration " + m.getVersion() + " (" + m.getDescription() + ")");
+	}
+	
+	private static void record(Connection c, Migration m, String description) throws SQLException {
+		
+		try (PreparedStatement ps = c.prepareStatement("INSERT INTO " + TABLE_NAME 
+				  + " (version, description, appliedDate) VALUES (?, ?, CURRENT_TIMESTAMP)")) {
+			ps.setInt(1, m.getVersion());
+			ps.setString(2, description);
+			ps.executeUpdate();
+		}
+	}
+	
+	// unquoted identifiers are stored in upper case (Derby, H2)
+	private static String identifier(DatabaseMetaData meta, String name) throws SQLException {
+		return meta.storesLowerCaseIdentifiers() ? name.toLowerCase() : name.toUpperCase();
+	}
+	
+	static boolean hasTable(DatabaseMetaData meta, String table) throws SQLException {
+		try (ResultSet rs = meta.getTables(null, null, identifier(meta, table), null)) {
+			return rs.next();
+		}
+	}
+	
+	static boolean hasColumn(DatabaseMetaData meta, String table, String column) throws SQLException {
+		try (ResultSet rs = meta.getColumns(null, null, identifier(meta, table), identifier(meta, column))) {
+			return rs.next();
+		}
+	}
+	
+	static boolean hasIndex(DatabaseMetaData meta, String table, String index) throws SQLException {
+		try (ResultSet rs = meta.getIndexInfo(null, null, identifier(meta, table), false, true)) {
+			while (rs.next()) {
+				if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.access.storage;
+
+import io.dropwizard.db.DataSourceFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ServiceLoader;
+
+/**
+ * Storage backend (SPI), selected by the JDBC url of the <code>database</code> 
+ * configuration.
+ * <p>
+ * The DAOs only use standard SQL, so a backend only deals with what differs 
+ * from one database to another: creating, connecting to and dropping the 
+ * database (the schema itself is managed by {@link SchemaMigrator}). 
+ * Backends are discovered with {@link ServiceLoader}, so that new ones can be 
+ * plugged in from the classpath.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public interface StorageBackend {
+	
+	/**
+	 * @return The backend name (used for metrics and logs)
+	 */
+	String getName();
+	
+	/**
+	 * @param url A JDBC url
+	 * @return True if this backend handles the given url
+	 */
+	boolean accepts(String url);
+	
+	/**
+	 * @return True if the database only lives in memory (there is nothing to 
+	 * drop, its schema is created by the migrations on startup)
+	 */
+	boolean isEphemeral();
+	
+	/**
+	 * Drop the database (if it exists) and create a new, empty one.
+	 * @param conf The database configuration
+	 * @return A connection to the new database
+	 * @throws Exception If the database could not be dropped or created
+	 */
+	Connection dropAndCreate(DataSourceFactory conf) throws Exception;
+	
+	/**
+	 * Connect to the existing database.
+	 * @param conf The database configuration
+	 * @return A connection to the database
+	 * @throws Exception If the database could not be reached
+	 */
+	default Connection connect(DataSourceFactory conf) throws Exception {
+		Class.forName(conf.getDriverClass());
+		return DriverManager.getConnection(conf.getUrl(), conf.getUser(), conf.getPassword());
+	}
+	
+	/**
+	 * Find the backend handling a JDBC url.
+	 * @param url The JDBC url
+	 * @return The backend
+	 * @throws IllegalArgumentException If no backend handles the url
+	 */
+	static StorageBackend forUrl(String url) {
+		
+		for (StorageBackend backend : ServiceLoader.load(StorageBackend.class)) {
+			if (backend.accepts(url)) {
+				return backend;
+			}
+		}
+		throw new IllegalArgumentException("No storage backend for url '" + url + "'");
+	}
+}
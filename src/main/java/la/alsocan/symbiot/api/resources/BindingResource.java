@@ -24,7 +24,12 @@
 package la.alsocan.symbiot.api.resources;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -49,26 +54,40 @@ import la.alsocan.symbiot.access.DriverDao;
 import la.alsocan.symbiot.access.InputDao;
 import la.alsocan.symbiot.access.OutputDao;
 import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.access.StreamMapper;
 import la.alsocan.symbiot.core.streams.StreamBuilder;
+import la.alsocan.symbiot.core.streams.SchemaCache;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
 
 /**
+ * Each modification runs in a single transaction (one connection for all the 
+ * lookups, the write and the update of the unbound nodes), which first locks 
+ * the stream so that concurrent changes of its bindings run one after the 
+ * other. The stream registry is only updated once the transaction is committed.
+ * 
  * @author Florian Poulin - https://github.com/fpoulin
  */
 @Path("/streams/{streamId}/bindings")
 public class BindingResource {
 	
+	private final DBI jdbi;
 	private final BindingDao bindingDao;
 	private final DriverDao driverDao;
 	private final InputDao inputDao;
 	private final OutputDao outputDao;
-	private final StreamDao streamDao;
+	private final SchemaCache schemaCache;
+	private final StreamRegistry streamRegistry;
 
-	public BindingResource(BindingDao bindingDao, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, StreamDao streamDao) {
+	public BindingResource(DBI jdbi, BindingDao bindingDao, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, SchemaCache schemaCache, StreamRegistry streamRegistry) {
+		this.jdbi = jdbi;
 		this.bindingDao = bindingDao;
 		this.driverDao = driverDao;
 		this.inputDao = inputDao;
 		this.outputDao = outputDao;
-		this.streamDao = streamDao;
+		this.schemaCache = schemaCache;
+		this.streamRegistry = streamRegistry;
 	}
 	
 	@POST
@@ -78,51 +97,144 @@ public class BindingResource {
 			  @PathParam("streamId") int streamId, 
 			  BindingTo to) {
 		
-		int count = bindingDao.countByTargetNode(to.getTargetNode(), streamId);
-		if (count > 0) {
-			return Response
-				.status(422)
-				.entity(new ErrorResponseTo("A binding for '"+to.getTargetNode()+"' already exists"))
-				.build();
-		}
-		
-		// lookup and build stream
-		StreamTo streamTo = streamDao.findById(streamId);
-		if (streamTo == null) {
-			return Response.status(404).build();
-		}
-		List<BindingTo> bindings = bindingDao.findAll(streamId);
-		Stream s = StreamBuilder.build(streamTo, driverDao, inputDao, outputDao, bindings);
+		return commit(jdbi.inTransaction((h, status) -> {
+			
+			// lookup and build stream
+			StreamDao streamDao = h.attach(StreamDao.class);
+			if (streamDao.lock(streamId) == 0) {
+				return Outcome.of(Response.status(404).build());
+			}
+			StreamTo streamTo = streamDao.findById(streamId);
+			List<BindingTo> bindings = bindingDao.findAll(h, streamId);
+			Stream s = StreamBuilder.build(h, streamTo, driverDao, inputDao, outputDao, schemaCache, bindings);
+			
+			// check target node
+			SchemaNode targetNode = s.getT().getTarget().at(to.getTargetNode());
+			if (targetNode == null) {
+				return Outcome.of(Response
+					.status(422)
+					.entity(new ErrorResponseTo("Could not find node '"+to.getTargetNode()+"' in target schema"))
+					.build());
+			}
+			
+			// build and apply binding
+			try {
+				Binding<?> binding = to.build(s);
+				s.getT().bind(targetNode, binding);
+			} catch (IllegalBindingException ex) {
+				return Outcome.of(Response
+					.status(422)
+					.entity(new ErrorResponseTo("Cannot add binding, reason: " + ex.getMessage()))
+					.build());
+			}
+			
+			// store binding (the unique index rejects a second binding for the same node)
+			int id;
+			try {
+				id = bindingDao.insert(h, to, streamId);
+			} catch (UnableToExecuteStatementException ex) {
+				if (!BindingDao.isDuplicate(ex)) {
+					throw ex;
+				}
+				status.setRollbackOnly();
+				return Outcome.of(Response
+					.status(422)
+					.entity(new ErrorResponseTo("A binding for '"+to.getTargetNode()+"' already exists"))
+					.build());
+			}
+			
+			// the stream we just built is now up-to-date
+			streamDao.updateUnboundNodes(streamId, StreamMapper.encodeNodes(s.unboundNodes()));
+			
+			// build response
+			URI absoluteUri = info.getBaseUriBuilder()
+				.path(this.getClass())
+				.path(this.getClass(), "get")
+				.build(streamTo.getId(), id);
+			return Outcome.refresh(Response.created(absoluteUri).build(), streamId);
+		}));
+	}
+	
+	/**
+	 * Replace all the bindings of a stream at once: the whole set is validated 
+	 * against a single transformation, then written in one batch.
+	 */
+	@PUT
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response putAll(
+			  @Context UriInfo info, 
+			  @PathParam("streamId") int streamId, 
+			  List<BindingTo> tos) {
 		
-		// check target node
-		SchemaNode targetNode = s.getT().getTarget().at(to.getTargetNode());
-		if (targetNode == null) {
+		if (tos == null) {
 			return Response
 				.status(422)
-				.entity(new ErrorResponseTo("Could not find node '"+to.getTargetNode()+"' in target schema"))
+				.entity(new ErrorResponseTo("Expected an array of bindings"))
 				.build();
 		}
 		
-		// build and apply binding
-		try {
-			Binding<?> binding = to.build(s);
-			s.getT().bind(targetNode, binding);
-		} catch (IllegalBindingException ex) {
-			return Response
-				.status(422)
-				.entity(new ErrorResponseTo("Cannot add binding, reason: " + ex.getMessage()))
-				.build();
+		// check target nodes (at most one binding per node)
+		Set<String> targetNodes = new HashSet<>();
+		for (BindingTo to : tos) {
+			if (to == null || to.getTargetNode() == null) {
+				return Response
+					.status(422)
+					.entity(new ErrorResponseTo("Every binding must have a target node"))
+					.build();
+			} else if (!targetNodes.add(to.getTargetNode())) {
+				return Response
+					.status(422)
+					.entity(new ErrorResponseTo("More than one binding for '"+to.getTargetNode()+"'"))
+					.build();
+			}
 		}
 		
-		// store binding
-		int id = bindingDao.insert(to, streamId);
+		// parents first (an array binding must be applied before the bindings of its items)
+		List<BindingTo> sorted = new ArrayList<>(tos);
+		sorted.sort(Comparator.comparing(BindingTo::getTargetNode));
 		
-		// build response
-		URI absoluteUri = info.getBaseUriBuilder()
-			.path(this.getClass())
-			.path(this.getClass(), "get")
-			.build(streamTo.getId(), id);
-		return Response.created(absoluteUri).build();
+		return commit(jdbi.inTransaction((h, status) -> {
+			
+			// lookup and build stream (without any binding)
+			StreamDao streamDao = h.attach(StreamDao.class);
+			if (streamDao.lock(streamId) == 0) {
+				return Outcome.of(Response.status(404).build());
+			}
+			StreamTo streamTo = streamDao.findById(streamId);
+			Stream s = StreamBuilder.build(h, streamTo, driverDao, inputDao, outputDao, schemaCache, Collections.emptyList());
+			if (s == null) {
+				return Outcome.of(Response
+					.status(422)
+					.entity(new ErrorResponseTo("Cannot build stream (driver or definition not found)"))
+					.build());
+			}
+			
+			// build and apply all bindings
+			for (BindingTo to : sorted) {
+				SchemaNode targetNode = s.getT().getTarget().at(to.getTargetNode());
+				if (targetNode == null) {
+					return Outcome.of(Response
+						.status(422)
+						.entity(new ErrorResponseTo("Could not find node '"+to.getTargetNode()+"' in target schema"))
+						.build());
+				}
+				try {
+					Binding<?> binding = to.build(s);
+					s.getT().bind(targetNode, binding);
+				} catch (IllegalBindingException ex) {
+					return Outcome.of(Response
+						.status(422)
+						.entity(new ErrorResponseTo("Cannot add binding for '"+to.getTargetNode()+"', reason: " + ex.getMessage()))
+						.build());
+				}
+			}
+			
+			// store bindings (the stream we just built is now up-to-date)
+			bindingDao.replaceAll(h, streamId, sorted);
+			streamDao.updateUnboundNodes(streamId, StreamMapper.encodeNodes(s.unboundNodes()));
+			return Outcome.refresh(Response.ok(bindingDao.findAll(h, streamId)).build(), streamId);
+		}));
 	}
 	
 	@GET
@@ -159,48 +271,53 @@ public class BindingResource {
 			  @PathParam("bindingId") int bindingId,
 			  BindingTo newTo) {
 		
-		// do some validation (check that target node is not different)
-		BindingTo current = bindingDao.findById(bindingId, streamId);
-		if (current == null) {
-			return Response.status(404).build();
-		} else if (newTo.getTargetNode() != null && !current.getTargetNode().equals(newTo.getTargetNode())) {
-			return Response
-				.status(422)
-				.entity(new ErrorResponseTo("Expected a binding for node '"+current.getTargetNode()+"'"))
-				.build();
-		}
-		
-		// lookup and build stream
-		StreamTo streamTo = streamDao.findById(streamId);
-		if (streamTo == null) {
-			return Response.status(404).build();
-		}
-		List<BindingTo> bindings = bindingDao.findAll(streamId);
-		Stream s = StreamBuilder.build(streamTo, driverDao, inputDao, outputDao, bindings);
-		
-		// lookup target node (should not fail, unless the target schema got updated)
-		SchemaNode targetNode = s.getT().getTarget().at(current.getTargetNode());
-		if (targetNode == null) {
-			return Response
-				.status(422)
-				.entity(new ErrorResponseTo("Could not find node '"+current.getTargetNode()+"' in target schema"))
-				.build();
-		}
-		
-		// build and apply binding
-		try {
-			Binding<?> binding = newTo.build(s);
-			s.getT().bind(targetNode, binding);
-		} catch (IllegalBindingException ex) {
-			return Response
-				.status(422)
-				.entity(new ErrorResponseTo("Cannot add binding, reason: " + ex.getMessage()))
-				.build();
-		}
-		
-		// update binding
-		bindingDao.update(bindingId, streamTo.getId(), newTo);
-		return Response.noContent().build();
+		return commit(jdbi.inTransaction((h, status) -> {
+			
+			// do some validation (check that target node is not different)
+			StreamDao streamDao = h.attach(StreamDao.class);
+			if (streamDao.lock(streamId) == 0) {
+				return Outcome.of(Response.status(404).build());
+			}
+			BindingTo current = bindingDao.findById(h, bindingId, streamId);
+			if (current == null) {
+				return Outcome.of(Response.status(404).build());
+			} else if (newTo.getTargetNode() != null && !current.getTargetNode().equals(newTo.getTargetNode())) {
+				return Outcome.of(Response
+					.status(422)
+					.entity(new ErrorResponseTo("Expected a binding for node '"+current.getTargetNode()+"'"))
+					.build());
+			}
+			
+			// lookup and build stream
+			StreamTo streamTo = streamDao.findById(streamId);
+			List<BindingTo> bindings = bindingDao.findAll(h, streamId);
+			Stream s = StreamBuilder.build(h, streamTo, driverDao, inputDao, outputDao, schemaCache, bindings);
+			
+			// lookup target node (should not fail, unless the target schema got updated)
+			SchemaNode targetNode = s.getT().getTarget().at(current.getTargetNode());
+			if (targetNode == null) {
+				return Outcome.of(Response
+					.status(422)
+					.entity(new ErrorResponseTo("Could not find node '"+current.getTargetNode()+"' in target schema"))
+					.build());
+			}
+			
+			// build and apply binding
+			try {
+				Binding<?> binding = newTo.build(s);
+				s.getT().bind(targetNode, binding);
+			} catch (IllegalBindingException ex) {
+				return Outcome.of(Response
+					.status(422)
+					.entity(new ErrorResponseTo("Cannot add binding, reason: " + ex.getMessage()))
+					.build());
+			}
+			
+			// update binding
+			bindingDao.update(h, bindingId, streamTo.getId(), newTo);
+			streamDao.updateUnboundNodes(streamId, StreamMapper.encodeNodes(s.unboundNodes()));
+			return Outcome.refresh(Response.noContent().build(), streamId);
+		}));
 	}
 	
 	@DELETE
@@ -210,12 +327,58 @@ public class BindingResource {
 			  @PathParam("streamId") int streamId, 
 			  @PathParam("bindingId") int bindingId) {
 		
-		BindingTo to = bindingDao.findById(bindingId, streamId);
-		if (to == null) {
-			return Response.status(404).build();
+		return commit(jdbi.inTransaction((h, status) -> {
+			
+			StreamDao streamDao = h.attach(StreamDao.class);
+			if (streamDao.lock(streamId) == 0) {
+				return Outcome.of(Response.status(404).build());
+			}
+			BindingTo to = bindingDao.findById(h, bindingId, streamId);
+			if (to == null) {
+				return Outcome.of(Response.status(404).build());
+			}
+			
+			bindingDao.delete(h, bindingId, streamId);
+			
+			// rebuild the stream without the binding (its target node is unbound again)
+			StreamTo streamTo = streamDao.findById(streamId);
+			Stream s = StreamBuilder.build(h, streamTo, driverDao, inputDao, outputDao, schemaCache, bindingDao.findAll(h, streamId));
+			if (s != null) {
+				streamDao.updateUnboundNodes(streamId, StreamMapper.encodeNodes(s.unboundNodes()));
+			}
+			return Outcome.refresh(Response.noContent().build(), streamId);
+		}));
+	}
+	
+	private Response commit(Outcome outcome) {
+		
+		// recompiled from what is committed (the last refresh of a stream always sees its last change)
+		if (outcome.refreshedStreamId != null) {
+			streamRegistry.refreshStream(outcome.refreshedStreamId);
+		}
+		return outcome.response;
+	}
+	
+	/**
+	 * Result of a transaction: the response, and the stream to refresh in the 
+	 * stream registry once committed (if any).
+	 */
+	private static final class Outcome {
+		
+		private final Response response;
+		private final Integer refreshedStreamId;
+
+		private Outcome(Response response, Integer refreshedStreamId) {
+			this.response = response;
+			this.refreshedStreamId = refreshedStreamId;
 		}
 		
-		bindingDao.delete(bindingId, streamId);
-		return Response.noContent().build();
+		private static Outcome of(Response response) {
+			return new Outcome(response, null);
+		}
+		
+		private static Outcome refresh(Response response, int streamId) {
+			return new Outcome(response, streamId);
+		}
 	}
 }
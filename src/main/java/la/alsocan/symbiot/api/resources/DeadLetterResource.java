@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.api.resources;
+
+import java.io.IOException;
+import java.util.List;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import la.alsocan.symbiot.api.to.DeadLetterTo;
+import la.alsocan.symbiot.api.to.ErrorResponseTo;
+import la.alsocan.symbiot.api.to.ReplayResultTo;
+import la.alsocan.symbiot.core.streams.DeadLetterReplayer;
+import la.alsocan.symbiot.core.streams.DeadLetterStore;
+import la.alsocan.symbiot.core.streams.Stream;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+@Path("/streams/{streamId}/dead-letters")
+public class DeadLetterResource {
+	
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	private static final int MAX_PAGE_SIZE = 1000;
+	private static final int MAX_REPLAY_SIZE = 10000;
+	
+	private final DeadLetterStore deadLetterStore;
+	private final DeadLetterReplayer deadLetterReplayer;
+	private final StreamRegistry streamRegistry;
+
+	public DeadLetterResource(DeadLetterStore deadLetterStore, DeadLetterReplayer deadLetterReplayer, StreamRegistry streamRegistry) {
+		this.deadLetterStore = deadLetterStore;
+		this.deadLetterReplayer = deadLetterReplayer;
+		this.streamRegistry = streamRegistry;
+	}
+	
+	/**
+	 * List the dead letters which were not replayed yet, one page at a time 
+	 * (ordered by id). The next page is advertised with a 
+	 * <code>Link: &lt;...&gt;; rel="next"</code> header.
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getAll(
+			  @Context UriInfo info, 
+			  @PathParam("streamId") int streamId, 
+			  @QueryParam(value = "cursor") @DefaultValue("0") long cursor,
+			  @QueryParam(value = "limit") @DefaultValue("" + DEFAULT_PAGE_SIZE) int limit) throws IOException {
+		
+		if (streamRegistry.findStream(streamId) == null) {
+			return Response.status(404).build();
+		}
+		if (limit < 1 || limit > MAX_PAGE_SIZE) {
+			return Response.status(422)
+				.entity(new ErrorResponseTo("The limit must be between 1 and " + MAX_PAGE_SIZE))
+				.build();
+		}
+		
+		List<DeadLetterTo> tos = deadLetterStore.find(streamId, cursor, limit);
+		Response.ResponseBuilder response = Response.ok(tos);
+		if (tos.size() == limit) {
+			response.link(info.getRequestUriBuilder()
+					  .replaceQueryParam("cursor", tos.get(tos.size() - 1).getId())
+					  .build(), "next");
+		}
+		return response.build();
+	}
+	
+	/**
+	 * Reprocess the oldest dead letters (up to <code>limit</code>), which are 
+	 * then no longer listed. Entries failing again are stored as new dead letters.
+	 * Only one replay runs at a time for a stream (409 otherwise).
+	 */
+	@POST
+	@Path(value = "replay")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response replay(
+			  @PathParam("streamId") int streamId, 
+			  @QueryParam(value = "limit") @DefaultValue("" + MAX_PAGE_SIZE) int limit) throws IOException, InterruptedException {
+		
+		Stream s = streamRegistry.findStream(streamId);
+		if (s == null) {
+			return Response.status(404).build();
+		}
+		if (limit < 1 || limit > MAX_REPLAY_SIZE) {
+			return Response.status(422)
+				.entity(new ErrorResponseTo("The limit must be between 1 and " + MAX_REPLAY_SIZE))
+				.build();
+		}
+		ReplayResultTo result = deadLetterReplayer.replay(s, limit);
+		if (result == null) {
+			return Response.status(409)
+				.entity(new ErrorResponseTo("The dead letters of stream '" + streamId + "' are already being replayed"))
+				.build();
+		}
+		return Response.ok(result).build();
+	}
+}
@@ -23,61 +23,81 @@
  */
 package la.alsocan.symbiot.api.resources;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.util.List;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
-import org.eclipse.jetty.util.log.Log;
-
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import la.alsocan.symbiot.access.BindingDao;
 import la.alsocan.symbiot.access.DriverDao;
 import la.alsocan.symbiot.access.InputDao;
-import la.alsocan.symbiot.access.OutputDao;
 import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.api.to.BulkPushResultTo;
 import la.alsocan.symbiot.api.to.ErrorResponseTo;
-import la.alsocan.symbiot.api.to.bindings.BindingTo;
 import la.alsocan.symbiot.api.to.drivers.DriverTo;
 import la.alsocan.symbiot.api.to.inputs.ApiPushInputTo;
 import la.alsocan.symbiot.api.to.inputs.InputTo;
-import la.alsocan.symbiot.api.to.outputs.OutputTo;
-import la.alsocan.symbiot.core.streams.Stream;
-import la.alsocan.symbiot.core.streams.StreamBuilder;
+import la.alsocan.symbiot.core.inputs.ApiPullEngine;
+import la.alsocan.symbiot.core.inputs.FilesystemInputWatcher;
+import la.alsocan.symbiot.core.inputs.WriteAheadLog;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
 
 /**
  * @author Florian Poulin - https://github.com/fpoulin
  */
 @Path("/inputs")
 public class InputResource {
+	
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+	
+	// payloads with the same key are processed in order (ex: a device id)
+	public static final String DEVICE_KEY_HEADER = "X-Device-Key";
 
 	private final DriverDao driverDao;
 	private final InputDao inputDao;
-	private final OutputDao outputDao;
 	private final StreamDao streamDao;
-	private final BindingDao bindingDao;
+	private final StreamRegistry streamRegistry;
+	private final StreamExecutor streamExecutor;
+	private final WriteAheadLog writeAheadLog;
+	private final ApiPullEngine apiPullEngine;
+	private final FilesystemInputWatcher filesystemWatcher;
+	private final StageMetrics stageMetrics;
 	private final ObjectMapper om;
 
-	public InputResource(DriverDao driverDao, InputDao inputDao, OutputDao outputDao, StreamDao streamDao, BindingDao bindingDao, ObjectMapper om) {
+	public InputResource(DriverDao driverDao, InputDao inputDao, StreamDao streamDao, StreamRegistry streamRegistry, 
+			  StreamExecutor streamExecutor, WriteAheadLog writeAheadLog, ApiPullEngine apiPullEngine, 
+			  FilesystemInputWatcher filesystemWatcher, StageMetrics stageMetrics, ObjectMapper om) {
 		this.driverDao = driverDao;
 		this.inputDao = inputDao;
-		this.outputDao = outputDao;
 		this.streamDao = streamDao;
-		this.bindingDao = bindingDao;
+		this.streamRegistry = streamRegistry;
+		this.streamExecutor = streamExecutor;
+		this.writeAheadLog = writeAheadLog;
+		this.apiPullEngine = apiPullEngine;
+		this.filesystemWatcher = filesystemWatcher;
+		this.stageMetrics = stageMetrics;
 		this.om = om;
 	}
 	
@@ -93,15 +113,22 @@ public class InputResource {
 				.entity(new ErrorResponseTo("Could not find driver '" 
 						  + inputTo.getDriverId() + "'")).build();
 		}
-		if (driver.getInputDefinition(inputTo.getInputDefinitionId()) == null) {
+		if (driverDao.findInputDefinition(driver.getId(), inputTo.getInputDefinitionId()) == null) {
 			return Response.status(422)
 				.entity(new ErrorResponseTo("Could not find input definition '" 
 						  + inputTo.getInputDefinitionId() + "' for driver '" 
 						  + inputTo.getDriverId()+"'")).build();
 		}
+		String invalid = filesystemWatcher.validate(null, inputTo);
+		if (invalid != null) {
+			return Response.status(422).entity(new ErrorResponseTo(invalid)).build();
+		}
 		
 		// insert new input
 		int id = inputDao.insert(inputTo);
+		streamRegistry.refreshInput(id);
+		apiPullEngine.refresh(id);
+		filesystemWatcher.refresh(id);
 		
 		// build response
 		URI absoluteUri = info.getBaseUriBuilder()
@@ -121,9 +148,10 @@ public class InputResource {
 	@Path(value = "{inputId}")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response post(@PathParam("inputId") int inputId, JsonNode payload) {
+	public Response post(@PathParam("inputId") int inputId, @HeaderParam(DEVICE_KEY_HEADER) String key, InputStream body) {
 		
-		InputTo inputTo = inputDao.findById(inputId);
+		// hot path: only use compiled streams (no database access)
+		InputTo inputTo = streamRegistry.findInput(inputId);
 		if (inputTo == null) {
 			return Response.status(404).build();
 		}
@@ -133,23 +161,125 @@ public class InputResource {
 				.entity(new ErrorResponseTo("Only the API push input type can handle calls'")).build();
 		}
 		
-		this.streamDao.findByInput(inputId).forEach(stream -> {
-			
-			List<BindingTo> bindings = bindingDao.findAll(stream.getId());
-			Stream s = StreamBuilder.build(stream, driverDao, inputDao, outputDao, bindings);
-			JsonNode result = s.getT().apply(payload);
-			
-			OutputTo out = outputDao.findById(stream.getOutputId());
+		// parsed here rather than by Jersey, so that parsing is measured
+		JsonNode payload;
+		long start = System.nanoTime();
+		try {
+			payload = om.readTree(body);
+		} catch (IOException ex) {
+			return Response.status(400)
+				.entity(new ErrorResponseTo("Malformed payload: " + ex.getMessage())).build();
+		}
+		StageMetrics.record(stageMetrics.input(inputId).getParse(), start);
+		if (payload == null) {
+			return Response.status(400)
+				.entity(new ErrorResponseTo("Expected a JSON payload")).build();
+		}
+		
+		// log payload, then queue it (transformation and delivery happen asynchronously)
+		long sequence;
+		try {
+			sequence = writeAheadLog.append(inputId, key, payload);
+		} catch (IllegalArgumentException ex) {
+			return Response.status(413).entity(new ErrorResponseTo(ex.getMessage())).build();
+		} catch (IOException ex) {
+			return Response.status(503).entity(new ErrorResponseTo(ex.getMessage())).build();
+		}
+		if (!streamExecutor.submit(inputId, key, payload, () -> writeAheadLog.complete(sequence))) {
+			writeAheadLog.complete(sequence);
+			return Response.status(429)
+				.entity(new ErrorResponseTo("Too many pending payloads")).build();
+		}
+		
+		// only acknowledge durable payloads (fsyncs are shared between concurrent calls)
+		try {
+			writeAheadLog.awaitSync(sequence);
+		} catch (IOException ex) {
+			return Response.status(503).entity(new ErrorResponseTo(ex.getMessage())).build();
+		}
+		return Response.accepted().build();
+	}
+	
+	@POST
+	@Path(value = "{inputId}/bulk")
+	@Consumes({MediaType.APPLICATION_JSON, APPLICATION_NDJSON})
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response postBulk(@PathParam("inputId") int inputId, @Context HttpHeaders headers, InputStream body) throws IOException {
+		
+		// hot path: only use compiled streams (no database access)
+		InputTo inputTo = streamRegistry.findInput(inputId);
+		if (inputTo == null) {
+			return Response.status(404).build();
+		}
+		
+		if (!inputTo.getType().equals(ApiPushInputTo.TYPE)) {
+			return Response.status(422)
+				.entity(new ErrorResponseTo("Only the API push input type can handle calls'")).build();
+		}
+		
+		// parse incrementally, items are processed as soon as they are read
+		boolean ndjson = headers.getMediaType() != null 
+				  && headers.getMediaType().isCompatible(MediaType.valueOf(APPLICATION_NDJSON));
+		String key = headers.getHeaderString(DEVICE_KEY_HEADER);
+		BulkPushResultTo result = new BulkPushResultTo();
+		long lastSequence = 0;
+		try (JsonParser parser = om.getFactory().createParser(body)) {
+			JsonToken token = parser.nextToken();
+			if (!ndjson) {
+				if (token != JsonToken.START_ARRAY) {
+					return Response.status(400)
+						.entity(new ErrorResponseTo("Expected a JSON array of payloads")).build();
+				}
+				token = parser.nextToken();
+			}
+			int index = 0;
+			Timer parse = stageMetrics.input(inputId).getParse();
+			while (token != null && token != JsonToken.END_ARRAY) {
+				long start = System.nanoTime();
+				JsonNode payload = om.readTree(parser);
+				StageMetrics.record(parse, start);
+				try {
+					long sequence = writeAheadLog.append(inputId, key, payload);
+					if (streamExecutor.submit(inputId, key, payload, () -> writeAheadLog.complete(sequence))) {
+						result.accept();
+						lastSequence = sequence;
+					} else {
+						writeAheadLog.complete(sequence);
+						result.reject(index, "Too many pending payloads");
+					}
+				} catch (IllegalArgumentException ex) {
+					result.fail(index, 413, ex.getMessage());
+				} catch (IOException ex) {
+					
+					// the log is unavailable, the item can be retried later
+					result.fail(index, 503, ex.getMessage());
+				} catch (RuntimeException ex) {
+					result.fail(index, 422, ex.getMessage());
+				}
+				index++;
+				token = parser.nextToken();
+			}
+		} catch (JsonProcessingException ex) {
 			
-			Log.getLogger(this.getClass()).info("Playing stream '"+stream.getId()+"'");
+			// previous items were already processed, so report them too
+			result.setError("Malformed payload at index " + result.getReceived() + ": " + ex.getOriginalMessage());
 			try {
-				Log.getLogger(this.getClass()).info("Throwing this to output '"+out.getId()+"': \n" + om.writerWithDefaultPrettyPrinter().writeValueAsString(result));
-			} catch (JsonProcessingException e) {
-				e.printStackTrace();
+				writeAheadLog.awaitSync(lastSequence);
+			} catch (IOException syncEx) {
+				result.setError(result.getError() + " (" + syncEx.getMessage() + ")");
+				return Response.status(503).entity(result).build();
 			}
-		});
-
-		return Response.noContent().build();
+			return Response.status(400).entity(result).build();
+		}
+		
+		// a single fsync covers all the accepted items
+		try {
+			writeAheadLog.awaitSync(lastSequence);
+		} catch (IOException ex) {
+			result.setError(ex.getMessage());
+			return Response.status(503).entity(result).build();
+		}
+		return Response.accepted(result).build();
 	}
 	
 	@GET
@@ -177,7 +307,15 @@ public class InputResource {
 
 		// FIXME: make sure that only the configuration is updated (not type, driver, etc.)
 		
+		String invalid = filesystemWatcher.validate(inputId, newTo);
+		if (invalid != null) {
+			return Response.status(422).entity(new ErrorResponseTo(invalid)).build();
+		}
+		
 		inputDao.update(inputId, newTo);
+		streamRegistry.refreshInput(inputId);
+		apiPullEngine.refresh(inputId);
+		filesystemWatcher.refresh(inputId);
 		return Response.noContent().build();
 	}
 	
@@ -197,6 +335,10 @@ public class InputResource {
 				.build();
 		}
 		inputDao.delete(inputId);
+		streamRegistry.refreshInput(inputId);
+		apiPullEngine.refresh(inputId);
+		filesystemWatcher.refresh(inputId);
+		stageMetrics.removeInput(inputId);
 		return Response.noContent().build();
 	}
 }
@@ -26,12 +26,16 @@ package la.alsocan.symbiot.api.resources;
 import java.net.URI;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -41,7 +45,14 @@ import la.alsocan.symbiot.access.OutputDao;
 import la.alsocan.symbiot.access.StreamDao;
 import la.alsocan.symbiot.api.to.ErrorResponseTo;
 import la.alsocan.symbiot.api.to.drivers.DriverTo;
+import la.alsocan.symbiot.api.to.outputs.FilesystemOutputTo;
 import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.api.to.outputs.PollingOutputTo;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.outputs.FilesystemOutputWriter;
+import la.alsocan.symbiot.core.outputs.OutputDispatcher;
+import la.alsocan.symbiot.core.outputs.PollingOutputStore;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
 
 /**
  * @author Florian Poulin - https://github.com/fpoulin
@@ -52,11 +63,23 @@ public class OutputResource {
 	private final DriverDao driverDao;
 	private final OutputDao outputDao;
 	private final StreamDao streamDao;
+	private final StreamRegistry streamRegistry;
+	private final PollingOutputStore pollingStore;
+	private final OutputDispatcher outputDispatcher;
+	private final FilesystemOutputWriter filesystemWriter;
+	private final StageMetrics stageMetrics;
 
-	public OutputResource(DriverDao driverDao, OutputDao outputDao, StreamDao streamDao) {
+	public OutputResource(DriverDao driverDao, OutputDao outputDao, StreamDao streamDao, StreamRegistry streamRegistry, 
+			  PollingOutputStore pollingStore, OutputDispatcher outputDispatcher, FilesystemOutputWriter filesystemWriter, 
+			  StageMetrics stageMetrics) {
 		this.driverDao = driverDao;
 		this.outputDao = outputDao;
 		this.streamDao = streamDao;
+		this.streamRegistry = streamRegistry;
+		this.pollingStore = pollingStore;
+		this.outputDispatcher = outputDispatcher;
+		this.filesystemWriter = filesystemWriter;
+		this.stageMetrics = stageMetrics;
 	}
 	
 	@POST
@@ -70,15 +93,20 @@ public class OutputResource {
 				.entity(new ErrorResponseTo("Could not find driver '" 
 						  + outputTo.getDriverId() + "'")).build();
 		}
-		if (driver.getOutputDefinition(outputTo.getOutputDefinitionId()) == null) {
+		if (driverDao.findOutputDefinition(driver.getId(), outputTo.getOutputDefinitionId()) == null) {
 			return Response.status(422)
 				.entity(new ErrorResponseTo("Could not find output definition '" 
 						  + outputTo.getOutputDefinitionId() + "' for driver '" 
 						  + outputTo.getDriverId()+"'")).build();
 		}
+		if (missingFolder(outputTo)) {
+			return Response.status(422)
+				.entity(new ErrorResponseTo("A filesystem output needs a folder")).build();
+		}
 		
 		// insert output
 		int id = outputDao.insert(outputTo);
+		streamRegistry.refreshOutput(id);
 		
 		// build response
 		URI absoluteUri = info.getBaseUriBuilder()
@@ -106,6 +134,33 @@ public class OutputResource {
 		return Response.ok(outputTo).build();
 	}
 	
+	@GET
+	@Path(value = "{outputId}/poll")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void poll(
+			  @Suspended AsyncResponse response,
+			  @PathParam("outputId") int outputId,
+			  @QueryParam("since") @DefaultValue("0") long since,
+			  @QueryParam("max") @DefaultValue("100") int max,
+			  @QueryParam("wait") @DefaultValue("0") int wait) {
+		
+		OutputTo outputTo = streamRegistry.findOutput(outputId);
+		if (outputTo == null) {
+			response.resume(Response.status(404).build());
+			return;
+		}
+		if (!outputTo.getType().equals(PollingOutputTo.TYPE)) {
+			response.resume(Response.status(422)
+				.entity(new ErrorResponseTo("Only the polling output type can be polled")).build());
+			return;
+		}
+		
+		// wait (in seconds) is capped by the configuration
+		pollingStore.poll(outputId, since, max, wait * 1000L, (result) -> {
+			response.resume(Response.ok(result).build());
+		});
+	}
+	
 	@PUT
 	@Path(value = "{outputId}")
 	@Consumes(MediaType.APPLICATION_JSON)
@@ -116,8 +171,13 @@ public class OutputResource {
 		if (outputTo == null) {
 			return Response.status(404)	.build();
 		}
+		if (missingFolder(newTo)) {
+			return Response.status(422)
+				.entity(new ErrorResponseTo("A filesystem output needs a folder")).build();
+		}
 		
 		outputDao.update(outputId, newTo);
+		streamRegistry.refreshOutput(outputId);
 		return Response.noContent().build();
 	}
 	
@@ -137,6 +197,15 @@ public class OutputResource {
 				.build();
 		}
 		outputDao.delete(outputId);
+		streamRegistry.refreshOutput(outputId);
+		pollingStore.discard(outputId);
+		outputDispatcher.discard(outputId);
+		filesystemWriter.discard(outputId);
+		stageMetrics.removeOutput(outputId);
 		return Response.noContent().build();
 	}
+	
+	private static boolean missingFolder(OutputTo outputTo) {
+		return outputTo instanceof FilesystemOutputTo && ((FilesystemOutputTo)outputTo).getFolder() == null;
+	}
 }
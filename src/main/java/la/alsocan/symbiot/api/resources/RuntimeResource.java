@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.api.resources;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import la.alsocan.symbiot.api.to.ErrorResponseTo;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+@Path("/runtime")
+public class RuntimeResource {
+	
+	private final StreamRegistry streamRegistry;
+	private final StreamExecutor streamExecutor;
+
+	public RuntimeResource(StreamRegistry streamRegistry, StreamExecutor streamExecutor) {
+		this.streamRegistry = streamRegistry;
+		this.streamExecutor = streamExecutor;
+	}
+	
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response get() {
+		return Response.ok(streamExecutor.status()).build();
+	}
+	
+	@GET
+	@Path(value = "streams/{streamId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getStream(@PathParam("streamId") int streamId) {
+		if (streamRegistry.findStream(streamId) == null) {
+			return Response.status(404).build();
+		}
+		return Response.ok(streamExecutor.status(streamId)).build();
+	}
+	
+	@POST
+	@Path(value = "streams/{streamId}/{action}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response control(@PathParam("streamId") int streamId, @PathParam("action") String action) {
+		
+		if (streamRegistry.findStream(streamId) == null) {
+			return Response.status(404).build();
+		}
+		switch (action) {
+			case "start":
+				streamExecutor.start(streamId);
+				break;
+			case "pause":
+				streamExecutor.pause(streamId);
+				break;
+			case "drain":
+				streamExecutor.drain(streamId);
+				break;
+			case "stop":
+				streamExecutor.stop(streamId);
+				break;
+			default:
+				return Response.status(422)
+					.entity(new ErrorResponseTo("Unknown action '" + action 
+							  + "' (expected one of start, pause, drain or stop)")).build();
+		}
+		return Response.accepted(streamExecutor.status(streamId)).build();
+	}
+}
@@ -25,12 +25,14 @@ package la.alsocan.symbiot.api.resources;
 
 import java.net.URI;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -46,7 +48,6 @@ import la.alsocan.jsonshapeshifter.schemas.SchemaNode;
 import la.alsocan.symbiot.api.to.bindings.BindingTo;
 import la.alsocan.symbiot.api.to.Link;
 import la.alsocan.symbiot.api.to.NextBindingTo;
-import la.alsocan.symbiot.api.to.SourceNodeTo;
 import la.alsocan.symbiot.api.to.StreamTo;
 import la.alsocan.symbiot.api.to.bindings.ArrayConstantBindingTo;
 import la.alsocan.symbiot.api.to.bindings.ArrayNodeBindingTo;
@@ -65,10 +66,17 @@ import la.alsocan.symbiot.access.DriverDao;
 import la.alsocan.symbiot.access.InputDao;
 import la.alsocan.symbiot.access.OutputDao;
 import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.access.StreamMapper;
 import la.alsocan.symbiot.api.to.ErrorResponseTo;
 import la.alsocan.symbiot.api.to.inputs.InputTo;
 import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.streams.DeadLetterStore;
 import la.alsocan.symbiot.core.streams.StreamBuilder;
+import la.alsocan.symbiot.core.streams.LegalNodeIndex;
+import la.alsocan.symbiot.core.streams.SchemaCache;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
 
 /**
  * @author Florian Poulin - https://github.com/fpoulin
@@ -76,18 +84,34 @@ import la.alsocan.symbiot.core.streams.StreamBuilder;
 @Path("/streams")
 public class StreamResource {
 	
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	private static final int MAX_PAGE_SIZE = 1000;
+	private static final String EXPAND_BINDINGS = "bindings";
+	
 	private final BindingDao bindingDao;
 	private final DriverDao driverDao;
 	private final InputDao inputDao;
 	private final OutputDao outputDao;
 	private final StreamDao streamDao;
+	private final SchemaCache schemaCache;
+	private final StreamRegistry streamRegistry;
+	private final LegalNodeIndex legalNodeIndex;
+	private final StreamExecutor streamExecutor;
+	private final DeadLetterStore deadLetterStore;
+	private final StageMetrics stageMetrics;
 
-	public StreamResource(BindingDao bindingDao, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, StreamDao streamDao) {
+	public StreamResource(BindingDao bindingDao, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, StreamDao streamDao, SchemaCache schemaCache, StreamRegistry streamRegistry, LegalNodeIndex legalNodeIndex, StreamExecutor streamExecutor, DeadLetterStore deadLetterStore, StageMetrics stageMetrics) {
 		this.bindingDao = bindingDao;
 		this.driverDao = driverDao;
 		this.inputDao = inputDao;
 		this.outputDao = outputDao;
 		this.streamDao = streamDao;
+		this.schemaCache = schemaCache;
+		this.streamRegistry = streamRegistry;
+		this.legalNodeIndex = legalNodeIndex;
+		this.streamExecutor = streamExecutor;
+		this.deadLetterStore = deadLetterStore;
+		this.stageMetrics = stageMetrics;
 	}
 	
 	@POST
@@ -107,17 +131,14 @@ public class StreamResource {
 				.build();
 		}
 		
-		// count total bindings to be defined
-		Stream s = StreamBuilder.build(to, driverDao, inputDao, outputDao, Collections.emptyList());
-		Iterator<SchemaNode> it = s.getT().toBind();
-		int count = 0;
-		while(it.hasNext()) {
-			it.next();
-			count ++;
-		}
+		// find all bindings to be defined
+		Stream s = StreamBuilder.build(to, driverDao, inputDao, outputDao, schemaCache, Collections.emptyList());
+		List<String> unboundNodes = s.unboundNodes();
 		
 		// store stream
-		int id = streamDao.insert(to.getInputId(), to.getOutputId(), count);
+		int id = streamDao.insert(to.getInputId(), to.getOutputId(), unboundNodes.size(), 
+				  StreamMapper.encodeNodes(unboundNodes));
+		streamRegistry.refreshStream(id);
 		
 		// build response
 		URI absoluteUri = info.getBaseUriBuilder()
@@ -127,27 +148,83 @@ public class StreamResource {
 		return Response.created(absoluteUri).build();
 	}
 	
+	/**
+	 * List streams, one page at a time (ordered by id). The next page is 
+	 * advertised with a <code>Link: &lt;...&gt;; rel="next"</code> header.
+	 * <p>
+	 * Bindings are only resolved with <code>expand=bindings</code>, in which 
+	 * case they are loaded in batch (for the whole page).
+	 */
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
 	public Response getAll(
 			  @Context UriInfo info, 
 			  @QueryParam(value = "inputId") Integer inputId,
-			  @QueryParam(value = "outputId") Integer outputId) {
+			  @QueryParam(value = "outputId") Integer outputId,
+			  @QueryParam(value = "cursor") @DefaultValue("0") int cursor,
+			  @QueryParam(value = "limit") @DefaultValue("" + DEFAULT_PAGE_SIZE) int limit,
+			  @QueryParam(value = "expand") String expand) {
 		
+		if (limit < 1 || limit > MAX_PAGE_SIZE) {
+			return Response.status(422)
+				.entity(new ErrorResponseTo("The limit must be between 1 and " + MAX_PAGE_SIZE))
+				.build();
+		}
+		if (expand != null && !EXPAND_BINDINGS.equals(expand)) {
+			return Response.status(422)
+				.entity(new ErrorResponseTo("Unknown expand value '" + expand + "' (expected '" + EXPAND_BINDINGS + "')"))
+				.build();
+		}
+		
+		// one query per filter combination (so that each can use its index)
 		List<StreamTo> tos;
 		if (inputId != null && outputId != null) {
-			tos = streamDao.findByInputAndOutput(inputId, outputId);
+			tos = streamDao.findPageByInputAndOutput(inputId, outputId, cursor, limit);
 		} else if (inputId != null) {
-			tos = streamDao.findByInput(inputId);
+			tos = streamDao.findPageByInput(inputId, cursor, limit);
 		} else if (outputId != null) {
-			tos = streamDao.findByOutput(outputId);
+			tos = streamDao.findPageByOutput(outputId, cursor, limit);
 		} else {
-			tos = streamDao.findAll();
+			tos = streamDao.findPage(cursor, limit);
+		}
+		if (expand != null) {
+			
+			// a constant number of queries, whatever the page size (compiled 
+			// streams are taken from the registry, only the missing ones are built)
+			Set<Integer> streamIds = new HashSet<>();
+			Set<Integer> inputIds = new HashSet<>();
+			Set<Integer> outputIds = new HashSet<>();
+			tos.stream().forEach((to) -> {
+				streamIds.add(to.getId());
+				if (streamRegistry.findStream(to.getId()) == null) {
+					inputIds.add(to.getInputId());
+					outputIds.add(to.getOutputId());
+				}
+			});
+			Map<Integer, List<BindingTo>> bindings = bindingDao.findAllByStreams(streamIds);
+			Map<Integer, InputTo> inputs = inputDao.findByIds(inputIds);
+			Map<Integer, OutputTo> outputs = outputDao.findByIds(outputIds);
+			tos.stream().forEach((to) -> {
+				List<BindingTo> streamBindings = bindings.getOrDefault(to.getId(), Collections.emptyList());
+				Stream s = streamRegistry.findStream(to.getId());
+				if (s == null) {
+					s = StreamBuilder.build(to, inputs.get(to.getInputId()), outputs.get(to.getOutputId()), 
+							  driverDao, schemaCache, streamBindings);
+				}
+				resolveBindings(to, s, streamBindings);
+			});
 		}
 		tos.stream().forEach((to) -> {
-			resolveTo(info, to);
+			resolveLinks(info, to);
 		});
-		return Response.ok(tos).build();
+		
+		Response.ResponseBuilder response = Response.ok(tos);
+		if (tos.size() == limit) {
+			response.link(info.getRequestUriBuilder()
+					  .replaceQueryParam("cursor", tos.get(tos.size() - 1).getId())
+					  .build(), "next");
+		}
+		return response.build();
 	}
 	
 	@GET
@@ -172,42 +249,47 @@ public class StreamResource {
 		}
 		
 		streamDao.delete(streamId);
+		streamRegistry.remove(streamId);
+		streamExecutor.forget(streamId);
+		deadLetterStore.remove(streamId);
+		stageMetrics.removeStream(streamId);
 		return Response.noContent().build();
 	}
 	
 	private StreamTo resolveTo(UriInfo info, StreamTo to) {
 
 		List<BindingTo> bindings = bindingDao.findAll(to.getId());
-		Stream s = StreamBuilder.build(to, driverDao, inputDao, outputDao, bindings);
+		Stream s = streamRegistry.findStream(to.getId());
+		if (s == null) {
+			s = StreamBuilder.build(to, driverDao, inputDao, outputDao, schemaCache, bindings);
+		}
+		resolveBindings(to, s, bindings);
+		return resolveLinks(info, to);
+	}
+	
+	private void resolveBindings(StreamTo to, Stream s, List<BindingTo> bindings) {
 		
 		// add current binding info
 		bindings.stream().forEach((binding) -> {
 			to.addBinding(binding);
 		});
 		
-		// calculate next binding info
-		Iterator<SchemaNode> it = s.getT().toBind();
-		if (it.hasNext()) {
-			SchemaNode node = it.next();
+		// next binding info (unbound nodes are stored, no need to walk the target schema)
+		List<String> unboundNodes = to.getUnboundNodes() != null ? to.getUnboundNodes() : s.unboundNodes();
+		to.setRemainingBindings(unboundNodes.size());
+		if (!unboundNodes.isEmpty()) {
+			SchemaNode node = s.getT().getTarget().at(unboundNodes.get(0));
 			NextBindingTo nextBindingTo = new NextBindingTo(node.getSchemaPointer(), node.getType().toString());
 			legalBindingTypesFor(node.getType()).stream().forEach((type) -> {
 				nextBindingTo.addLegalBindingType(type);
 			});
-			s.getT().legalNodesFor(node).stream().forEach((legalSourceNode) -> {
-				nextBindingTo.addLegalSourceNode(new SourceNodeTo(
-						legalSourceNode.getSchemaPointer(),
-						legalSourceNode.getType().toString()));
-			});
+			nextBindingTo.addLegalSourceNodes(legalNodeIndex.get(
+					  streamRegistry.findInput(to.getInputId()), s, node, bindings));
 			to.setNextToBind(nextBindingTo);
-			int remaining = 1;
-			while(it.hasNext()) {
-				it.next();
-				remaining++;
-			}
-			to.setRemainingBindings(remaining);
-		} else {
-			to.setRemainingBindings(0);
 		}
+	}
+	
+	private StreamTo resolveLinks(UriInfo info, StreamTo to) {
 		
 		// resolve hateoas links
 		to.addLink(new Link("self",
@@ -228,7 +310,7 @@ public class StreamResource {
 			.path(OutputResource.class, "get")
 			.build(to.getOutputId())
 			.toString()));
-		if (to.getRemainingBindings() > 0) {
+		if (to.getRemainingBindings() != null && to.getRemainingBindings() > 0) {
 			to.addLink(new Link("nextToBind",
 			info.getBaseUriBuilder()
 			.path(BindingResource.class)
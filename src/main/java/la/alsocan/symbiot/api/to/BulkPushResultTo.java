@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.api.to;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of a bulk push: counters, and the details of every item which was 
+ * not accepted.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkPushResultTo {
+	
+	@JsonProperty
+	private int received;
+	
+	@JsonProperty
+	private int accepted;
+	
+	@JsonProperty
+	private int rejected;
+	
+	@JsonProperty
+	private int failed;
+	
+	@JsonProperty
+	private String error;
+	
+	@JsonProperty
+	private List<ItemTo> items = new ArrayList<>();
+
+	public BulkPushResultTo() {
+	}
+	
+	public void accept() {
+		received++;
+		accepted++;
+	}
+	
+	public void reject(int index, String message) {
+		received++;
+		rejected++;
+		items.add(new ItemTo(index, 429, message));
+	}
+	
+	public void fail(int index, int status, String message) {
+		received++;
+		failed++;
+		items.add(new ItemTo(index, status, message));
+	}
+
+	public int getReceived() {
+		return received;
+	}
+
+	public void setReceived(int received) {
+		this.received = received;
+	}
+
+	public int getAccepted() {
+		return accepted;
+	}
+
+	public void setAccepted(int accepted) {
+		this.accepted = accepted;
+	}
+
+	public int getRejected() {
+		return rejected;
+	}
+
+	public void setRejected(int rejected) {
+		this.rejected = rejected;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	public void setFailed(int failed) {
+		this.failed = failed;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public List<ItemTo> getItems() {
+		return items;
+	}
+
+	public void setItems(List<ItemTo> items) {
+		this.items = items;
+	}
+	
+	public static class ItemTo {
+		
+		@JsonProperty
+		private int index;
+		
+		@JsonProperty
+		private int status;
+		
+		@JsonProperty
+		private String message;
+
+		public ItemTo() {
+		}
+
+		public ItemTo(int index, int status, String message) {
+			this.index = index;
+			this.status = status;
+			this.message = message;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public void setIndex(int index) {
+			this.index = index;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public void setStatus(int status) {
+			this.status = status;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public void setMessage(String message) {
+			this.message = message;
+		}
+	}
+}
@@ -24,6 +24,7 @@
 package la.alsocan.symbiot.api.to;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collection;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -60,6 +61,11 @@ public class NextBindingTo {
 		return this;
 	}
 	
+	public NextBindingTo addLegalSourceNodes(Collection<SourceNodeTo> tos) {
+		legalSourceNodes.addAll(tos);
+		return this;
+	}
+	
 	public NextBindingTo addLegalBindingType(String bindingType) {
 		legalBindingTypes.add(bindingType);
 		return this;
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.api.to;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Status of the stream runtime: counters, and the state of every shard.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class RuntimeStatusTo {
+	
+	@JsonProperty
+	private long submitted;
+	
+	@JsonProperty
+	private long rejected;
+	
+	@JsonProperty
+	private List<ShardTo> shards = new ArrayList<>();
+
+	public RuntimeStatusTo() {
+	}
+
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	public void setSubmitted(long submitted) {
+		this.submitted = submitted;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public void setRejected(long rejected) {
+		this.rejected = rejected;
+	}
+
+	public List<ShardTo> getShards() {
+		return shards;
+	}
+
+	public void setShards(List<ShardTo> shards) {
+		this.shards = shards;
+	}
+	
+	public static class ShardTo {
+		
+		@JsonProperty
+		private int index;
+		
+		@JsonProperty
+		private int queued;
+		
+		@JsonProperty
+		private long processed;
+
+		public ShardTo() {
+		}
+
+		public ShardTo(int index, int queued, long processed) {
+			this.index = index;
+			this.queued = queued;
+			this.processed = processed;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public void setIndex(int index) {
+			this.index = index;
+		}
+
+		public int getQueued() {
+			return queued;
+		}
+
+		public void setQueued(int queued) {
+			this.queued = queued;
+		}
+
+		public long getProcessed() {
+			return processed;
+		}
+
+		public void setProcessed(long processed) {
+			this.processed = processed;
+		}
+	}
+}
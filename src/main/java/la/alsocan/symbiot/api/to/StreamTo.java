@@ -24,6 +24,8 @@
 package la.alsocan.symbiot.api.to;
 
 import la.alsocan.symbiot.api.to.bindings.BindingTo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.LinkedList;
 import java.util.List;
@@ -59,7 +61,11 @@ public class StreamTo {
 	private int totalBindings;
 	
 	@JsonProperty
-	private int remainingBindings;
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private Integer remainingBindings;
+	
+	@JsonIgnore
+	private List<String> unboundNodes;
 	
 	@JsonProperty
 	private final List<Link> links;
@@ -135,11 +141,19 @@ public class StreamTo {
 		this.totalBindings = totalBindings;
 	}
 
-	public int getRemainingBindings() {
+	public Integer getRemainingBindings() {
 		return remainingBindings;
 	}
 
-	public void setRemainingBindings(int remainingBindings) {
+	public void setRemainingBindings(Integer remainingBindings) {
 		this.remainingBindings = remainingBindings;
 	}
+
+	public List<String> getUnboundNodes() {
+		return unboundNodes;
+	}
+
+	public void setUnboundNodes(List<String> unboundNodes) {
+		this.unboundNodes = unboundNodes;
+	}
 }
@@ -25,9 +25,11 @@ package la.alsocan.symbiot.api.to.drivers;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.function.Function;
 
 /**
  * @author Florian Poulin - https://github.com/fpoulin
@@ -53,33 +55,35 @@ public class DriverTo {
 	private Set<OutputDefinitionTo> outputDefinitions;
 	
 	@JsonIgnore
-	private Map<String, InputDefinitionTo> inputDefinitionsIndex;
+	private Map<String, InputDefinitionTo> inputDefinitionsIndex = Collections.emptyMap();
 	
 	@JsonIgnore
-	private Map<String, OutputDefinitionTo> outputDefinitionsIndex;
+	private Map<String, OutputDefinitionTo> outputDefinitionsIndex = Collections.emptyMap();
 
 	public InputDefinitionTo getInputDefinition(String inputId) {
-	
-		if (inputDefinitionsIndex == null) {
-			inputDefinitionsIndex = new TreeMap<>();
-			inputDefinitions.stream().forEach((to) -> {
-				inputDefinitionsIndex.put(to.getId(), to);
-			});
-		}
 		return inputDefinitionsIndex.get(inputId);
 	}
 	
 	public OutputDefinitionTo getOutputDefinition(String outputId) {
-	
-		if (outputDefinitionsIndex == null) {
-			outputDefinitionsIndex = new TreeMap<>();
-			outputDefinitions.stream().forEach((to) -> {
-				outputDefinitionsIndex.put(to.getId(), to);
-			});
-		}
 		return outputDefinitionsIndex.get(outputId);
 	}
 	
+	/**
+	 * @return The input definitions by id (immutable, built with the definitions)
+	 */
+	@JsonIgnore
+	public Map<String, InputDefinitionTo> getInputDefinitionsIndex() {
+		return inputDefinitionsIndex;
+	}
+	
+	/**
+	 * @return The output definitions by id (immutable, built with the definitions)
+	 */
+	@JsonIgnore
+	public Map<String, OutputDefinitionTo> getOutputDefinitionsIndex() {
+		return outputDefinitionsIndex;
+	}
+	
 	public String getId() {
 		return id;
 	}
@@ -118,6 +122,7 @@ public class DriverTo {
 
 	public void setInputDefinitions(Set<InputDefinitionTo> inputDefinitions) {
 		this.inputDefinitions = inputDefinitions;
+		this.inputDefinitionsIndex = index(inputDefinitions, InputDefinitionTo::getId);
 	}
 
 	public Set<OutputDefinitionTo> getOutputDefinitions() {
@@ -126,5 +131,19 @@ public class DriverTo {
 
 	public void setOutputDefinitions(Set<OutputDefinitionTo> outputDefinitions) {
 		this.outputDefinitions = outputDefinitions;
+		this.outputDefinitionsIndex = index(outputDefinitions, OutputDefinitionTo::getId);
+	}
+	
+	// indexes are built eagerly (when deserialized), and never modified afterwards
+	private static <T> Map<String, T> index(Set<T> definitions, Function<T, String> id) {
+		
+		if (definitions == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, T> index = new HashMap<>();
+		definitions.stream().forEach((to) -> {
+			index.put(id.apply(to), to);
+		});
+		return Collections.unmodifiableMap(index);
 	}
 }
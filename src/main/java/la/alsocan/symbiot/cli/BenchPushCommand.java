@@ -0,0 +1,352 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.cli.Command;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.setup.Bootstrap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import la.alsocan.symbiot.api.resources.InputResource;
+import la.alsocan.symbiot.api.to.inputs.ApiPushInputTo;
+import la.alsocan.symbiot.cli.PayloadGenerator.Variant;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+
+/**
+ * Pushes synthesized payloads to an API push input of a running server, and 
+ * reports the throughput and latency percentiles.
+ * <p>
+ * Payloads are generated from the schema of the input definition, with the 
+ * given mix of variants. When a rate is given, latencies are measured from 
+ * the time each call should have started (so that a slow server does not 
+ * hide its own latencies by slowing the load down).
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class BenchPushCommand extends Command {
+	
+	private static final int SIGNIFICANT_DIGITS = 3;
+	private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+	
+	public BenchPushCommand(String name) {
+		super(name, "This command pushes synthesized payloads to an input, and reports throughput and latencies");
+	}
+
+	@Override
+	public void configure(Subparser subparser) {
+		
+		subparser.addArgument("-i", "--input")
+				  .dest("input").type(Integer.class).required(true)
+				  .help("id of the API push input to push payloads to");
+		subparser.addArgument("-u", "--url")
+				  .dest("url").setDefault("http://localhost:8080")
+				  .help("base URL of the server");
+		subparser.addArgument("-c", "--concurrency")
+				  .dest("concurrency").type(Integer.class).setDefault(8)
+				  .help("number of concurrent calls");
+		subparser.addArgument("-r", "--rate")
+				  .dest("rate").type(Integer.class).setDefault(0)
+				  .help("payloads per second, across all calls (0: as fast as possible)");
+		subparser.addArgument("-d", "--duration")
+				  .dest("duration").type(Integer.class).setDefault(30)
+				  .help("duration of the run, in seconds");
+		subparser.addArgument("-n", "--requests")
+				  .dest("requests").type(Long.class).setDefault(0L)
+				  .help("stop after that many payloads (0: no limit)");
+		subparser.addArgument("-w", "--warmup")
+				  .dest("warmup").type(Integer.class).setDefault(0)
+				  .help("seconds of load before measuring (not counted in the duration)");
+		subparser.addArgument("-m", "--mix")
+				  .dest("mix").setDefault("full:80,minimal:15,invalid:5")
+				  .help("weights of the payload variants (full: every property, "
+							 + "minimal: required properties only, invalid: a required property missing)");
+		subparser.addArgument("-k", "--keys")
+				  .dest("keys").type(Integer.class).setDefault(0)
+				  .help("number of distinct device keys to send (0: no key)");
+		subparser.addArgument("-t", "--timeout")
+				  .dest("timeout").type(Integer.class).setDefault(10)
+				  .help("timeout of a call, in seconds");
+	}
+
+	@Override
+	public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+		
+		int inputId = namespace.getInt("input");
+		String url = namespace.getString("url").replaceAll("/+$", "");
+		int concurrency = namespace.getInt("concurrency");
+		int rate = namespace.getInt("rate");
+		long requests = namespace.getLong("requests");
+		int keys = namespace.getInt("keys");
+		long timeout = TimeUnit.SECONDS.toMillis(namespace.getInt("timeout"));
+		int[] weights = parseMix(namespace.getString("mix"));
+		if (concurrency < 1 || rate < 0 || requests < 0 || keys < 0) {
+			throw new IllegalArgumentException("Concurrency must be positive, rate, requests and keys must not be negative");
+		}
+		
+		ObjectMapper om = Jackson.newObjectMapper();
+		HttpClient client = new HttpClient();
+		client.setMaxConnectionsPerDestination(concurrency);
+		client.setFollowRedirects(false);
+		client.start();
+		try {
+			PayloadGenerator generator = new PayloadGenerator(om, fetchSchema(client, om, url, inputId, timeout));
+			
+			// measurement starts after the warmup (calls are paced the same way during both)
+			long now = System.nanoTime();
+			long measureStart = now + TimeUnit.SECONDS.toNanos(namespace.getInt("warmup"));
+			long deadline = measureStart + TimeUnit.SECONDS.toNanos(namespace.getInt("duration"));
+			long period = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(concurrency) / rate;
+			AtomicLong remaining = new AtomicLong(requests == 0 ? Long.MAX_VALUE : requests);
+			Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+			Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+			
+			AtomicInteger threadCount = new AtomicInteger();
+			ExecutorService workers = Executors.newFixedThreadPool(concurrency, (r) -> {
+				Thread t = new Thread(r, "bench-push-" + threadCount.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			});
+			for (int i = 0; i < concurrency; i++) {
+				
+				// calls are spread evenly over the period
+				long firstStart = now + i * period / concurrency;
+				workers.execute(() -> {
+					Random random = ThreadLocalRandom.current();
+					long intended = firstStart;
+					while (intended < deadline) {
+						
+						// generated ahead, so that generation is not measured
+						byte[] body;
+						try {
+							body = om.writeValueAsBytes(generator.generate(pick(weights, random), random));
+						} catch (Exception ex) {
+							throw new IllegalStateException(ex);
+						}
+						if (period > 0) {
+							for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+								LockSupport.parkNanos(wait);
+							}
+						} else {
+							intended = System.nanoTime();
+						}
+						if (intended >= deadline || System.nanoTime() >= deadline
+								  || (intended >= measureStart && remaining.decrementAndGet() < 0)) {
+							return;
+						}
+						
+						Request request = client.newRequest(url + "/inputs/" + inputId)
+								  .method(HttpMethod.POST)
+								  .timeout(timeout, TimeUnit.MILLISECONDS)
+								  .content(new BytesContentProvider("application/json", body));
+						if (keys > 0) {
+							request.header(InputResource.DEVICE_KEY_HEADER, "device-" + random.nextInt(keys));
+						}
+						int status;
+						try {
+							status = request.send().getStatus();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							return;
+						} catch (TimeoutException | ExecutionException ex) {
+							status = 0;
+						}
+						if (intended >= measureStart) {
+							recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+							statuses.computeIfAbsent(status, (s) -> new LongAdder()).increment();
+						}
+						intended += period;
+					}
+				});
+			}
+			workers.shutdown();
+			
+			// report every interval, then the whole run
+			Histogram interval = null;
+			Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+			long lastReport = System.nanoTime();
+			System.out.println(String.format("%10s %10s %10s %10s %10s %10s %10s", 
+					  "elapsed(s)", "calls", "calls/s", "p50(ms)", "p99(ms)", "p99.9(ms)", "max(ms)"));
+			while (!workers.awaitTermination(REPORT_INTERVAL, TimeUnit.MILLISECONDS)) {
+				long reportTime = System.nanoTime();
+				interval = recorder.getIntervalHistogram(interval);
+				if (reportTime > measureStart) {
+					total.add(interval);
+					printInterval(interval, reportTime - measureStart, reportTime - Math.max(lastReport, measureStart));
+				}
+				lastReport = reportTime;
+			}
+			total.add(recorder.getIntervalHistogram(interval));
+			printSummary(total, Math.min(System.nanoTime(), deadline) - measureStart, statuses);
+		} finally {
+			client.stop();
+		}
+	}
+	
+	private static JsonNode fetchSchema(HttpClient client, ObjectMapper om, String url, int inputId, long timeout) throws Exception {
+		
+		JsonNode input = get(client, om, url + "/inputs/" + inputId, timeout);
+		if (input == null) {
+			throw new IllegalArgumentException("Could not find input '" + inputId + "'");
+		}
+		if (!ApiPushInputTo.TYPE.equals(input.path("type").asText())) {
+			throw new IllegalArgumentException("Only the API push input type can handle calls");
+		}
+		
+		String driverId = input.path("driverId").asText();
+		String definitionId = input.path("inputDefinitionId").asText();
+		JsonNode driver = get(client, om, url + "/drivers/" + driverId, timeout);
+		if (driver != null) {
+			for (JsonNode def : driver.path("inputDefinitions")) {
+				if (definitionId.equals(def.path("id").asText())) {
+					return def.path("schemaNode");
+				}
+			}
+		}
+		throw new IllegalArgumentException("Could not find definition '" + definitionId + "' of driver '" + driverId + "'");
+	}
+	
+	private static JsonNode get(HttpClient client, ObjectMapper om, String url, long timeout) throws Exception {
+		
+		ContentResponse response = client.newRequest(url)
+				  .timeout(timeout, TimeUnit.MILLISECONDS)
+				  .send();
+		if (response.getStatus() == 404) {
+			return null;
+		}
+		if (response.getStatus() != 200) {
+			throw new IllegalStateException("GET " + url + " failed: HTTP " + response.getStatus());
+		}
+		return om.readTree(response.getContent());
+	}
+	
+	/**
+	 * @param mix The mix, as 'variant:weight' pairs separated by commas (ex: 'full:80,invalid:20')
+	 * @return The weights, indexed by variant ordinal
+	 */
+	static int[] parseMix(String mix) {
+		
+		int[] weights = new int[Variant.values().length];
+		int sum = 0;
+		for (String pair : mix.split(",")) {
+			String[] parts = pair.trim().split(":");
+			if (parts.length != 2) {
+				throw invalidMix(mix);
+			}
+			Variant variant;
+			int weight;
+			try {
+				variant = Variant.valueOf(parts[0].trim().toUpperCase());
+				weight = Integer.parseInt(parts[1].trim());
+			} catch (IllegalArgumentException ex) {
+				throw invalidMix(mix);
+			}
+			if (weight < 0) {
+				throw invalidMix(mix);
+			}
+			weights[variant.ordinal()] += weight;
+			sum += weight;
+		}
+		if (sum == 0) {
+			throw invalidMix(mix);
+		}
+		return weights;
+	}
+	
+	private static IllegalArgumentException invalidMix(String mix) {
+		return new IllegalArgumentException("Invalid payload mix '" + mix + "' (expected weights such as 'full:80,minimal:15,invalid:5')");
+	}
+	
+	static Variant pick(int[] weights, Random random) {
+		
+		int sum = 0;
+		for (int weight : weights) {
+			sum += weight;
+		}
+		int draw = random.nextInt(sum);
+		for (int i = 0; i < weights.length; i++) {
+			draw -= weights[i];
+			if (draw < 0) {
+				return Variant.values()[i];
+			}
+		}
+		throw new IllegalStateException("Unreachable");
+	}
+	
+	private static void printInterval(Histogram h, long elapsed, long duration) {
+		System.out.println(String.format("%10d %10d %10.1f %10.2f %10.2f %10.2f %10.2f", 
+				  TimeUnit.NANOSECONDS.toSeconds(elapsed),
+				  h.getTotalCount(), 
+				  throughput(h.getTotalCount(), duration),
+				  millis(h.getValueAtPercentile(50)), 
+				  millis(h.getValueAtPercentile(99)), 
+				  millis(h.getValueAtPercentile(99.9)), 
+				  millis(h.getMaxValue())));
+	}
+	
+	private static void printSummary(Histogram h, long duration, Map<Integer, LongAdder> statuses) {
+		
+		System.out.println();
+		System.out.println(String.format("Calls:      %d in %.1fs (%.1f calls/s)", 
+				  h.getTotalCount(), duration / 1e9, throughput(h.getTotalCount(), duration)));
+		new TreeMap<>(statuses).forEach((status, count) -> {
+			System.out.println(String.format("  %-9s %d", status == 0 ? "failed:" : "HTTP " + status + ":", count.sum()));
+		});
+		System.out.println(String.format("Latency:    mean %.2fms, max %.2fms", h.getMean() / 1000, millis(h.getMaxValue())));
+		for (double p : PERCENTILES) {
+			System.out.println(String.format("  p%-8s %.2fms", p % 1 == 0 ? String.valueOf((int)p) : String.valueOf(p), 
+					  millis(h.getValueAtPercentile(p))));
+		}
+	}
+	
+	private static double throughput(long count, long duration) {
+		return duration <= 0 ? 0 : count * 1e9 / duration;
+	}
+	
+	private static double millis(long micros) {
+		return micros / 1000d;
+	}
+}
@@ -23,20 +23,13 @@
  */
 package la.alsocan.symbiot.cli;
 
-import java.io.File;
 import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
-
-import org.apache.commons.io.FileUtils;
 
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
 import la.alsocan.symbiot.ServerConfiguration;
-import la.alsocan.symbiot.access.BindingDao;
-import la.alsocan.symbiot.access.InputDao;
-import la.alsocan.symbiot.access.OutputDao;
-import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.access.storage.SchemaMigrator;
+import la.alsocan.symbiot.access.storage.StorageBackend;
 import net.sourceforge.argparse4j.inf.Namespace;
 
 /**
@@ -44,10 +37,6 @@ import net.sourceforge.argparse4j.inf.Namespace;
  */
 public class DropCreateDatabaseCommand extends ConfiguredCommand<ServerConfiguration> {
 
-	private static final String EXPECTED_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
-	private static final String EXPECTED_URL = "jdbc:derby:symbiotDB";
-	private static final String DB_NAME = "symbiotDB";
-	
 	public DropCreateDatabaseCommand(String name) {
 		super(name, "This command drops the database and create a new one");
 	}
@@ -55,30 +44,10 @@ public class DropCreateDatabaseCommand extends ConfiguredCommand<ServerConfigura
 	@Override
 	protected void run(Bootstrap<ServerConfiguration> bootstrap, Namespace namespace, ServerConfiguration configuration) throws Exception {
 		
-		// check that the config uses Derby with the expected name (KISS!)
-		if (!EXPECTED_DRIVER.equals(configuration.getDataSourceFactory().getDriverClass()) 
-			||!EXPECTED_URL.equals(configuration.getDataSourceFactory().getUrl())) {
-			throw new IllegalStateException("Expected driver '" + EXPECTED_DRIVER 
-				+ "' and url '" + EXPECTED_URL + "' in the config (yeah, that's life).");
-		}
-		
-		// drop existing database
-		File f = new File(DB_NAME);
-		if (f.exists() && f.isDirectory()) {
-			FileUtils.deleteDirectory(f);
-		}
-		
-		// create new database (with DDL)
-		DriverManager.registerDriver((Driver)Class.forName(EXPECTED_DRIVER).newInstance());
-		try (Connection c = DriverManager.getConnection(EXPECTED_URL
-			+ ";create=true"
-			+ ";user=" + configuration.getDataSourceFactory().getUser()
-			+ ";password=" + configuration.getDataSourceFactory().getPassword())) {
-			
-			c.createStatement().executeUpdate(InputDao.DDL);
-			c.createStatement().executeUpdate(OutputDao.DDL);
-			c.createStatement().executeUpdate(StreamDao.DDL);
-			c.createStatement().executeUpdate(BindingDao.DDL);
+		// the storage backend knows how to drop and create its database
+		StorageBackend backend = StorageBackend.forUrl(configuration.getDataSourceFactory().getUrl());
+		try (Connection c = backend.dropAndCreate(configuration.getDataSourceFactory())) {
+			new SchemaMigrator().migrate(c);
 		}
 	}
 }
@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.cli;
+
+import java.sql.Connection;
+
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import la.alsocan.symbiot.ServerConfiguration;
+import la.alsocan.symbiot.access.storage.SchemaMigrator;
+import la.alsocan.symbiot.access.storage.StorageBackend;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class MigrateDatabaseCommand extends ConfiguredCommand<ServerConfiguration> {
+
+	public MigrateDatabaseCommand(String name) {
+		super(name, "This command applies the pending schema migrations (keeping the data)");
+	}
+	
+	@Override
+	protected void run(Bootstrap<ServerConfiguration> bootstrap, Namespace namespace, ServerConfiguration configuration) throws Exception {
+		
+		StorageBackend backend = StorageBackend.forUrl(configuration.getDataSourceFactory().getUrl());
+		try (Connection c = backend.connect(configuration.getDataSourceFactory())) {
+			SchemaMigrator migrator = new SchemaMigrator();
+			int applied = migrator.migrate(c);
+			System.out.println(applied + " migration(s) applied, schema is at version " + migrator.currentVersion(c));
+		}
+	}
+}
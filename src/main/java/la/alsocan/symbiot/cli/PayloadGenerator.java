@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Synthesizes payloads from the JSON schema of an input definition (the 
+ * subset of draft 4 used by drivers: types, properties, required, items, 
+ * enum, minimum/maximum, minLength/maxLength and minItems/maxItems).
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class PayloadGenerator {
+	
+	public enum Variant {
+		
+		// every property is set
+		FULL,
+		
+		// only the required properties are set
+		MINIMAL,
+		
+		// a full payload, with a required property missing (or a property of the wrong type)
+		INVALID
+	}
+	
+	private static final int MAX_ITEMS = 3;
+	private static final int MAX_LENGTH = 16;
+	private static final long MAX_INTEGER = 1000;
+	private static final String CHARS = "abcdefghijklmnopqrstuvwxyz0123456789";
+	
+	private final JsonNode schemaNode;
+	private final JsonNodeFactory factory;
+
+	public PayloadGenerator(ObjectMapper om, JsonNode schemaNode) {
+		this.schemaNode = schemaNode;
+		this.factory = om.getNodeFactory();
+	}
+	
+	/**
+	 * @param variant The kind of payload to generate
+	 * @param random The source of randomness (not shared between threads)
+	 * @return A new payload
+	 */
+	public JsonNode generate(Variant variant, Random random) {
+		
+		JsonNode payload = generate(schemaNode, variant == Variant.MINIMAL, random);
+		if (variant == Variant.INVALID) {
+			corrupt(schemaNode, payload);
+		}
+		return payload;
+	}
+	
+	private JsonNode generate(JsonNode schema, boolean requiredOnly, Random random) {
+		
+		JsonNode values = schema.get("enum");
+		if (values != null && values.isArray() && values.size() > 0) {
+			return values.get(random.nextInt(values.size())).deepCopy();
+		}
+		
+		switch (type(schema)) {
+			case "object":
+				ObjectNode object = factory.objectNode();
+				Set<String> required = required(schema);
+				JsonNode properties = schema.path("properties");
+				for (Iterator<Map.Entry<String, JsonNode>> it = properties.fields(); it.hasNext();) {
+					Map.Entry<String, JsonNode> property = it.next();
+					if (!requiredOnly || required.contains(property.getKey())) {
+						object.set(property.getKey(), generate(property.getValue(), requiredOnly, random));
+					}
+				}
+				return object;
+			case "array":
+				ArrayNode array = factory.arrayNode();
+				int min = schema.path("minItems").asInt(0);
+				int max = Math.max(min, schema.path("maxItems").asInt(min + MAX_ITEMS));
+				int size = requiredOnly ? min : min + random.nextInt(max - min + 1);
+				for (int i = 0; i < size; i++) {
+					array.add(generate(schema.path("items"), requiredOnly, random));
+				}
+				return array;
+			case "string":
+				int minLength = schema.path("minLength").asInt(1);
+				int maxLength = Math.max(minLength, schema.path("maxLength").asInt(minLength + MAX_LENGTH));
+				int length = minLength + random.nextInt(maxLength - minLength + 1);
+				StringBuilder sb = new StringBuilder(length);
+				for (int i = 0; i < length; i++) {
+					sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+				}
+				return factory.textNode(sb.toString());
+			case "integer":
+				long lowest = schema.path("minimum").asLong(0);
+				long highest = Math.max(lowest, schema.path("maximum").asLong(lowest + MAX_INTEGER));
+				return factory.numberNode(lowest + (long)(random.nextDouble() * (highest - lowest)));
+			case "number":
+				double low = schema.path("minimum").asDouble(0);
+				double high = Math.max(low, schema.path("maximum").asDouble(low + MAX_INTEGER));
+				return factory.numberNode(low + random.nextDouble() * (high - low));
+			case "boolean":
+				return factory.booleanNode(random.nextBoolean());
+			default:
+				return factory.nullNode();
+		}
+	}
+	
+	private void corrupt(JsonNode schema, JsonNode payload) {
+		
+		if (!payload.isObject()) {
+			return;
+		}
+		ObjectNode object = (ObjectNode)payload;
+		
+		// drop a required property if any, otherwise give a property the wrong type
+		Set<String> required = required(schema);
+		if (!required.isEmpty()) {
+			object.remove(required.iterator().next());
+		} else if (object.size() > 0) {
+			String name = object.fieldNames().next();
+			object.set(name, object.get(name).isTextual() 
+					  ? factory.objectNode() 
+					  : factory.textNode("invalid"));
+		}
+	}
+	
+	private static String type(JsonNode schema) {
+		
+		// for union types, the first one which is not 'null'
+		JsonNode type = schema.path("type");
+		if (type.isArray()) {
+			for (JsonNode t : type) {
+				if (!"null".equals(t.asText())) {
+					return t.asText();
+				}
+			}
+			return "null";
+		}
+		if (type.isMissingNode() && schema.has("properties")) {
+			return "object";
+		}
+		return type.asText();
+	}
+	
+	private static Set<String> required(JsonNode schema) {
+		
+		Set<String> required = new LinkedHashSet<>();
+		schema.path("required").forEach((name) -> required.add(name.asText()));
+		return required;
+	}
+}
@@ -23,21 +23,58 @@
  */
 package la.alsocan.symbiot.core;
 
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.lifecycle.ServerLifecycleListener;
+import la.alsocan.symbiot.core.inputs.ApiPullEngine;
+import la.alsocan.symbiot.core.inputs.FilesystemInputWatcher;
+import la.alsocan.symbiot.core.inputs.WriteAheadLog;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
 import org.eclipse.jetty.server.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Loads the streams and replays the undelivered payloads once the other 
+ * components are started, but before the connectors are opened (so that no 
+ * push gets a 404 from an empty registry, and replayed payloads are queued 
+ * before any new one), then starts the inputs once the server is started.
+ * 
  * @author Florian Poulin - https://github.com/fpoulin
  */
-public class StreamLoader implements ServerLifecycleListener {
+public class StreamLoader implements Managed, ServerLifecycleListener {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(StreamLoader.class);
+	
+	private final StreamRegistry streamRegistry;
+	private final WriteAheadLog writeAheadLog;
+	private final ApiPullEngine apiPullEngine;
+	private final FilesystemInputWatcher filesystemWatcher;
+
+	public StreamLoader(StreamRegistry streamRegistry, WriteAheadLog writeAheadLog, ApiPullEngine apiPullEngine, 
+			  FilesystemInputWatcher filesystemWatcher) {
+		this.streamRegistry = streamRegistry;
+		this.writeAheadLog = writeAheadLog;
+		this.apiPullEngine = apiPullEngine;
+		this.filesystemWatcher = filesystemWatcher;
+	}
+
+	@Override
+	public void start() throws Exception {
+		
+		LOG.info("Loading streams");
+		streamRegistry.loadAll();
+		writeAheadLog.recover();
+	}
+
+	@Override
+	public void stop() throws Exception {
+	}
 
 	@Override
 	public void serverStarted(Server arg0) {
 		
-		LOG.info("Server has started, will be loading streams soon!");
+		LOG.info("Server has started, starting inputs");
+		apiPullEngine.scheduleAll();
+		filesystemWatcher.scheduleAll();
 	}
 }
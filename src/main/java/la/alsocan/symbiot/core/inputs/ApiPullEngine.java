@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.inputs;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.lifecycle.Managed;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import la.alsocan.symbiot.access.DriverDao;
+import la.alsocan.symbiot.api.to.drivers.ApiPullInputDefinitionTo;
+import la.alsocan.symbiot.api.to.drivers.InputDefinitionTo;
+import la.alsocan.symbiot.api.to.inputs.ApiPullInputTo;
+import la.alsocan.symbiot.api.to.inputs.InputTo;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically calls the API of every API pull input, and runs the responses 
+ * through the streams of the input (like pushed payloads).
+ * <p>
+ * All inputs share a small scheduler and a pooled, non-blocking HTTP client. 
+ * Each input starts at a random offset within its period (jitter), a call is 
+ * skipped while the previous one is still running, and conditional requests 
+ * (ETag / Last-Modified) are used so that unchanged responses are not processed.
+ * Responses are offered to the stream runtime without waiting (neither the 
+ * threads of the HTTP client nor the scheduler ever block): a response refused 
+ * because its shard is full is pulled again on the next call.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class ApiPullEngine implements Managed {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ApiPullEngine.class);
+	private static final String DEFAULT_METHOD = "GET";
+	
+	private final ApiPullConfiguration conf;
+	private final StreamRegistry streamRegistry;
+	private final StreamExecutor streamExecutor;
+	private final DriverDao driverDao;
+	private final ObjectMapper om;
+	private final Map<Integer, Poller> pollers;
+	private final Meter pulled;
+	private final Meter notModified;
+	private final Meter failed;
+	private HttpClient client;
+	private ScheduledThreadPoolExecutor scheduler;
+
+	public ApiPullEngine(ApiPullConfiguration conf, StreamRegistry streamRegistry, StreamExecutor streamExecutor, 
+			  DriverDao driverDao, ObjectMapper om, MetricRegistry metrics) {
+		this.conf = conf;
+		this.streamRegistry = streamRegistry;
+		this.streamExecutor = streamExecutor;
+		this.driverDao = driverDao;
+		this.om = om;
+		this.pollers = new ConcurrentHashMap<>();
+		this.pulled = metrics.meter(MetricRegistry.name(ApiPullEngine.class, "pulled"));
+		this.notModified = metrics.meter(MetricRegistry.name(ApiPullEngine.class, "notModified"));
+		this.failed = metrics.meter(MetricRegistry.name(ApiPullEngine.class, "failed"));
+	}
+
+	@Override
+	public void start() throws Exception {
+		
+		QueuedThreadPool executor = new QueuedThreadPool();
+		executor.setName("api-pull-client");
+		client = new HttpClient();
+		client.setExecutor(executor);
+		client.setMaxConnectionsPerDestination(conf.getMaxConnectionsPerHost());
+		client.setConnectTimeout(conf.getConnectTimeout().toMilliseconds());
+		client.setIdleTimeout(conf.getKeepAlive().toMilliseconds());
+		client.start();
+		
+		AtomicInteger counter = new AtomicInteger();
+		scheduler = new ScheduledThreadPoolExecutor(conf.getSchedulerThreads(), (r) -> {
+			Thread t = new Thread(r, "api-pull-scheduler-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	@Override
+	public void stop() throws Exception {
+		scheduler.shutdownNow();
+		client.stop();
+	}
+	
+	/**
+	 * Schedule all the API pull inputs known by the stream registry.
+	 */
+	public void scheduleAll() {
+		
+		int count = 0;
+		for (InputTo inputTo : streamRegistry.findAllInputs()) {
+			if (refresh(inputTo.getId())) {
+				count++;
+			}
+		}
+		LOG.info("Scheduled " + count + " API pull input(s)");
+	}
+	
+	/**
+	 * (Re)schedule an input after it was created, updated or deleted.
+	 * @param inputId The input id
+	 * @return True if the input is now scheduled
+	 */
+	public synchronized boolean refresh(int inputId) {
+		
+		Poller previous = pollers.remove(inputId);
+		if (previous != null) {
+			previous.future.cancel(false);
+		}
+		
+		InputTo inputTo = streamRegistry.findInput(inputId);
+		if (scheduler == null || !(inputTo instanceof ApiPullInputTo)) {
+			return false;
+		}
+		
+		// the input settings take precedence over the ones of its definition
+		ApiPullInputTo pullTo = (ApiPullInputTo)inputTo;
+		ApiPullInputDefinitionTo def = definition(pullTo);
+		Integer frequency = pullTo.getFrequency() != null ? pullTo.getFrequency() : def == null ? null : def.getFrequency();
+		String url = pullTo.getUrl() != null ? pullTo.getUrl() : def == null ? null : def.getUrl();
+		String method = pullTo.getMethod() != null ? pullTo.getMethod() 
+				  : def != null && def.getMethod() != null ? def.getMethod() : DEFAULT_METHOD;
+		if (frequency == null || frequency <= 0 || url == null) {
+			LOG.warn("API pull input '" + inputId + "' has no frequency or url, it will not be scheduled");
+			return false;
+		}
+		Map<String, String> headers = new LinkedHashMap<>();
+		if (def != null && def.getHeaders() != null) {
+			headers.putAll(def.getHeaders());
+		}
+		if (pullTo.getHeaders() != null) {
+			headers.putAll(pullTo.getHeaders());
+		}
+		
+		// start at a random offset within the period, to spread the load
+		long period = TimeUnit.SECONDS.toMillis(frequency);
+		Poller poller = new Poller(pullTo, url, method, headers);
+		poller.future = scheduler.scheduleAtFixedRate(poller, 
+				  ThreadLocalRandom.current().nextLong(period), period, TimeUnit.MILLISECONDS);
+		pollers.put(inputId, poller);
+		return true;
+	}
+	
+	/**
+	 * @param inputTo The API pull input
+	 * @return The definition of the input (null if it is not an API pull definition anymore)
+	 */
+	private ApiPullInputDefinitionTo definition(ApiPullInputTo inputTo) {
+		
+		InputDefinitionTo def = driverDao.findInputDefinition(inputTo.getDriverId(), inputTo.getInputDefinitionId());
+		return def instanceof ApiPullInputDefinitionTo ? (ApiPullInputDefinitionTo)def : null;
+	}
+	
+	/**
+	 * Periodic call for one input.
+	 */
+	private class Poller implements Runnable {
+		
+		private final ApiPullInputTo inputTo;
+		private final String url;
+		private final String method;
+		private final Map<String, String> headers;
+		private final AtomicBoolean inFlight;
+		private volatile ScheduledFuture<?> future;
+		private volatile String etag;
+		private volatile String lastModified;
+
+		private Poller(ApiPullInputTo inputTo, String url, String method, Map<String, String> headers) {
+			this.inputTo = inputTo;
+			this.url = url;
+			this.method = method;
+			this.headers = headers;
+			this.inFlight = new AtomicBoolean();
+		}
+
+		@Override
+		public void run() {
+			
+			// never overlap calls for the same input
+			if (!inFlight.compareAndSet(false, true)) {
+				return;
+			}
+			
+			try {
+				Request request = client.newRequest(url)
+						  .method(method)
+						  .timeout(conf.getRequestTimeout().toMilliseconds(), TimeUnit.MILLISECONDS);
+				headers.forEach(request::header);
+				if (etag != null) {
+					request.header(HttpHeader.IF_NONE_MATCH, etag);
+				}
+				if (lastModified != null) {
+					request.header(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+				}
+				
+				request.send(new BufferingResponseListener((int)conf.getMaxResponseSize().toBytes()) {
+					@Override
+					public void onComplete(Result result) {
+						try {
+							handle(result, getContent());
+						} finally {
+							inFlight.set(false);
+						}
+					}
+				});
+			} catch (RuntimeException ex) {
+				// an exception would silently cancel the periodic task
+				inFlight.set(false);
+				failed.mark();
+				LOG.warn("Could not call API of input '" + inputTo.getId() + "': " + ex.getMessage(), ex);
+			}
+		}
+		
+		private void handle(Result result, byte[] content) {
+			
+			if (result.isFailed()) {
+				failed.mark();
+				LOG.warn("Could not pull input '" + inputTo.getId() + "': " + result.getFailure().getMessage());
+				return;
+			}
+			int status = result.getResponse().getStatus();
+			if (status == 304) {
+				notModified.mark();
+				return;
+			}
+			if (status >= 300) {
+				failed.mark();
+				LOG.warn("Could not pull input '" + inputTo.getId() + "': HTTP " + status);
+				return;
+			}
+			
+			try {
+				// an empty body means nothing was pulled
+				JsonNode payload = content == null || content.length == 0 ? null : om.readTree(content);
+				if (payload == null || payload.isMissingNode()) {
+					return;
+				}
+				pulled.mark();
+				
+				// a refused payload is pulled again on the next call (validators are kept)
+				if (!streamExecutor.offer(inputTo.getId(), null, payload)) {
+					failed.mark();
+					LOG.warn("Pulled payload of input '" + inputTo.getId() + "' was rejected by the stream runtime");
+					return;
+				}
+				etag = result.getResponse().getHeaders().get(HttpHeader.ETAG);
+				lastModified = result.getResponse().getHeaders().get(HttpHeader.LAST_MODIFIED);
+			} catch (Exception ex) {
+				failed.mark();
+				LOG.warn("Could not process pulled payload for input '" + inputTo.getId() + "': " + ex.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.inputs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the filesystem input watcher.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class FilesystemInputConfiguration {
+	
+	@Min(1)
+	@JsonProperty
+	private int workerThreads = 4;
+	
+	@Min(1)
+	@JsonProperty
+	private int queueDepth = 4096;
+	
+	@NotNull
+	@JsonProperty
+	private Duration rescanInterval = Duration.seconds(30);
+	
+	@NotNull
+	@JsonProperty
+	private Duration minFileAge = Duration.milliseconds(500);
+	
+	@NotNull
+	@JsonProperty
+	private Size maxFileSize = Size.megabytes(16);
+	
+	@JsonProperty
+	private String archiveFolder;
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public void setWorkerThreads(int workerThreads) {
+		this.workerThreads = workerThreads;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public Duration getRescanInterval() {
+		return rescanInterval;
+	}
+
+	public void setRescanInterval(Duration rescanInterval) {
+		this.rescanInterval = rescanInterval;
+	}
+
+	public Duration getMinFileAge() {
+		return minFileAge;
+	}
+
+	public void setMinFileAge(Duration minFileAge) {
+		this.minFileAge = minFileAge;
+	}
+
+	public Size getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	public void setMaxFileSize(Size maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public String getArchiveFolder() {
+		return archiveFolder;
+	}
+
+	public void setArchiveFolder(String archiveFolder) {
+		this.archiveFolder = archiveFolder;
+	}
+}
@@ -0,0 +1,460 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.inputs;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.dropwizard.lifecycle.Managed;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import la.alsocan.symbiot.api.to.inputs.FilesystemInputTo;
+import la.alsocan.symbiot.api.to.inputs.InputTo;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
+import la.alsocan.symbiot.core.streams.StreamRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the folders of the filesystem inputs, and runs the JSON files dropped 
+ * there through the streams of the input (like pushed payloads).
+ * <p>
+ * New files are detected with a {@link WatchService}, and every folder is also 
+ * rescanned periodically (events can be lost, and some filesystems do not 
+ * support notifications). Files are parsed in a streaming fashion (a file may 
+ * hold several JSON documents) by a bounded pool of workers: when the queue is 
+ * full, files are simply left for the next rescan. Workers wait for room in 
+ * the stream runtime, so that no payload of a file is refused. Once processed, 
+ * a file is deleted or moved to the archive folder (files are never remembered 
+ * in memory only, so inputs which would keep them are refused). A file which 
+ * cannot be parsed is set aside (suffixed with <code>.failed</code>), while a 
+ * file interrupted by another error is retried on the next rescan, starting 
+ * after its last submitted payload.
+ * <p>
+ * A folder can only be watched by one input: several inputs consuming the same 
+ * files would race to delete (or archive) them.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class FilesystemInputWatcher implements Managed {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(FilesystemInputWatcher.class);
+	private static final String FAILED_SUFFIX = ".failed";
+	
+	private final FilesystemInputConfiguration conf;
+	private final StreamRegistry streamRegistry;
+	private final StreamExecutor streamExecutor;
+	private final ObjectReader reader;
+	private final Map<Integer, Watch> watches;
+	private final Map<WatchKey, Watch> watchesByKey;
+	private final Meter ingested;
+	private final Meter deferred;
+	private final Meter skipped;
+	private final Meter failed;
+	private WatchService watchService;
+	private ThreadPoolExecutor workers;
+	private ScheduledExecutorService scheduler;
+	private Thread watchThread;
+
+	public FilesystemInputWatcher(FilesystemInputConfiguration conf, StreamRegistry streamRegistry, 
+			  StreamExecutor streamExecutor, ObjectMapper om, MetricRegistry metrics) {
+		this.conf = conf;
+		this.streamRegistry = streamRegistry;
+		this.streamExecutor = streamExecutor;
+		this.reader = om.readerFor(JsonNode.class);
+		this.watches = new ConcurrentHashMap<>();
+		this.watchesByKey = new ConcurrentHashMap<>();
+		this.ingested = metrics.meter(MetricRegistry.name(FilesystemInputWatcher.class, "ingested"));
+		this.deferred = metrics.meter(MetricRegistry.name(FilesystemInputWatcher.class, "deferred"));
+		this.skipped = metrics.meter(MetricRegistry.name(FilesystemInputWatcher.class, "skipped"));
+		this.failed = metrics.meter(MetricRegistry.name(FilesystemInputWatcher.class, "failed"));
+	}
+
+	@Override
+	public void start() throws Exception {
+		
+		watchService = FileSystems.getDefault().newWatchService();
+		workers = new ThreadPoolExecutor(conf.getWorkerThreads(), conf.getWorkerThreads(), 
+				  0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(conf.getQueueDepth()), 
+				  threadFactory("filesystem-input-worker-"), new ThreadPoolExecutor.AbortPolicy());
+		scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("filesystem-input-scheduler-"));
+		
+		long rescan = conf.getRescanInterval().toMilliseconds();
+		scheduler.scheduleWithFixedDelay(this::rescanAll, rescan, rescan, TimeUnit.MILLISECONDS);
+		
+		watchThread = threadFactory("filesystem-input-watcher-").newThread(this::watch);
+		watchThread.start();
+	}
+
+	@Override
+	public void stop() throws Exception {
+		
+		// closing the service also ends the watch thread
+		watchService.close();
+		scheduler.shutdownNow();
+		workers.shutdown();
+		if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+			LOG.warn("Some files were still being processed when the watcher stopped");
+			workers.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Watch the folders of all the filesystem inputs known by the stream registry.
+	 */
+	public void scheduleAll() {
+		
+		int count = 0;
+		for (InputTo inputTo : streamRegistry.findAllInputs()) {
+			if (refresh(inputTo.getId())) {
+				count++;
+			}
+		}
+		LOG.info("Watching " + count + " filesystem input(s)");
+	}
+	
+	/**
+	 * @param inputId The id of the input (null if it is not created yet)
+	 * @param inputTo The input
+	 * @return Why the input cannot be watched (null if it can, or if it is not a 
+	 * filesystem input)
+	 */
+	public String validate(Integer inputId, InputTo inputTo) {
+		
+		if (!(inputTo instanceof FilesystemInputTo)) {
+			return null;
+		}
+		FilesystemInputTo fsTo = (FilesystemInputTo)inputTo;
+		if (fsTo.getFolder() == null) {
+			return "A filesystem input needs a folder";
+		}
+		if (fsTo.getRegex() != null) {
+			try {
+				Pattern.compile(fsTo.getRegex());
+			} catch (PatternSyntaxException ex) {
+				return "Invalid regex: " + ex.getDescription();
+			}
+		}
+		
+		// processed files must go away, else they would be read again after a restart
+		if (!Boolean.TRUE.equals(fsTo.getDeleteAfterRead()) && conf.getArchiveFolder() == null) {
+			return "Files must be deleted after read (no archive folder is configured)";
+		}
+		
+		// several inputs consuming the same files would race to delete (or archive) them
+		Path folder = Paths.get(fsTo.getFolder()).toAbsolutePath().normalize();
+		for (InputTo other : streamRegistry.findAllInputs()) {
+			if (!(other instanceof FilesystemInputTo) || Integer.valueOf(other.getId()).equals(inputId)) {
+				continue;
+			}
+			String otherFolder = ((FilesystemInputTo)other).getFolder();
+			if (otherFolder != null && Paths.get(otherFolder).toAbsolutePath().normalize().equals(folder)) {
+				return "Folder '" + fsTo.getFolder() + "' is already watched by input '" + other.getId() + "'";
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * (Re)start watching the folder of an input after it was created, updated or deleted.
+	 * @param inputId The input id
+	 * @return True if the folder of the input is now watched
+	 */
+	public synchronized boolean refresh(int inputId) {
+		
+		Watch previous = watches.remove(inputId);
+		if (previous != null) {
+			cancel(previous);
+		}
+		
+		InputTo inputTo = streamRegistry.findInput(inputId);
+		if (watchService == null || !(inputTo instanceof FilesystemInputTo)) {
+			return false;
+		}
+		String invalid = validate(inputId, inputTo);
+		if (invalid != null) {
+			LOG.warn("Filesystem input '" + inputId + "' will not be watched: " + invalid);
+			return false;
+		}
+		FilesystemInputTo fsTo = (FilesystemInputTo)inputTo;
+		
+		Watch watch = new Watch(fsTo, Paths.get(fsTo.getFolder()), 
+				  fsTo.getRegex() == null ? null : Pattern.compile(fsTo.getRegex()));
+		try {
+			watch.key = watch.folder.register(watchService, 
+					  StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException ex) {
+			LOG.warn("Filesystem input '" + inputId + "' will not be watched: " + ex.getMessage());
+			return false;
+		}
+		watches.put(inputId, watch);
+		watchesByKey.put(watch.key, watch);
+		
+		// pick up the files dropped while the folder was not watched
+		scheduler.execute(() -> rescan(watch));
+		return true;
+	}
+	
+	private void cancel(Watch watch) {
+		watch.cancelled = true;
+		watchesByKey.remove(watch.key);
+		watch.key.cancel();
+	}
+	
+	private void watch() {
+		
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException ex) {
+				return;
+			}
+			Watch target = watchesByKey.get(key);
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (target == null) {
+					continue;
+				}
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					scheduler.execute(() -> rescan(target));
+					continue;
+				}
+				submit(target, ((Path)key.watchable()).resolve((Path)event.context()));
+			}
+			key.reset();
+		}
+	}
+	
+	private void rescanAll() {
+		watches.values().forEach(this::rescan);
+	}
+	
+	private void rescan(Watch watch) {
+		
+		if (watch.cancelled) {
+			return;
+		}
+		Set<Path> present = new HashSet<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(watch.folder)) {
+			for (Path file : files) {
+				present.add(file);
+				submit(watch, file);
+			}
+			
+			// forget about the files which are gone
+			watch.submitted.keySet().retainAll(present);
+		} catch (IOException | DirectoryIteratorException ex) {
+			LOG.warn("Could not scan folder of filesystem input '" + watch.inputTo.getId() + "': " + ex.getMessage());
+		}
+	}
+	
+	private void submit(Watch watch, Path file) {
+		
+		if (!watch.matches(file) || !watch.inFlight.add(file)) {
+			return;
+		}
+		try {
+			workers.execute(() -> ingest(watch, file));
+		} catch (RejectedExecutionException ex) {
+			
+			// workers are saturated, the next rescan will pick the file up
+			watch.inFlight.remove(file);
+			deferred.mark();
+		}
+	}
+	
+	private void ingest(Watch watch, Path file) {
+		
+		long retryIn = 0;
+		int submitted = watch.submitted.getOrDefault(file, 0);
+		try {
+			if (watch.cancelled) {
+				return;
+			}
+			BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			if (!attrs.isRegularFile()) {
+				return;
+			}
+			
+			// the file may still be written, come back later
+			long age = System.currentTimeMillis() - attrs.lastModifiedTime().toMillis();
+			if (age < conf.getMinFileAge().toMilliseconds()) {
+				retryIn = conf.getMinFileAge().toMilliseconds() - age;
+				return;
+			}
+			if (attrs.size() > conf.getMaxFileSize().toBytes()) {
+				skipped.mark();
+				LOG.warn("Setting aside file '" + file + "' of filesystem input '" + watch.inputTo.getId() 
+						  + "': file is too large (" + attrs.size() + " bytes)");
+				setAside(watch, file);
+				return;
+			}
+			
+			try (InputStream in = Files.newInputStream(file);
+				  MappingIterator<JsonNode> payloads = reader.readValues(in)) {
+				
+				// the payloads of a file are processed in order (keyed by file), 
+				// skipping the ones submitted before an interruption
+				String key = file.getFileName().toString();
+				for (int i = 0; payloads.hasNext(); i++) {
+					JsonNode payload = payloads.next();
+					if (i < submitted) {
+						continue;
+					}
+					if (!streamExecutor.submitAndWait(watch.inputTo.getId(), key, payload)) {
+						throw new IllegalStateException("the stream runtime is stopped");
+					}
+					submitted++;
+				}
+			}
+			ingested.mark();
+			done(watch, file);
+			watch.submitted.remove(file);
+		} catch (NoSuchFileException ex) {
+			// already processed (or removed) in the meantime
+			watch.submitted.remove(file);
+		} catch (Exception ex) {
+			failed.mark();
+			if (malformed(ex)) {
+				LOG.warn("Setting aside file '" + file + "' of filesystem input '" 
+						  + watch.inputTo.getId() + "' after " + submitted + " payload(s): " + ex.getMessage());
+				setAside(watch, file);
+			} else {
+				LOG.warn("Could not process file '" + file + "' of filesystem input '" 
+						  + watch.inputTo.getId() + "' (will be retried): " + ex.getMessage());
+				watch.submitted.put(file, submitted);
+			}
+		} finally {
+			watch.inFlight.remove(file);
+			if (retryIn > 0 && !scheduler.isShutdown()) {
+				scheduler.schedule(() -> submit(watch, file), retryIn, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+	
+	private void done(Watch watch, Path file) throws IOException {
+		
+		if (Boolean.TRUE.equals(watch.inputTo.getDeleteAfterRead())) {
+			Files.deleteIfExists(file);
+		} else {
+			Path archive = Paths.get(conf.getArchiveFolder(), "input-" + watch.inputTo.getId());
+			Files.createDirectories(archive);
+			Files.move(file, archive.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Rename a file which cannot be processed, so that it is not read again.
+	 */
+	private void setAside(Watch watch, Path file) {
+		
+		watch.submitted.remove(file);
+		try {
+			Files.move(file, file.resolveSibling(file.getFileName() + FAILED_SUFFIX), 
+					  StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException ex) {
+			LOG.warn("Could not set aside file '" + file + "': " + ex.getMessage());
+		}
+	}
+	
+	private static boolean malformed(Throwable ex) {
+		
+		// the mapping iterator wraps parsing errors into runtime exceptions
+		for (Throwable t = ex; t != null; t = t.getCause()) {
+			if (t instanceof JsonProcessingException) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static ThreadFactory threadFactory(String prefix) {
+		
+		AtomicInteger counter = new AtomicInteger();
+		return (r) -> {
+			Thread t = new Thread(r, prefix + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+	
+	/**
+	 * Watched folder of one input.
+	 */
+	private static class Watch {
+		
+		private final FilesystemInputTo inputTo;
+		private final Path folder;
+		private final Pattern pattern;
+		private final Set<Path> inFlight;
+		private final Map<Path, Integer> submitted;
+		private volatile boolean cancelled;
+		private WatchKey key;
+
+		private Watch(FilesystemInputTo inputTo, Path folder, Pattern pattern) {
+			this.inputTo = inputTo;
+			this.folder = folder;
+			this.pattern = pattern;
+			this.inFlight = ConcurrentHashMap.newKeySet();
+			this.submitted = new ConcurrentHashMap<>();
+		}
+		
+		private boolean matches(Path file) {
+			String name = file.getFileName().toString();
+			return !name.endsWith(FAILED_SUFFIX) && (pattern == null || pattern.matcher(name).matches());
+		}
+	}
+}
@@ -0,0 +1,586 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.inputs;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.lifecycle.Managed;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of the pushed payloads, so that accepted payloads survive a 
+ * crash (at-least-once delivery).
+ * <p>
+ * Payloads are appended to memory-mapped segments and a single thread fsyncs 
+ * them: callers waiting for their payload to be durable are released together 
+ * by the next fsync (group commit). Once each result of a payload was delivered 
+ * by its output handler or dead-lettered, the payload is marked as completed, 
+ * and a checkpoint (all payloads below it are completed) is saved periodically 
+ * so that fully completed segments can be deleted. On startup, the payloads 
+ * after the checkpoint are replayed through the stream runtime.
+ * <p>
+ * The guarantee stops at the output handlers: a result which a handler buffers 
+ * or keeps in memory (filesystem outputs, polling outputs) is not replayed if 
+ * the process crashes before the handler persisted it.
+ * <p>
+ * Record layout: length (int), CRC32 of the body (int), then the body: sequence 
+ * (long), ingress timestamp (long), input id (int), key length (short, -1 for 
+ * no key), key and payload (UTF-8). A zero length marks the end of a segment.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class WriteAheadLog implements Managed {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+	private static final String PREFIX = "wal-";
+	private static final String EXTENSION = ".log";
+	private static final String CHECKPOINT = "checkpoint";
+	private static final int HEADER_SIZE = 8;
+	private static final int FIXED_BODY_SIZE = 22;
+	
+	private final WriteAheadLogConfiguration conf;
+	private final ObjectMapper om;
+	private final StreamExecutor streamExecutor;
+	private final StageMetrics stageMetrics;
+	private final Meter appended;
+	private final Meter syncs;
+	private final ReentrantLock lock;
+	private final Condition appendedCondition;
+	private final Condition syncedCondition;
+	private final ConcurrentSkipListSet<Long> pending;
+	private final Deque<Segment> closed;
+	private final List<Segment> unsynced;
+	private final CRC32 crc;
+	private Path folder;
+	private Segment current;
+	private long lastSequence;
+	private long syncedSequence;
+	private long recoverFrom;
+	private long recoverTo;
+	private volatile long checkpoint;
+	private volatile boolean running;
+	private String failure;
+	private Thread syncer;
+	private ScheduledExecutorService scheduler;
+
+	public WriteAheadLog(WriteAheadLogConfiguration conf, ObjectMapper om, StreamExecutor streamExecutor, 
+			  StageMetrics stageMetrics, MetricRegistry metrics) {
+		this.conf = conf;
+		this.om = om;
+		this.streamExecutor = streamExecutor;
+		this.stageMetrics = stageMetrics;
+		this.appended = metrics.meter(MetricRegistry.name(WriteAheadLog.class, "appended"));
+		this.syncs = metrics.meter(MetricRegistry.name(WriteAheadLog.class, "syncs"));
+		this.lock = new ReentrantLock();
+		this.appendedCondition = lock.newCondition();
+		this.syncedCondition = lock.newCondition();
+		this.pending = new ConcurrentSkipListSet<>();
+		this.closed = new ArrayDeque<>();
+		this.unsynced = new ArrayList<>();
+		this.crc = new CRC32();
+	}
+
+	@Override
+	public void start() throws Exception {
+		
+		if (!conf.isEnabled()) {
+			return;
+		}
+		folder = Paths.get(conf.getFolder());
+		Files.createDirectories(folder);
+		Path checkpointFile = folder.resolve(CHECKPOINT);
+		if (Files.exists(checkpointFile)) {
+			checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+		}
+		
+		// find where the log stopped, payloads after the checkpoint will be replayed
+		lastSequence = checkpoint;
+		for (Path path : segmentPaths()) {
+			Segment segment = new Segment(firstSequence(path), path);
+			int[] records = new int[1];
+			scan(segment, (entry) -> {
+				records[0]++;
+				lastSequence = Math.max(lastSequence, entry.sequence);
+				if (entry.sequence > checkpoint) {
+					pending.add(entry.sequence);
+				}
+			});
+			if (records[0] == 0) {
+				Files.delete(path);
+			} else {
+				closed.add(segment);
+			}
+		}
+		recoverFrom = checkpoint;
+		recoverTo = lastSequence;
+		syncedSequence = lastSequence;
+		if (!pending.isEmpty()) {
+			LOG.info(pending.size() + " pushed payload(s) after the last checkpoint will be replayed");
+		}
+		
+		// always write to a new segment (the last one may end with a torn record)
+		current = open(lastSequence + 1);
+		running = true;
+		syncer = new Thread(this::syncLoop, "wal-sync");
+		syncer.setDaemon(true);
+		syncer.start();
+		scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "wal-checkpoint");
+			t.setDaemon(true);
+			return t;
+		});
+		long interval = conf.getCheckpointInterval().toMilliseconds();
+		scheduler.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() throws Exception {
+		
+		if (!conf.isEnabled()) {
+			return;
+		}
+		
+		// the syncer syncs what was appended so far before exiting
+		lock.lock();
+		try {
+			running = false;
+			appendedCondition.signal();
+		} finally {
+			lock.unlock();
+		}
+		syncer.join();
+		scheduler.shutdown();
+		scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		checkpoint();
+		current.channel.close();
+	}
+	
+	/**
+	 * Append a payload (not durable until {@link #awaitSync(long)} returns).
+	 * @param inputId The input which received the payload
+	 * @param key The device key, or null
+	 * @param payload The payload
+	 * @return The sequence of the payload (0 when the log is disabled)
+	 * @throws IOException If the log is closed or could not be written
+	 * @throws IllegalArgumentException If the payload cannot fit in a segment
+	 */
+	public long append(int inputId, String key, JsonNode payload) throws IOException {
+		
+		if (!conf.isEnabled()) {
+			return 0;
+		}
+		long encodingStart = System.nanoTime();
+		byte[] bytes = om.writeValueAsBytes(payload);
+		StageMetrics.record(stageMetrics.input(inputId).getSerialization(), encodingStart);
+		byte[] keyBytes = key == null ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+		if (keyBytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Key is too long");
+		}
+		int length = FIXED_BODY_SIZE + keyBytes.length + bytes.length;
+		if (HEADER_SIZE + length > conf.getSegmentSize().toBytes()) {
+			throw new IllegalArgumentException("Payload is too large (" + bytes.length + " bytes)");
+		}
+		long timestamp = System.currentTimeMillis();
+		
+		lock.lock();
+		try {
+			if (!running) {
+				throw new IOException("The write-ahead log is closed");
+			}
+			if (current.buffer.remaining() < HEADER_SIZE + length) {
+				roll();
+			}
+			long sequence = ++lastSequence;
+			ByteBuffer buffer = current.buffer;
+			int start = buffer.position();
+			buffer.position(start + HEADER_SIZE);
+			buffer.putLong(sequence)
+					  .putLong(timestamp)
+					  .putInt(inputId)
+					  .putShort((short)(key == null ? -1 : keyBytes.length))
+					  .put(keyBytes)
+					  .put(bytes);
+			
+			// the length goes last, a record is only valid once complete
+			ByteBuffer body = buffer.duplicate();
+			body.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + length);
+			crc.reset();
+			crc.update(body);
+			buffer.putInt(start + 4, (int)crc.getValue());
+			buffer.putInt(start, length);
+			
+			pending.add(sequence);
+			appendedCondition.signal();
+			appended.mark();
+			return sequence;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Wait until a payload is durable (fsynced).
+	 * @param sequence The sequence returned by {@link #append(int, String, JsonNode)}
+	 * @throws IOException If the log could not be synced
+	 */
+	public void awaitSync(long sequence) throws IOException {
+		
+		if (!conf.isEnabled()) {
+			return;
+		}
+		lock.lock();
+		try {
+			while (syncedSequence < sequence) {
+				if (failure != null) {
+					throw new IOException(failure);
+				}
+				syncedCondition.awaitUninterruptibly();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Mark a payload as delivered (or given up on), it will not be replayed.
+	 * @param sequence The sequence of the payload
+	 */
+	public void complete(long sequence) {
+		pending.remove(sequence);
+	}
+	
+	/**
+	 * Replay the payloads which were not delivered before the last shutdown 
+	 * (streams must be loaded).
+	 */
+	public void recover() {
+		
+		Long oldest = pending.ceiling(Long.MIN_VALUE);
+		if (!conf.isEnabled() || oldest == null || oldest > recoverTo) {
+			return;
+		}
+		List<Segment> segments = new ArrayList<>();
+		lock.lock();
+		try {
+			for (Segment segment : closed) {
+				if (segment.firstSequence <= recoverTo) {
+					segments.add(segment);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		int[] replayed = new int[1];
+		boolean[] stopped = new boolean[1];
+		for (int i = 0; i < segments.size() && !stopped[0]; i++) {
+			Segment segment = segments.get(i);
+			long last = i + 1 < segments.size() ? Math.min(recoverTo, segments.get(i + 1).firstSequence - 1) : recoverTo;
+			long[] scanned = {segment.firstSequence - 1};
+			try {
+				scan(segment, (entry) -> {
+					scanned[0] = entry.sequence;
+					if (entry.sequence <= recoverFrom || entry.sequence > recoverTo 
+							  || !pending.contains(entry.sequence)) {
+						return;
+					}
+					JsonNode payload;
+					try {
+						payload = om.readTree(entry.payload);
+					} catch (IOException ex) {
+						LOG.warn("Could not replay payload '" + entry.sequence + "': " + ex.getMessage());
+						complete(entry.sequence);
+						return;
+					}
+					if (!streamExecutor.submitAndWait(entry.inputId, entry.key, payload, () -> complete(entry.sequence))) {
+						
+						// shutting down: what is left is replayed on next startup
+						stopped[0] = true;
+						throw new IOException("the stream runtime is stopped");
+					}
+					replayed[0]++;
+				});
+			} catch (IOException ex) {
+				LOG.warn("Could not replay segment '" + segment.path + "': " + ex.getMessage());
+				if (!stopped[0] && scanned[0] < last) {
+					
+					// give up on the rest of the segment, so that the checkpoint can move past it
+					pending.subSet(scanned[0] + 1, true, last, true).clear();
+				}
+			}
+		}
+		LOG.info("Replayed " + replayed[0] + " pushed payload(s)");
+	}
+	
+	/**
+	 * Sync loop: each fsync releases every caller which appended before it.
+	 */
+	private void syncLoop() {
+		
+		while (true) {
+			long target;
+			List<Segment> toSync;
+			lock.lock();
+			try {
+				while (running && syncedSequence == lastSequence) {
+					appendedCondition.awaitUninterruptibly();
+				}
+				if (syncedSequence == lastSequence) {
+					return;
+				}
+				target = lastSequence;
+				toSync = new ArrayList<>(unsynced);
+				toSync.add(current);
+				unsynced.clear();
+			} finally {
+				lock.unlock();
+			}
+			
+			String error = null;
+			try {
+				for (Segment segment : toSync) {
+					segment.buffer.force();
+				}
+				syncs.mark();
+			} catch (RuntimeException ex) {
+				error = "Could not sync the write-ahead log: " + ex.getMessage();
+				LOG.error(error, ex);
+			}
+			
+			lock.lock();
+			try {
+				if (error == null) {
+					syncedSequence = target;
+				} else {
+					failure = error;
+					running = false;
+				}
+				syncedCondition.signalAll();
+				if (failure != null) {
+					return;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Save the checkpoint and delete the segments which are fully completed.
+	 */
+	private void checkpoint() {
+		
+		List<Segment> deletable = new ArrayList<>();
+		long newCheckpoint;
+		lock.lock();
+		try {
+			Long oldest = pending.ceiling(Long.MIN_VALUE);
+			newCheckpoint = oldest == null ? lastSequence : oldest - 1;
+			if (newCheckpoint <= checkpoint) {
+				return;
+			}
+			
+			// a segment is deletable when the next one starts before the checkpoint
+			Segment previous = null;
+			for (Segment segment : closed) {
+				if (previous != null && segment.firstSequence - 1 <= newCheckpoint) {
+					deletable.add(previous);
+				}
+				previous = segment;
+			}
+			if (previous != null && current.firstSequence - 1 <= newCheckpoint) {
+				deletable.add(previous);
+			}
+			closed.removeAll(deletable);
+		} finally {
+			lock.unlock();
+		}
+		
+		try {
+			Path tmp = folder.resolve(CHECKPOINT + ".tmp");
+			Files.write(tmp, Long.toString(newCheckpoint).getBytes(StandardCharsets.UTF_8));
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.move(tmp, folder.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			checkpoint = newCheckpoint;
+		} catch (IOException ex) {
+			LOG.warn("Could not save the write-ahead log checkpoint: " + ex.getMessage());
+			
+			// keep the segments until the checkpoint is saved
+			lock.lock();
+			try {
+				deletable.forEach(closed::addFirst);
+			} finally {
+				lock.unlock();
+			}
+			return;
+		}
+		for (Segment segment : deletable) {
+			try {
+				Files.deleteIfExists(segment.path);
+			} catch (IOException ex) {
+				LOG.warn("Could not delete segment '" + segment.path + "': " + ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Close the current segment and open the next one (holding the lock).
+	 */
+	private void roll() throws IOException {
+		
+		Segment next = open(lastSequence + 1);
+		current.channel.close();
+		unsynced.add(current);
+		closed.add(current);
+		current = next;
+	}
+	
+	private Segment open(long firstSequence) throws IOException {
+		
+		Path path = folder.resolve(String.format(PREFIX + "%020d" + EXTENSION, firstSequence));
+		Segment segment = new Segment(firstSequence, path);
+		segment.channel = FileChannel.open(path, 
+				  StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, conf.getSegmentSize().toBytes());
+		return segment;
+	}
+	
+	private List<Path> segmentPaths() throws IOException {
+		
+		List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, PREFIX + "*" + EXTENSION)) {
+			stream.forEach(paths::add);
+		}
+		
+		// sequences are zero-padded, so names sort like sequences
+		paths.sort(null);
+		return paths;
+	}
+	
+	private static long firstSequence(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+	}
+	
+	/**
+	 * Read the valid records of a segment, stopping at the first incomplete one.
+	 */
+	private static void scan(Segment segment, EntryConsumer consumer) throws IOException {
+		
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= HEADER_SIZE) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (length == 0) {
+				return;
+			}
+			if (length < FIXED_BODY_SIZE || length > buffer.remaining()) {
+				LOG.warn("Ignoring the end of segment '" + segment.path + "': invalid record at offset " + start);
+				return;
+			}
+			ByteBuffer body = buffer.slice();
+			body.limit(length);
+			crc.reset();
+			crc.update(body.duplicate());
+			if ((int)crc.getValue() != checksum) {
+				LOG.warn("Ignoring the end of segment '" + segment.path + "': corrupted record at offset " + start);
+				return;
+			}
+			Entry entry = new Entry();
+			entry.sequence = body.getLong();
+			entry.timestamp = body.getLong();
+			entry.inputId = body.getInt();
+			short keyLength = body.getShort();
+			if (keyLength >= 0) {
+				byte[] key = new byte[keyLength];
+				body.get(key);
+				entry.key = new String(key, StandardCharsets.UTF_8);
+			}
+			entry.payload = new byte[body.remaining()];
+			body.get(entry.payload);
+			consumer.accept(entry);
+			buffer.position(start + HEADER_SIZE + length);
+		}
+	}
+	
+	private static class Segment {
+		
+		private final long firstSequence;
+		private final Path path;
+		private FileChannel channel;
+		private MappedByteBuffer buffer;
+
+		public Segment(long firstSequence, Path path) {
+			this.firstSequence = firstSequence;
+			this.path = path;
+		}
+	}
+	
+	private static class Entry {
+		
+		private long sequence;
+		private long timestamp;
+		private int inputId;
+		private String key;
+		private byte[] payload;
+	}
+	
+	@FunctionalInterface
+	private interface EntryConsumer {
+		void accept(Entry entry) throws IOException;
+	}
+}
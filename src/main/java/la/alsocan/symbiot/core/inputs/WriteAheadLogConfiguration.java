@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.inputs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import io.dropwizard.util.SizeUnit;
+import io.dropwizard.validation.MaxSize;
+import io.dropwizard.validation.MinSize;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the write-ahead log of pushed payloads.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class WriteAheadLogConfiguration {
+	
+	@JsonProperty
+	private boolean enabled = true;
+	
+	@NotNull
+	@JsonProperty
+	private String folder = "./wal";
+	
+	// segments are memory-mapped as a whole
+	@NotNull
+	@MinSize(value = 1, unit = SizeUnit.MEGABYTES)
+	@MaxSize(value = 1, unit = SizeUnit.GIGABYTES)
+	@JsonProperty
+	private Size segmentSize = Size.megabytes(64);
+	
+	@NotNull
+	@JsonProperty
+	private Duration checkpointInterval = Duration.seconds(1);
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getFolder() {
+		return folder;
+	}
+
+	public void setFolder(String folder) {
+		this.folder = folder;
+	}
+
+	public Size getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(Size segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	public Duration getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(Duration checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.metrics;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Reservoir backed by an HdrHistogram: recording is lock-free and percentiles 
+ * are exact (2 significant digits), whatever the rate.
+ * <p>
+ * Snapshots cover the values recorded during the last one to two windows, so 
+ * that percentiles reflect recent latencies rather than the whole uptime.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class HdrHistogramReservoir implements Reservoir {
+	
+	private static final int SIGNIFICANT_DIGITS = 2;
+	
+	private final Recorder recorder;
+	private final long window;
+	private Histogram interval;
+	private Histogram current;
+	private Histogram previous;
+	private long currentStart;
+
+	public HdrHistogramReservoir(long window, TimeUnit unit) {
+		
+		// auto-resizing histograms only use memory for the range actually recorded
+		this.recorder = new Recorder(SIGNIFICANT_DIGITS);
+		this.window = unit.toMillis(window);
+		this.current = new Histogram(SIGNIFICANT_DIGITS);
+		this.previous = new Histogram(SIGNIFICANT_DIGITS);
+		this.currentStart = System.currentTimeMillis();
+	}
+
+	@Override
+	public void update(long value) {
+		recorder.recordValue(Math.max(0, value));
+	}
+
+	@Override
+	public int size() {
+		return getSnapshot().size();
+	}
+
+	@Override
+	public synchronized Snapshot getSnapshot() {
+		
+		// roll windows over (both are dropped if nothing was read for a while)
+		long elapsed = System.currentTimeMillis() - currentStart;
+		if (elapsed >= 2 * window) {
+			previous.reset();
+			current.reset();
+			currentStart += elapsed;
+		} else if (elapsed >= window) {
+			Histogram recycled = previous;
+			recycled.reset();
+			previous = current;
+			current = recycled;
+			currentStart += elapsed;
+		}
+		interval = recorder.getIntervalHistogram(interval);
+		current.add(interval);
+		
+		Histogram merged = current.copy();
+		merged.add(previous);
+		return new HdrSnapshot(merged);
+	}
+	
+	private static class HdrSnapshot extends Snapshot {
+		
+		private final Histogram histogram;
+
+		private HdrSnapshot(Histogram histogram) {
+			this.histogram = histogram;
+		}
+
+		@Override
+		public double getValue(double quantile) {
+			return histogram.getValueAtPercentile(quantile * 100);
+		}
+
+		/**
+		 * @return The distinct recorded values (counts are not expanded)
+		 */
+		@Override
+		public long[] getValues() {
+			List<Long> values = new ArrayList<>();
+			for (HistogramIterationValue value : histogram.recordedValues()) {
+				values.add(value.getValueIteratedTo());
+			}
+			return values.stream().mapToLong(Long::longValue).toArray();
+		}
+
+		@Override
+		public int size() {
+			return (int)Math.min(Integer.MAX_VALUE, histogram.getTotalCount());
+		}
+
+		@Override
+		public long getMax() {
+			return histogram.getMaxValue();
+		}
+
+		@Override
+		public double getMean() {
+			return histogram.getTotalCount() == 0 ? 0 : histogram.getMean();
+		}
+
+		@Override
+		public long getMin() {
+			return histogram.getMinValue();
+		}
+
+		@Override
+		public double getStdDev() {
+			return histogram.getTotalCount() == 0 ? 0 : histogram.getStdDeviation();
+		}
+
+		@Override
+		public void dump(OutputStream output) {
+			PrintStream out = new PrintStream(output);
+			histogram.outputPercentileDistribution(out, 1.0);
+			out.flush();
+		}
+	}
+}
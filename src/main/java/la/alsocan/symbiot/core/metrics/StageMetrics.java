@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.metrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Timers of each stage of the ingestion path, per input, stream and output:
+ * <ul>
+ * <li><code>inputs.{id}.parse</code>: parsing pushed payloads</li>
+ * <li><code>inputs.{id}.serialization</code>: encoding payloads in the write-ahead log</li>
+ * <li><code>inputs.{id}.queueing</code>: waiting in the queue of a shard</li>
+ * <li><code>inputs.{id}.lookup</code>: looking up the streams of the input</li>
+ * <li><code>streams.{id}.transformation</code>: applying the transformation</li>
+ * <li><code>outputs.{id}.queueing</code>: waiting in the queue of the output</li>
+ * <li><code>outputs.{id}.delivery</code>: handing the result to the output (and 
+ * <code>outputs.{id}.failures</code>)</li>
+ * </ul>
+ * Timers are backed by {@link HdrHistogramReservoir}s. To bound the number of 
+ * metrics, ids beyond the configured caps share an <code>other</code> set. The 
+ * metrics of a deleted input, stream or output must be removed (which frees its 
+ * slot).
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class StageMetrics {
+	
+	private static final String PREFIX = "symbiot";
+	private static final String OTHER = "other";
+	
+	private final StageMetricsConfiguration conf;
+	private final MetricRegistry metrics;
+	private final Dimension<InputStages> inputs;
+	private final Dimension<StreamStages> streams;
+	private final Dimension<OutputStages> outputs;
+
+	public StageMetrics(StageMetricsConfiguration conf, MetricRegistry metrics) {
+		this.conf = conf;
+		this.metrics = metrics;
+		this.inputs = new Dimension<>(conf.getMaxInputs(), InputStages::new);
+		this.streams = new Dimension<>(conf.getMaxStreams(), StreamStages::new);
+		this.outputs = new Dimension<>(conf.getMaxOutputs(), OutputStages::new);
+	}
+	
+	public InputStages input(int inputId) {
+		return inputs.get(inputId);
+	}
+	
+	public StreamStages stream(int streamId) {
+		return streams.get(streamId);
+	}
+	
+	public OutputStages output(int outputId) {
+		return outputs.get(outputId);
+	}
+	
+	public void removeInput(int inputId) {
+		if (inputs.remove(inputId)) {
+			remove("inputs", inputId);
+		}
+	}
+	
+	public void removeStream(int streamId) {
+		if (streams.remove(streamId)) {
+			remove("streams", streamId);
+		}
+	}
+	
+	public void removeOutput(int outputId) {
+		if (outputs.remove(outputId)) {
+			remove("outputs", outputId);
+		}
+	}
+	
+	/**
+	 * @param start A start time, from {@link System#nanoTime()}
+	 * @param timer The timer to update with the time elapsed since then
+	 */
+	public static void record(Timer timer, long start) {
+		timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+	
+	private void remove(String dimension, int id) {
+		String prefix = MetricRegistry.name(PREFIX, dimension, Integer.toString(id)) + ".";
+		metrics.removeMatching((name, metric) -> name.startsWith(prefix));
+	}
+	
+	private Timer timer(String name) {
+		return metrics.timer(name, () -> new Timer(new HdrHistogramReservoir(conf.getWindow().getQuantity(), conf.getWindow().getUnit())));
+	}
+	
+	public class InputStages {
+		
+		private final Timer parse;
+		private final Timer serialization;
+		private final Timer queueing;
+		private final Timer lookup;
+
+		private InputStages(String id) {
+			this.parse = timer(MetricRegistry.name(PREFIX, "inputs", id, "parse"));
+			this.serialization = timer(MetricRegistry.name(PREFIX, "inputs", id, "serialization"));
+			this.queueing = timer(MetricRegistry.name(PREFIX, "inputs", id, "queueing"));
+			this.lookup = timer(MetricRegistry.name(PREFIX, "inputs", id, "lookup"));
+		}
+
+		public Timer getParse() {
+			return parse;
+		}
+
+		public Timer getSerialization() {
+			return serialization;
+		}
+
+		public Timer getQueueing() {
+			return queueing;
+		}
+
+		public Timer getLookup() {
+			return lookup;
+		}
+	}
+	
+	public class StreamStages {
+		
+		private final Timer transformation;
+
+		private StreamStages(String id) {
+			this.transformation = timer(MetricRegistry.name(PREFIX, "streams", id, "transformation"));
+		}
+
+		public Timer getTransformation() {
+			return transformation;
+		}
+	}
+	
+	public class OutputStages {
+		
+		private final Timer queueing;
+		private final Timer delivery;
+		private final Meter failures;
+
+		private OutputStages(String id) {
+			this.queueing = timer(MetricRegistry.name(PREFIX, "outputs", id, "queueing"));
+			this.delivery = timer(MetricRegistry.name(PREFIX, "outputs", id, "delivery"));
+			this.failures = metrics.meter(MetricRegistry.name(PREFIX, "outputs", id, "failures"));
+		}
+
+		public Timer getQueueing() {
+			return queueing;
+		}
+
+		public Timer getDelivery() {
+			return delivery;
+		}
+
+		public Meter getFailures() {
+			return failures;
+		}
+	}
+	
+	/**
+	 * The metrics of each id, up to a cap (lock-free once created).
+	 */
+	private static class Dimension<T> {
+		
+		private final int cap;
+		private final Function<String, T> factory;
+		private final Map<Integer, T> stages;
+		private volatile T other;
+
+		private Dimension(int cap, Function<String, T> factory) {
+			this.cap = cap;
+			this.factory = factory;
+			this.stages = new ConcurrentHashMap<>();
+		}
+		
+		private T get(int id) {
+			
+			T t = stages.get(id);
+			if (t != null) {
+				return t;
+			}
+			if (stages.size() < cap) {
+				return stages.computeIfAbsent(id, (key) -> factory.apply(Integer.toString(key)));
+			}
+			if (other == null) {
+				synchronized (this) {
+					if (other == null) {
+						other = factory.apply(OTHER);
+					}
+				}
+			}
+			return other;
+		}
+		
+		/**
+		 * @return True if the id had its own metrics
+		 */
+		private boolean remove(int id) {
+			return stages.remove(id) != null;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.metrics;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the per-stage metrics (cardinality caps and percentile window).
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class StageMetricsConfiguration {
+	
+	// beyond these, ids share a single "other" set of metrics
+	@Min(0)
+	@JsonProperty
+	private int maxInputs = 100;
+	
+	@Min(0)
+	@JsonProperty
+	private int maxStreams = 200;
+	
+	@Min(0)
+	@JsonProperty
+	private int maxOutputs = 100;
+	
+	@NotNull
+	@JsonProperty
+	private Duration window = Duration.minutes(1);
+
+	public int getMaxInputs() {
+		return maxInputs;
+	}
+
+	public void setMaxInputs(int maxInputs) {
+		this.maxInputs = maxInputs;
+	}
+
+	public int getMaxStreams() {
+		return maxStreams;
+	}
+
+	public void setMaxStreams(int maxStreams) {
+		this.maxStreams = maxStreams;
+	}
+
+	public int getMaxOutputs() {
+		return maxOutputs;
+	}
+
+	public void setMaxOutputs(int maxOutputs) {
+		this.maxOutputs = maxOutputs;
+	}
+
+	public Duration getWindow() {
+		return window;
+	}
+
+	public void setWindow(Duration window) {
+		this.window = window;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the output dispatch engine.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class DispatchConfiguration {
+	
+	/**
+	 * What to do when the queue of an output is full.
+	 */
+	public enum BackPressurePolicy {
+		
+		/** Block the caller (up to <code>maxBlockTime</code>) until there is room, then refuse the new result */
+		BLOCK,
+		
+		/** Drop the oldest queued result to make room (it is not dead-lettered) */
+		DROP_OLDEST,
+		
+		/** Refuse the new result (the stream runtime dead-letters it, at the DISPATCH stage) */
+		REJECT
+	}
+	
+	@Min(1)
+	@JsonProperty
+	private int workerThreads = 8;
+	
+	@Min(1)
+	@JsonProperty
+	private int queueDepth = 1024;
+	
+	@Min(1)
+	@JsonProperty
+	private int maxConcurrencyPerOutput = 2;
+	
+	@NotNull
+	@JsonProperty
+	private BackPressurePolicy backPressurePolicy = BackPressurePolicy.REJECT;
+	
+	@NotNull
+	@JsonProperty
+	private Duration maxBlockTime = Duration.seconds(1);
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public void setWorkerThreads(int workerThreads) {
+		this.workerThreads = workerThreads;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public int getMaxConcurrencyPerOutput() {
+		return maxConcurrencyPerOutput;
+	}
+
+	public void setMaxConcurrencyPerOutput(int maxConcurrencyPerOutput) {
+		this.maxConcurrencyPerOutput = maxConcurrencyPerOutput;
+	}
+
+	public BackPressurePolicy getBackPressurePolicy() {
+		return backPressurePolicy;
+	}
+
+	public void setBackPressurePolicy(BackPressurePolicy backPressurePolicy) {
+		this.backPressurePolicy = backPressurePolicy;
+	}
+
+	public Duration getMaxBlockTime() {
+		return maxBlockTime;
+	}
+
+	public void setMaxBlockTime(Duration maxBlockTime) {
+		this.maxBlockTime = maxBlockTime;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the filesystem output writer (rotation, buffering and fsync).
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class FilesystemConfiguration {
+	
+	@NotNull
+	@JsonProperty
+	private Size maxFileSize = Size.megabytes(64);
+	
+	@NotNull
+	@JsonProperty
+	private Duration rollInterval = Duration.hours(1);
+	
+	@NotNull
+	@JsonProperty
+	private Size bufferSize = Size.kilobytes(64);
+	
+	@NotNull
+	@JsonProperty
+	private Duration fsyncInterval = Duration.seconds(1);
+	
+	@JsonProperty
+	private boolean gzipRotatedFiles = false;
+
+	public Size getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	public void setMaxFileSize(Size maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public Duration getRollInterval() {
+		return rollInterval;
+	}
+
+	public void setRollInterval(Duration rollInterval) {
+		this.rollInterval = rollInterval;
+	}
+
+	public Size getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(Size bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public Duration getFsyncInterval() {
+		return fsyncInterval;
+	}
+
+	public void setFsyncInterval(Duration fsyncInterval) {
+		this.fsyncInterval = fsyncInterval;
+	}
+
+	public boolean isGzipRotatedFiles() {
+		return gzipRotatedFiles;
+	}
+
+	public void setGzipRotatedFiles(boolean gzipRotatedFiles) {
+		this.gzipRotatedFiles = gzipRotatedFiles;
+	}
+}
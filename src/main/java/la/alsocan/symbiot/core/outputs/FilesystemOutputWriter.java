@@ -0,0 +1,304 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.lifecycle.Managed;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import la.alsocan.symbiot.api.to.outputs.FilesystemOutputTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends results of filesystem outputs as newline-delimited JSON, in rolling 
+ * files (rotated by size and by age).
+ * <p>
+ * Writes go through a buffer per output and are synced to disk periodically for 
+ * all outputs at once (group commit), rather than once per result. The file 
+ * (and buffer) of an output is released once it was rolled over and nothing 
+ * was written since, or when the output is deleted.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class FilesystemOutputWriter implements OutputHandler, Managed {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(FilesystemOutputWriter.class);
+	private static final String EXTENSION = ".ndjson";
+	private static final byte NEW_LINE = '\n';
+	
+	private final FilesystemConfiguration conf;
+	private final ObjectMapper om;
+	private final Map<Integer, Segment> segments;
+	private ScheduledExecutorService scheduler;
+	private ExecutorService compressor;
+
+	public FilesystemOutputWriter(FilesystemConfiguration conf, ObjectMapper om) {
+		this.conf = conf;
+		this.om = om;
+		this.segments = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void start() throws Exception {
+		scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "filesystem-output-sync");
+			t.setDaemon(true);
+			return t;
+		});
+		compressor = Executors.newSingleThreadExecutor((r) -> {
+			Thread t = new Thread(r, "filesystem-output-gzip");
+			t.setDaemon(true);
+			return t;
+		});
+		long interval = conf.getFsyncInterval().toMilliseconds();
+		scheduler.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() throws Exception {
+		scheduler.shutdown();
+		scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		for (Segment segment : segments.values()) {
+			synchronized (segment) {
+				segment.close();
+			}
+		}
+		compressor.shutdown();
+		compressor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	@Override
+	public void handle(OutputTo output, JsonNode result) throws Exception {
+		
+		String folder = ((FilesystemOutputTo)output).getFolder();
+		if (folder == null) {
+			throw new IllegalStateException("Filesystem output '" + output.getId() + "' has no folder");
+		}
+		byte[] bytes = om.writeValueAsBytes(result);
+		while (true) {
+			Segment segment = segments.computeIfAbsent(output.getId(), (id) -> new Segment(id));
+			synchronized (segment) {
+				
+				// released in the meantime, use a new one
+				if (segment.discarded) {
+					continue;
+				}
+				
+				// roll over if needed (also when the output folder was changed)
+				if (segment.channel != null && (!segment.folder.equals(folder)
+						  || segment.size + bytes.length + 1 > conf.getMaxFileSize().toBytes()
+						  || System.currentTimeMillis() - segment.openedAt > conf.getRollInterval().toMilliseconds())) {
+					segment.close();
+				}
+				if (segment.channel == null) {
+					segment.open(folder);
+				}
+				segment.append(bytes);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Flush and close the file of an output after it was deleted.
+	 * @param outputId The output id
+	 */
+	public void discard(int outputId) {
+		
+		Segment segment = segments.remove(outputId);
+		if (segment != null) {
+			synchronized (segment) {
+				segment.discarded = true;
+				segment.close();
+			}
+		}
+	}
+	
+	/**
+	 * Flush and fsync all outputs (group commit), and roll over old files.
+	 */
+	private void sync() {
+		
+		long now = System.currentTimeMillis();
+		for (Segment segment : segments.values()) {
+			synchronized (segment) {
+				try {
+					if (segment.channel != null && now - segment.openedAt > conf.getRollInterval().toMilliseconds()) {
+						segment.close();
+					} else if (segment.channel == null && !segment.dirty) {
+						
+						// nothing written since the last roll over
+						segments.remove(segment.outputId, segment);
+						segment.discarded = true;
+					} else {
+						segment.sync();
+					}
+				} catch (IOException ex) {
+					LOG.warn("Could not sync file '" + segment.path + "': " + ex.getMessage());
+				}
+			}
+		}
+	}
+	
+	private void compress(Path path) {
+		
+		Path gzipped = Paths.get(path.toString() + ".gz");
+		try (InputStream in = Files.newInputStream(path); 
+				  OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} catch (IOException ex) {
+			LOG.warn("Could not compress file '" + path + "': " + ex.getMessage());
+			return;
+		}
+		try {
+			Files.delete(path);
+		} catch (IOException ex) {
+			LOG.warn("Could not delete file '" + path + "' after compression: " + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * The file currently written for one output (not thread-safe).
+	 */
+	private class Segment {
+		
+		private final int outputId;
+		private final ByteBuffer buffer;
+		private String folder;
+		private Path path;
+		private FileChannel channel;
+		private long size;
+		private long openedAt;
+		private boolean dirty;
+		private boolean discarded;
+
+		private Segment(int outputId) {
+			this.outputId = outputId;
+			this.buffer = ByteBuffer.allocateDirect((int)conf.getBufferSize().toBytes());
+		}
+		
+		private void open(String folder) throws IOException {
+			
+			Path dir = Paths.get(folder);
+			Files.createDirectories(dir);
+			this.folder = folder;
+			this.path = dir.resolve("output-" + outputId + "-" 
+					  + DateTime.now(DateTimeZone.UTC).toString("yyyyMMdd'T'HHmmssSSS") + EXTENSION);
+			this.channel = FileChannel.open(path, 
+					  StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			this.size = channel.size() + buffer.position();
+			this.openedAt = System.currentTimeMillis();
+		}
+		
+		private void append(byte[] bytes) throws IOException {
+			
+			if (buffer.remaining() < bytes.length + 1) {
+				flush();
+			}
+			if (buffer.remaining() < bytes.length + 1) {
+				
+				// bigger than the buffer, write directly
+				ByteBuffer direct = ByteBuffer.allocate(bytes.length + 1);
+				direct.put(bytes).put(NEW_LINE).flip();
+				while (direct.hasRemaining()) {
+					channel.write(direct);
+				}
+			} else {
+				buffer.put(bytes).put(NEW_LINE);
+			}
+			size += bytes.length + 1;
+			dirty = true;
+		}
+		
+		private void flush() throws IOException {
+			buffer.flip();
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} finally {
+				
+				// keeps what could not be written
+				buffer.compact();
+			}
+		}
+		
+		private void sync() throws IOException {
+			if (channel != null && dirty) {
+				flush();
+				channel.force(false);
+				dirty = false;
+			}
+		}
+		
+		private void close() {
+			
+			if (channel == null) {
+				return;
+			}
+			Path closed = path;
+			try {
+				sync();
+			} catch (IOException ex) {
+				
+				// buffered results are kept, and written to the next file
+				LOG.warn("Could not flush file '" + closed + "' (" + buffer.position() 
+						  + " buffered bytes are kept for the next file): " + ex.getMessage());
+			}
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				LOG.warn("Could not close file '" + closed + "': " + ex.getMessage());
+			}
+			channel = null;
+			dirty = buffer.position() > 0;
+			if (conf.isGzipRotatedFiles() && !compressor.isShutdown()) {
+				compressor.execute(() -> compress(closed));
+			}
+		}
+	}
+}
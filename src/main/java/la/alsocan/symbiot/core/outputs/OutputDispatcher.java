@@ -0,0 +1,382 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.lifecycle.Managed;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.streams.DeadLetterStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous delivery of transformed results to outputs.
+ * <p>
+ * Each output gets its own bounded queue (of <code>queueDepth</code> results), 
+ * drained by a shared worker pool. The queue is split in 
+ * <code>maxConcurrencyPerOutput</code> lanes by stream and device key, each 
+ * drained by at most one worker at a time: the results of a device are 
+ * delivered in order, and a slow output cannot starve the others. Handlers 
+ * which batch results get up to their batch size of queued results at once 
+ * (waiting up to their batch window for them).
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class OutputDispatcher implements Managed {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(OutputDispatcher.class);
+	
+	private final DispatchConfiguration conf;
+	private final OutputHandler defaultHandler;
+	private final DeadLetterStore deadLetterStore;
+	private final StageMetrics stageMetrics;
+	private final Map<String, OutputHandler> handlers;
+	private final Map<Integer, OutputQueue> queues;
+	private final Meter dispatched;
+	private final Meter dropped;
+	private final Meter rejected;
+	private final Meter failed;
+	private ExecutorService workers;
+
+	public OutputDispatcher(DispatchConfiguration conf, OutputHandler defaultHandler, DeadLetterStore deadLetterStore, 
+			  StageMetrics stageMetrics, MetricRegistry metrics) {
+		this.conf = conf;
+		this.defaultHandler = defaultHandler;
+		this.deadLetterStore = deadLetterStore;
+		this.stageMetrics = stageMetrics;
+		this.handlers = new ConcurrentHashMap<>();
+		this.queues = new ConcurrentHashMap<>();
+		this.dispatched = metrics.meter(MetricRegistry.name(OutputDispatcher.class, "dispatched"));
+		this.dropped = metrics.meter(MetricRegistry.name(OutputDispatcher.class, "dropped"));
+		this.rejected = metrics.meter(MetricRegistry.name(OutputDispatcher.class, "rejected"));
+		this.failed = metrics.meter(MetricRegistry.name(OutputDispatcher.class, "failed"));
+	}
+	
+	/**
+	 * Register the handler to use for a given output type
+	 * @param outputType The output type (ex: {@link la.alsocan.symbiot.api.to.outputs.WebhookOutputTo#TYPE})
+	 * @param handler The handler
+	 */
+	public void register(String outputType, OutputHandler handler) {
+		handlers.put(outputType, handler);
+	}
+
+	@Override
+	public void start() throws Exception {
+		AtomicInteger counter = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(conf.getWorkerThreads(), (r) -> {
+			Thread t = new Thread(r, "output-dispatcher-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void stop() throws Exception {
+		workers.shutdown();
+		if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+			LOG.warn("Some results could not be delivered before shutdown");
+			workers.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Queue a result for delivery, applying the configured back-pressure policy.
+	 * @param streamId The stream which produced the result (for dead letters)
+	 * @param output The output to deliver to
+	 * @param result The transformed payload
+	 * @return False if the result was rejected (the queue of the output is full)
+	 */
+	public boolean dispatch(int streamId, OutputTo output, JsonNode result) {
+		return dispatch(streamId, null, output, result, null);
+	}
+	
+	/**
+	 * Same as above, calling back once the result is settled.
+	 * @param key The device key (results of a stream with the same key are 
+	 * delivered in order), or null
+	 * @param settled Called once the result was delivered by the output handler, 
+	 * dead-lettered or dropped (not called if the result is rejected, or lost on 
+	 * shutdown)
+	 */
+	public boolean dispatch(int streamId, String key, OutputTo output, JsonNode result, Runnable settled) {
+		
+		OutputQueue q = queues.computeIfAbsent(output.getId(), (id) -> new OutputQueue(
+				  conf.getMaxConcurrencyPerOutput(), conf.getQueueDepth()));
+		q.output = output;
+		Lane lane = q.laneOf(streamId, key);
+		Delivery delivery = new Delivery(streamId, result, settled);
+		boolean accepted;
+		switch (conf.getBackPressurePolicy()) {
+			case BLOCK:
+				try {
+					accepted = lane.results.offer(delivery, conf.getMaxBlockTime().toMilliseconds(), TimeUnit.MILLISECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					accepted = false;
+				}
+				break;
+			case DROP_OLDEST:
+				while (!lane.results.offer(delivery)) {
+					Delivery oldest = lane.results.poll();
+					if (oldest != null) {
+						dropped.mark();
+						oldest.settle();
+					}
+				}
+				accepted = true;
+				break;
+			case REJECT:
+			default:
+				accepted = lane.results.offer(delivery);
+				break;
+		}
+		
+		if (!accepted) {
+			rejected.mark();
+			return false;
+		}
+		if (!schedule(q, lane)) {
+			
+			// shutting down: no worker will deliver it
+			lane.results.remove(delivery);
+			rejected.mark();
+			return false;
+		}
+		dispatched.mark();
+		return true;
+	}
+	
+	/**
+	 * Forget the queue of a deleted output, once the results still queued are 
+	 * delivered (until then, results keep using the same queue).
+	 * @param outputId The output id
+	 */
+	public void discard(int outputId) {
+		
+		OutputQueue q = queues.get(outputId);
+		if (q != null) {
+			q.discarded = true;
+			release(outputId, q);
+		}
+	}
+	
+	/**
+	 * @param outputId The output id
+	 * @return The number of results waiting to be delivered to the given output
+	 */
+	public int pending(int outputId) {
+		
+		OutputQueue q = queues.get(outputId);
+		if (q == null) {
+			return 0;
+		}
+		int pending = 0;
+		for (Lane lane : q.lanes) {
+			pending += lane.results.size();
+		}
+		return pending;
+	}
+	
+	/**
+	 * @return False if the worker pool refused the drainer (it is shut down)
+	 */
+	private boolean schedule(OutputQueue q, Lane lane) {
+		
+		if (!lane.draining.compareAndSet(false, true)) {
+			return true;
+		}
+		try {
+			workers.execute(() -> drain(q, lane));
+			return true;
+		} catch (RejectedExecutionException ex) {
+			lane.draining.set(false);
+			return false;
+		}
+	}
+	
+	private void drain(OutputQueue q, Lane lane) {
+		
+		try {
+			Delivery first;
+			while ((first = lane.results.poll()) != null) {
+				OutputTo output = q.output;
+				OutputHandler handler = handlers.getOrDefault(output.getType(), defaultHandler);
+				List<Delivery> batch = new ArrayList<>();
+				batch.add(first);
+				fill(lane, handler, batch);
+				deliver(output, handler, batch);
+			}
+		} finally {
+			lane.draining.set(false);
+		}
+		
+		// a result may have been queued after the last poll
+		if (!lane.results.isEmpty()) {
+			schedule(q, lane);
+		} else if (q.discarded) {
+			release(q.output.getId(), q);
+		}
+	}
+	
+	private void release(int outputId, OutputQueue q) {
+		
+		for (Lane lane : q.lanes) {
+			if (lane.draining.get() || !lane.results.isEmpty()) {
+				return;
+			}
+		}
+		queues.remove(outputId, q);
+	}
+	
+	/**
+	 * Add queued results to a batch, waiting for them until the batch window of 
+	 * its first result is over.
+	 */
+	private void fill(Lane lane, OutputHandler handler, List<Delivery> batch) {
+		
+		int size = handler.getBatchSize();
+		long deadline = batch.get(0).enqueuedAt + TimeUnit.MILLISECONDS.toNanos(handler.getBatchWindow().toMilliseconds());
+		while (batch.size() < size) {
+			lane.results.drainTo(batch, size - batch.size());
+			long wait = deadline - System.nanoTime();
+			if (batch.size() >= size || wait <= 0) {
+				return;
+			}
+			try {
+				Delivery next = lane.results.poll(wait, TimeUnit.NANOSECONDS);
+				if (next == null) {
+					return;
+				}
+				batch.add(next);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+	
+	private void deliver(OutputTo output, OutputHandler handler, List<Delivery> batch) {
+		
+		StageMetrics.OutputStages stages = stageMetrics.output(output.getId());
+		for (Delivery delivery : batch) {
+			StageMetrics.record(stages.getQueueing(), delivery.enqueuedAt);
+		}
+		long start = System.nanoTime();
+		try {
+			if (handler.getBatchSize() > 1) {
+				List<JsonNode> results = new ArrayList<>(batch.size());
+				batch.forEach((delivery) -> results.add(delivery.result));
+				handler.handle(output, results);
+			} else {
+				handler.handle(output, batch.get(0).result);
+			}
+			StageMetrics.record(stages.getDelivery(), start);
+		} catch (Exception ex) {
+			
+			// kept for replay (not logged, a failing output would flood the logs)
+			for (Delivery delivery : batch) {
+				failed.mark();
+				stages.getFailures().mark();
+				deadLetterStore.add(delivery.streamId, DeadLetterStore.Stage.DELIVERY, delivery.result, 
+						  "Could not deliver result to output '" + output.getId() + "': " + ex.getMessage());
+			}
+		}
+		batch.forEach(Delivery::settle);
+	}
+	
+	/**
+	 * Results queued for one output, split in lanes by stream and device key.
+	 */
+	private static class OutputQueue {
+		
+		private final Lane[] lanes;
+		private volatile OutputTo output;
+		private volatile boolean discarded;
+
+		private OutputQueue(int lanes, int depth) {
+			this.lanes = new Lane[lanes];
+			for (int i = 0; i < lanes; i++) {
+				this.lanes[i] = new Lane(Math.max(1, depth / lanes));
+			}
+		}
+		
+		private Lane laneOf(int streamId, String key) {
+			
+			int h = key == null ? streamId : 31 * streamId + key.hashCode();
+			h ^= (h >>> 16);
+			return lanes[Math.floorMod(h, lanes.length)];
+		}
+	}
+	
+	/**
+	 * Bounded FIFO drained by at most one worker at a time.
+	 */
+	private static class Lane {
+		
+		private final BlockingQueue<Delivery> results;
+		private final AtomicBoolean draining;
+
+		private Lane(int depth) {
+			this.results = new ArrayBlockingQueue<>(depth);
+			this.draining = new AtomicBoolean();
+		}
+	}
+	
+	private static class Delivery {
+		
+		private final int streamId;
+		private final JsonNode result;
+		private final Runnable settled;
+		private final long enqueuedAt;
+
+		private Delivery(int streamId, JsonNode result, Runnable settled) {
+			this.streamId = streamId;
+			this.result = result;
+			this.settled = settled;
+			this.enqueuedAt = System.nanoTime();
+		}
+		
+		private void settle() {
+			if (settled != null) {
+				settled.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.util.Duration;
+import java.util.List;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+
+/**
+ * Delivers transformed results to an output (one implementation per output type).
+ * <p>
+ * Handlers are called from the dispatch worker pool, possibly concurrently for 
+ * the same output (see <code>maxConcurrencyPerOutput</code>). A handler only 
+ * returns once the result was delivered (the result is then settled, see 
+ * {@link la.alsocan.symbiot.core.inputs.WriteAheadLog}), and throws if it could 
+ * not be delivered (the result is then dead-lettered).
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public interface OutputHandler {
+	
+	/**
+	 * Deliver a result
+	 * @param output The output to deliver to
+	 * @param result The transformed payload
+	 * @throws Exception The result could not be delivered
+	 */
+	void handle(OutputTo output, JsonNode result) throws Exception;
+	
+	/**
+	 * Deliver several results at once (only called if {@link #getBatchSize()} is 
+	 * greater than 1)
+	 * @param output The output to deliver to
+	 * @param results The transformed payloads, in the order they were queued
+	 * @throws Exception The results could not be delivered
+	 */
+	default void handle(OutputTo output, List<JsonNode> results) throws Exception {
+		for (JsonNode result : results) {
+			handle(output, result);
+		}
+	}
+	
+	/**
+	 * @return The maximum number of results to deliver at once
+	 */
+	default int getBatchSize() {
+		return 1;
+	}
+	
+	/**
+	 * @return How long a result may wait for others to fill its batch
+	 */
+	default Duration getBatchWindow() {
+		return Duration.milliseconds(0);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the in-memory store backing polling outputs.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class PollingConfiguration {
+	
+	@Min(1)
+	@JsonProperty
+	private int maxEntriesPerOutput = 10000;
+	
+	@NotNull
+	@JsonProperty
+	private Size maxBytesPerOutput = Size.megabytes(16);
+	
+	@NotNull
+	@JsonProperty
+	private Duration defaultTtl = Duration.hours(1);
+	
+	@NotNull
+	@JsonProperty
+	private Duration maxWait = Duration.seconds(30);
+	
+	@Min(1)
+	@JsonProperty
+	private int maxResultsPerPoll = 1000;
+
+	public int getMaxEntriesPerOutput() {
+		return maxEntriesPerOutput;
+	}
+
+	public void setMaxEntriesPerOutput(int maxEntriesPerOutput) {
+		this.maxEntriesPerOutput = maxEntriesPerOutput;
+	}
+
+	public Size getMaxBytesPerOutput() {
+		return maxBytesPerOutput;
+	}
+
+	public void setMaxBytesPerOutput(Size maxBytesPerOutput) {
+		this.maxBytesPerOutput = maxBytesPerOutput;
+	}
+
+	public Duration getDefaultTtl() {
+		return defaultTtl;
+	}
+
+	public void setDefaultTtl(Duration defaultTtl) {
+		this.defaultTtl = defaultTtl;
+	}
+
+	public Duration getMaxWait() {
+		return maxWait;
+	}
+
+	public void setMaxWait(Duration maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public int getMaxResultsPerPoll() {
+		return maxResultsPerPoll;
+	}
+
+	public void setMaxResultsPerPoll(int maxResultsPerPoll) {
+		this.maxResultsPerPoll = maxResultsPerPoll;
+	}
+}
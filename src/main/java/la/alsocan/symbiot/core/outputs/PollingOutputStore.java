@@ -0,0 +1,258 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import io.dropwizard.lifecycle.Managed;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import la.alsocan.symbiot.api.to.PollResultTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.api.to.outputs.PollingOutputTo;
+
+/**
+ * Keeps the results of polling outputs in memory, until they are expired.
+ * <p>
+ * Results are stored serialized, in a fixed-size ring buffer per output which 
+ * is also bounded in bytes (the oldest results are evicted first). Each result 
+ * gets a sequence number, which clients use as a cursor for incremental reads.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class PollingOutputStore implements OutputHandler, Managed {
+	
+	private static final long SWEEP_INTERVAL_MS = 10000;
+	
+	private final PollingConfiguration conf;
+	private final ObjectMapper om;
+	private final Map<Integer, Ring> rings;
+	private ScheduledExecutorService scheduler;
+
+	public PollingOutputStore(PollingConfiguration conf, ObjectMapper om) {
+		this.conf = conf;
+		this.om = om;
+		this.rings = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void start() throws Exception {
+		scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "polling-store");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() throws Exception {
+		scheduler.shutdownNow();
+	}
+
+	@Override
+	public void handle(OutputTo output, JsonNode result) throws Exception {
+		
+		Integer ttl = ((PollingOutputTo)output).getTtl();
+		long ttlMs = ttl == null ? conf.getDefaultTtl().toMilliseconds() : TimeUnit.SECONDS.toMillis(ttl);
+		byte[] bytes = om.writeValueAsBytes(result);
+		
+		Ring ring = ring(output.getId());
+		List<Waiter> waiters;
+		synchronized (ring) {
+			ring.append(bytes, System.currentTimeMillis() + ttlMs);
+			waiters = ring.waiters;
+			ring.waiters = new ArrayList<>();
+		}
+		
+		// wake up long-polling clients
+		waiters.forEach((w) -> w.complete(read(ring, w.since, w.max)));
+	}
+	
+	/**
+	 * Read results stored after the given cursor, waiting for new results if 
+	 * there are none (long-polling).
+	 * 
+	 * @param outputId The output id
+	 * @param since The cursor (results with a greater sequence number are returned)
+	 * @param max The maximum number of results to return
+	 * @param waitMs How long to wait for results (0 to return immediately)
+	 * @param callback Called (once) with the results, possibly from another thread
+	 */
+	public void poll(int outputId, long since, int max, long waitMs, Consumer<PollResultTo> callback) {
+		
+		Ring ring = ring(outputId);
+		int limit = Math.max(1, Math.min(max, conf.getMaxResultsPerPoll()));
+		long wait = Math.min(waitMs, conf.getMaxWait().toMilliseconds());
+		PollResultTo result;
+		synchronized (ring) {
+			result = read(ring, since, limit);
+			if (result.getResults().size() == 0 && wait > 0) {
+				Waiter w = new Waiter(since, limit, callback);
+				ring.waiters.add(w);
+				scheduler.schedule(() -> {
+					synchronized (ring) {
+						ring.waiters.remove(w);
+					}
+					w.complete(read(ring, since, limit));
+				}, wait, TimeUnit.MILLISECONDS);
+				return;
+			}
+		}
+		callback.accept(result);
+	}
+	
+	/**
+	 * Forget all results of an output
+	 * @param outputId The output id
+	 */
+	public void discard(int outputId) {
+		rings.remove(outputId);
+	}
+	
+	private Ring ring(int outputId) {
+		return rings.computeIfAbsent(outputId, (id) -> new Ring(
+				  conf.getMaxEntriesPerOutput(), 
+				  conf.getMaxBytesPerOutput().toBytes()));
+	}
+	
+	private PollResultTo read(Ring ring, long since, int max) {
+		
+		ArrayNode results = om.createArrayNode();
+		long cursor;
+		synchronized (ring) {
+			ring.evictExpired(System.currentTimeMillis());
+			long last = ring.nextSeq - 1;
+			
+			// a cursor from the future means the store was reset (ex: restart)
+			long start = Math.max(since > last ? last : since, ring.firstSeq() - 1) + 1;
+			long count = Math.min(max, ring.nextSeq - start);
+			for (long seq = start; seq < start + count; seq++) {
+				results.addRawValue(new RawValue(new String(ring.get(seq), StandardCharsets.UTF_8)));
+			}
+			cursor = start + count - 1;
+		}
+		return new PollResultTo(cursor, results);
+	}
+	
+	private void sweep() {
+		long now = System.currentTimeMillis();
+		rings.values().forEach((ring) -> {
+			synchronized (ring) {
+				ring.evictExpired(now);
+			}
+		});
+	}
+	
+	/**
+	 * A long-polling client.
+	 */
+	private static class Waiter {
+		
+		private final long since;
+		private final int max;
+		private final Consumer<PollResultTo> callback;
+		private final AtomicBoolean done;
+
+		private Waiter(long since, int max, Consumer<PollResultTo> callback) {
+			this.since = since;
+			this.max = max;
+			this.callback = callback;
+			this.done = new AtomicBoolean();
+		}
+		
+		private void complete(PollResultTo result) {
+			if (done.compareAndSet(false, true)) {
+				callback.accept(result);
+			}
+		}
+	}
+	
+	/**
+	 * Fixed-size ring buffer of serialized results (not thread-safe).
+	 */
+	private static class Ring {
+		
+		private final byte[][] entries;
+		private final long[] expiries;
+		private final long maxBytes;
+		private int head;
+		private int size;
+		private long bytes;
+		private long nextSeq;
+		private List<Waiter> waiters;
+
+		private Ring(int capacity, long maxBytes) {
+			this.entries = new byte[capacity][];
+			this.expiries = new long[capacity];
+			this.maxBytes = maxBytes;
+			this.nextSeq = 1;
+			this.waiters = new ArrayList<>();
+		}
+		
+		private long firstSeq() {
+			return nextSeq - size;
+		}
+		
+		private byte[] get(long seq) {
+			return entries[(int)((head + (seq - firstSeq())) % entries.length)];
+		}
+		
+		private void append(byte[] entry, long expiry) {
+			
+			while (size > 0 && (size == entries.length || bytes + entry.length > maxBytes)) {
+				evictHead();
+			}
+			int index = (head + size) % entries.length;
+			entries[index] = entry;
+			expiries[index] = expiry;
+			bytes += entry.length;
+			size++;
+			nextSeq++;
+		}
+		
+		private void evictExpired(long now) {
+			while (size > 0 && expiries[head] <= now) {
+				evictHead();
+			}
+		}
+		
+		private void evictHead() {
+			bytes -= entries[head].length;
+			entries[head] = null;
+			head = (head + 1) % entries.length;
+			size--;
+		}
+	}
+}
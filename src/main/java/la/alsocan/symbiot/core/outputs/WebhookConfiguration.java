@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the webhook output handler (HTTP client, batching and retries).
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class WebhookConfiguration {
+	
+	@Min(1)
+	@JsonProperty
+	private int maxConnectionsPerHost = 8;
+	
+	@Min(1)
+	@JsonProperty
+	private int maxQueuedRequestsPerHost = 1024;
+	
+	@NotNull
+	@JsonProperty
+	private Duration connectTimeout = Duration.seconds(5);
+	
+	@NotNull
+	@JsonProperty
+	private Duration requestTimeout = Duration.seconds(30);
+	
+	@NotNull
+	@JsonProperty
+	private Duration keepAlive = Duration.minutes(1);
+	
+	@Min(1)
+	@JsonProperty
+	private int batchSize = 1;
+	
+	@NotNull
+	@JsonProperty
+	private Duration batchWindow = Duration.milliseconds(100);
+	
+	@JsonProperty
+	private boolean gzip = false;
+	
+	@Min(0)
+	@JsonProperty
+	private int maxRetries = 3;
+	
+	@NotNull
+	@JsonProperty
+	private Duration initialBackoff = Duration.milliseconds(500);
+	
+	@NotNull
+	@JsonProperty
+	private Duration maxBackoff = Duration.seconds(30);
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public int getMaxQueuedRequestsPerHost() {
+		return maxQueuedRequestsPerHost;
+	}
+
+	public void setMaxQueuedRequestsPerHost(int maxQueuedRequestsPerHost) {
+		this.maxQueuedRequestsPerHost = maxQueuedRequestsPerHost;
+	}
+
+	public Duration getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(Duration connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public Duration getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	public void setRequestTimeout(Duration requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+
+	public Duration getKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(Duration keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public Duration getBatchWindow() {
+		return batchWindow;
+	}
+
+	public void setBatchWindow(Duration batchWindow) {
+		this.batchWindow = batchWindow;
+	}
+
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public Duration getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	public void setInitialBackoff(Duration initialBackoff) {
+		this.initialBackoff = initialBackoff;
+	}
+
+	public Duration getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	public void setMaxBackoff(Duration maxBackoff) {
+		this.maxBackoff = maxBackoff;
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.outputs;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import la.alsocan.symbiot.access.DriverDao;
+import la.alsocan.symbiot.api.to.drivers.OutputDefinitionTo;
+import la.alsocan.symbiot.api.to.drivers.WebhookOutputDefinitionTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.api.to.outputs.WebhookOutputTo;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Sends results to webhooks, using a non-blocking HTTP client with pooled, 
+ * keep-alive connections.
+ * <p>
+ * Results can be micro-batched (the dispatcher hands over up to 
+ * <code>batchSize</code> queued results, waiting up to <code>batchWindow</code> 
+ * for them, which are sent as a JSON array) and gzipped. Failed calls (I/O 
+ * errors, 429 and 5xx) are retried with an exponential backoff, and the caller 
+ * waits for the final outcome: a result is only settled once its webhook 
+ * accepted it, or dead-lettered once the retries are exhausted.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class WebhookOutputHandler implements OutputHandler, Managed {
+	
+	private static final String DEFAULT_METHOD = "POST";
+	
+	private final WebhookConfiguration conf;
+	private final DriverDao driverDao;
+	private final ObjectMapper om;
+	private final Meter sent;
+	private final Meter retried;
+	private final Meter failed;
+	private HttpClient client;
+	private ScheduledExecutorService scheduler;
+
+	public WebhookOutputHandler(WebhookConfiguration conf, DriverDao driverDao, ObjectMapper om, MetricRegistry metrics) {
+		this.conf = conf;
+		this.driverDao = driverDao;
+		this.om = om;
+		this.sent = metrics.meter(MetricRegistry.name(WebhookOutputHandler.class, "sent"));
+		this.retried = metrics.meter(MetricRegistry.name(WebhookOutputHandler.class, "retried"));
+		this.failed = metrics.meter(MetricRegistry.name(WebhookOutputHandler.class, "failed"));
+	}
+
+	@Override
+	public void start() throws Exception {
+		
+		QueuedThreadPool executor = new QueuedThreadPool();
+		executor.setName("webhook-client");
+		client = new HttpClient();
+		client.setExecutor(executor);
+		client.setMaxConnectionsPerDestination(conf.getMaxConnectionsPerHost());
+		client.setMaxRequestsQueuedPerDestination(conf.getMaxQueuedRequestsPerHost());
+		client.setConnectTimeout(conf.getConnectTimeout().toMilliseconds());
+		client.setIdleTimeout(conf.getKeepAlive().toMilliseconds());
+		client.setFollowRedirects(false);
+		client.start();
+		scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "webhook-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void stop() throws Exception {
+		scheduler.shutdown();
+		scheduler.awaitTermination(conf.getRequestTimeout().toMilliseconds(), TimeUnit.MILLISECONDS);
+		client.stop();
+	}
+
+	@Override
+	public void handle(OutputTo output, JsonNode result) throws Exception {
+		deliver((WebhookOutputTo)output, encode(result));
+	}
+
+	@Override
+	public void handle(OutputTo output, List<JsonNode> results) throws Exception {
+		deliver((WebhookOutputTo)output, encode(om.createArrayNode().addAll(results)));
+	}
+
+	@Override
+	public int getBatchSize() {
+		return conf.getBatchSize();
+	}
+
+	@Override
+	public Duration getBatchWindow() {
+		return conf.getBatchWindow();
+	}
+	
+	/**
+	 * @param output The webhook output
+	 * @return The definition of the output (null if it is not a webhook definition anymore)
+	 */
+	protected WebhookOutputDefinitionTo definition(WebhookOutputTo output) {
+		
+		OutputDefinitionTo def = driverDao.findOutputDefinition(output.getDriverId(), output.getOutputDefinitionId());
+		return def instanceof WebhookOutputDefinitionTo ? (WebhookOutputDefinitionTo)def : null;
+	}
+	
+	private byte[] encode(JsonNode body) throws IOException {
+		
+		if (!conf.isGzip()) {
+			return om.writeValueAsBytes(body);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			om.writeValue(gzip, body);
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Send a body, waiting until the webhook accepted it or the retries are exhausted.
+	 */
+	private void deliver(WebhookOutputTo output, byte[] body) throws Exception {
+		
+		CompletableFuture<Void> outcome = new CompletableFuture<>();
+		send(output, body, 0, outcome);
+		try {
+			outcome.get();
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			throw cause instanceof Exception ? (Exception)cause : ex;
+		}
+	}
+	
+	private void send(WebhookOutputTo output, byte[] body, int attempt, CompletableFuture<Void> outcome) {
+		
+		Request request;
+		try {
+			request = request(output, body);
+		} catch (RuntimeException ex) {
+			failed.mark();
+			outcome.completeExceptionally(ex);
+			return;
+		}
+		request.send((result) -> {
+			int status = result.getResponse() == null ? 0 : result.getResponse().getStatus();
+			if (result.isSucceeded() && status < 400) {
+				sent.mark();
+				outcome.complete(null);
+			} else if (result.isFailed() || status == 429 || status >= 500) {
+				retry(output, body, attempt, outcome, result.isFailed() 
+						  ? result.getFailure().getMessage() 
+						  : "HTTP " + status);
+			} else {
+				failed.mark();
+				outcome.completeExceptionally(new IOException(
+						  "Webhook '" + output.getId() + "' refused the result: HTTP " + status));
+			}
+		});
+	}
+	
+	private Request request(WebhookOutputTo output, byte[] body) {
+		
+		// the output settings take precedence over the ones of its definition
+		WebhookOutputDefinitionTo def = definition(output);
+		String url = output.getUrl() != null ? output.getUrl() : def == null ? null : def.getUrl();
+		String method = output.getMethod() != null ? output.getMethod() 
+				  : def != null && def.getMethod() != null ? def.getMethod() : DEFAULT_METHOD;
+		if (url == null) {
+			throw new IllegalStateException("Webhook '" + output.getId() + "' has no URL");
+		}
+		Map<String, String> headers = new LinkedHashMap<>();
+		if (def != null && def.getHeaders() != null) {
+			headers.putAll(def.getHeaders());
+		}
+		if (output.getHeaders() != null) {
+			headers.putAll(output.getHeaders());
+		}
+		
+		Request request = client.newRequest(url)
+				  .method(method)
+				  .timeout(conf.getRequestTimeout().toMilliseconds(), TimeUnit.MILLISECONDS)
+				  .content(new BytesContentProvider("application/json", body));
+		headers.forEach(request::header);
+		if (conf.isGzip()) {
+			request.header(HttpHeader.CONTENT_ENCODING, "gzip");
+		}
+		return request;
+	}
+	
+	private void retry(WebhookOutputTo output, byte[] body, int attempt, CompletableFuture<Void> outcome, String reason) {
+		
+		IOException giveUp = new IOException("Giving up on webhook '" + output.getId() + "' after " 
+				  + (attempt + 1) + " attempt(s): " + reason);
+		if (attempt >= conf.getMaxRetries() || scheduler.isShutdown()) {
+			failed.mark();
+			outcome.completeExceptionally(giveUp);
+			return;
+		}
+		long delay = Math.min(conf.getMaxBackoff().toMilliseconds(), 
+				  conf.getInitialBackoff().toMilliseconds() << Math.min(attempt, 30));
+		try {
+			scheduler.schedule(() -> send(output, body, attempt + 1, outcome), delay, TimeUnit.MILLISECONDS);
+			retried.mark();
+		} catch (RejectedExecutionException ex) {
+			failed.mark();
+			outcome.completeExceptionally(giveUp);
+		}
+	}
+}
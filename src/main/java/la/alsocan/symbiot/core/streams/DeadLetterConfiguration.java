@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Size;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the dead-letter store (and of replays).
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class DeadLetterConfiguration {
+	
+	@NotNull
+	@JsonProperty
+	private String folder = "./dead-letters";
+	
+	// oldest entries are discarded beyond this size
+	@NotNull
+	@JsonProperty
+	private Size maxBytesPerStream = Size.megabytes(16);
+	
+	@Min(1)
+	@JsonProperty
+	private int replayThreads = 4;
+	
+	@Min(1)
+	@JsonProperty
+	private int replayBatchSize = 256;
+
+	public String getFolder() {
+		return folder;
+	}
+
+	public void setFolder(String folder) {
+		this.folder = folder;
+	}
+
+	public Size getMaxBytesPerStream() {
+		return maxBytesPerStream;
+	}
+
+	public void setMaxBytesPerStream(Size maxBytesPerStream) {
+		this.maxBytesPerStream = maxBytesPerStream;
+	}
+
+	public int getReplayThreads() {
+		return replayThreads;
+	}
+
+	public void setReplayThreads(int replayThreads) {
+		this.replayThreads = replayThreads;
+	}
+
+	public int getReplayBatchSize() {
+		return replayBatchSize;
+	}
+
+	public void setReplayBatchSize(int replayBatchSize) {
+		this.replayBatchSize = replayBatchSize;
+	}
+}
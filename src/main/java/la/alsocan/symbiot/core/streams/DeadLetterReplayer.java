@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import io.dropwizard.lifecycle.Managed;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import la.alsocan.symbiot.api.to.DeadLetterTo;
+import la.alsocan.symbiot.api.to.ReplayResultTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.core.outputs.OutputDispatcher;
+
+/**
+ * Reprocesses the dead letters of a stream, in batches processed in parallel 
+ * (so ordering is not guaranteed). Entries which fail again are stored as new 
+ * dead letters.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class DeadLetterReplayer implements Managed {
+	
+	private final DeadLetterConfiguration conf;
+	private final DeadLetterStore deadLetterStore;
+	private final StreamRegistry streamRegistry;
+	private final OutputDispatcher outputDispatcher;
+	private final Set<Integer> replaying;
+	private ExecutorService workers;
+
+	public DeadLetterReplayer(DeadLetterConfiguration conf, DeadLetterStore deadLetterStore, 
+			  StreamRegistry streamRegistry, OutputDispatcher outputDispatcher) {
+		this.conf = conf;
+		this.deadLetterStore = deadLetterStore;
+		this.streamRegistry = streamRegistry;
+		this.outputDispatcher = outputDispatcher;
+		this.replaying = ConcurrentHashMap.newKeySet();
+	}
+
+	@Override
+	public void start() throws Exception {
+		AtomicInteger counter = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(conf.getReplayThreads(), (r) -> {
+			Thread t = new Thread(r, "dead-letter-replay-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void stop() throws Exception {
+		workers.shutdown();
+		workers.awaitTermination(10, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Replay the oldest dead letters of a stream, then mark them as replayed.
+	 * @param s The (compiled) stream
+	 * @param limit The maximum number of entries to replay
+	 * @return The number of replayed and failed entries, and the id of the last 
+	 * one (or null if the stream is already being replayed)
+	 * @throws IOException If dead letters could not be read or acknowledged
+	 * @throws InterruptedException If interrupted while waiting for the batches
+	 */
+	public ReplayResultTo replay(Stream s, int limit) throws IOException, InterruptedException {
+		
+		// concurrent replays would deliver the same entries twice
+		if (!replaying.add(s.getId())) {
+			return null;
+		}
+		try {
+			return replayOnce(s, limit);
+		} finally {
+			replaying.remove(s.getId());
+		}
+	}
+	
+	private ReplayResultTo replayOnce(Stream s, int limit) throws IOException, InterruptedException {
+		
+		List<DeadLetterTo> tos = deadLetterStore.find(s.getId(), 0, limit);
+		if (tos.isEmpty()) {
+			return new ReplayResultTo(0, 0, 0);
+		}
+		List<Callable<Integer>> batches = new ArrayList<>();
+		for (int i = 0; i < tos.size(); i += conf.getReplayBatchSize()) {
+			List<DeadLetterTo> batch = tos.subList(i, Math.min(tos.size(), i + conf.getReplayBatchSize()));
+			batches.add(() -> replay(s, batch));
+		}
+		int failed = 0;
+		for (Future<Integer> future : workers.invokeAll(batches)) {
+			try {
+				failed += future.get();
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException("Could not replay dead letters", ex.getCause());
+			}
+		}
+		
+		// entries which failed again were stored after the cursor
+		long cursor = tos.get(tos.size() - 1).getId();
+		deadLetterStore.acknowledge(s.getId(), cursor);
+		return new ReplayResultTo(tos.size() - failed, failed, cursor);
+	}
+	
+	/**
+	 * @return The number of entries which failed again
+	 */
+	private int replay(Stream s, List<DeadLetterTo> batch) {
+		
+		int failed = 0;
+		OutputTo outputTo = streamRegistry.findOutput(s.getOutputId());
+		for (DeadLetterTo to : batch) {
+			DeadLetterStore.Stage stage = DeadLetterStore.Stage.valueOf(to.getStage());
+			try {
+				
+				// delivery failures were already transformed
+				if (stage == DeadLetterStore.Stage.DELIVERY) {
+					if (!outputDispatcher.dispatch(s.getId(), outputTo, to.getPayload())) {
+						deadLetterStore.add(s.getId(), stage, to.getPayload(), "Output queue is full");
+						failed++;
+					}
+				} else if (!outputDispatcher.dispatch(s.getId(), outputTo, s.getT().apply(to.getPayload()))) {
+					deadLetterStore.add(s.getId(), DeadLetterStore.Stage.DISPATCH, to.getPayload(), "Output queue is full");
+					failed++;
+				}
+			} catch (RuntimeException ex) {
+				deadLetterStore.add(s.getId(), stage == DeadLetterStore.Stage.DELIVERY ? stage 
+						  : DeadLetterStore.Stage.TRANSFORMATION, to.getPayload(), ex.getMessage());
+				failed++;
+			}
+		}
+		return failed;
+	}
+}
@@ -0,0 +1,379 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.lifecycle.Managed;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import la.alsocan.symbiot.api.to.DeadLetterTo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps what could not go through a stream (with the error and the stage it 
+ * failed at), so that it can be inspected and replayed later.
+ * <p>
+ * Each stream has an append-only, newline-delimited JSON file. Once it reaches 
+ * half of <code>maxBytesPerStream</code>, it is rotated (replacing the previous 
+ * rotated file), so that oldest entries are discarded rather than filling the 
+ * disk. Replayed entries are not removed: a cursor remembers up to which entry 
+ * a stream was replayed. The files of a stream are deleted along with it.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class DeadLetterStore implements Managed {
+	
+	/**
+	 * Where a payload failed.
+	 */
+	public enum Stage { 
+		
+		// the transformation threw (the payload is the input payload)
+		TRANSFORMATION, 
+		
+		// the output queue was full (the payload is the input payload)
+		DISPATCH, 
+		
+		// the output handler threw (the payload is the transformed result)
+		DELIVERY 
+	}
+	
+	private static final Logger LOG = LoggerFactory.getLogger(DeadLetterStore.class);
+	private static final byte NEW_LINE = '\n';
+	
+	private final DeadLetterConfiguration conf;
+	private final ObjectMapper om;
+	private final Map<Integer, Letters> letters;
+	private final Meter deadLettered;
+	private Path folder;
+
+	public DeadLetterStore(DeadLetterConfiguration conf, ObjectMapper om, MetricRegistry metrics) {
+		this.conf = conf;
+		this.om = om;
+		this.letters = new ConcurrentHashMap<>();
+		this.deadLettered = metrics.meter(MetricRegistry.name(DeadLetterStore.class, "dead-lettered"));
+	}
+
+	@Override
+	public void start() throws Exception {
+		folder = Paths.get(conf.getFolder());
+		Files.createDirectories(folder);
+	}
+
+	@Override
+	public void stop() throws Exception {
+		for (Letters l : letters.values()) {
+			synchronized (l) {
+				l.close();
+			}
+		}
+	}
+	
+	/**
+	 * Store a dead letter (errors are logged, never thrown).
+	 * @param streamId The stream id
+	 * @param stage Where the payload failed
+	 * @param payload The payload (see {@link Stage})
+	 * @param error The error message
+	 */
+	public void add(int streamId, Stage stage, JsonNode payload, String error) {
+		
+		deadLettered.mark();
+		Letters l = letters(streamId);
+		synchronized (l) {
+			
+			// the stream was deleted in the meantime
+			if (l.removed) {
+				return;
+			}
+			try {
+				l.init();
+				DeadLetterTo to = new DeadLetterTo();
+				to.setId(++l.lastId);
+				to.setStreamId(streamId);
+				to.setStage(stage.name());
+				to.setError(error);
+				to.setTimestamp(System.currentTimeMillis());
+				to.setPayload(payload);
+				byte[] bytes = om.writeValueAsBytes(to);
+				if (l.size + bytes.length + 1 > conf.getMaxBytesPerStream().toBytes() / 2) {
+					l.rotate();
+				}
+				l.append(bytes);
+			} catch (IOException ex) {
+				LOG.warn("Could not store dead letter of stream '" + streamId + "': " + ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * @param streamId The stream id
+	 * @param after Only return entries after this id (entries which were 
+	 * already replayed are never returned)
+	 * @param limit The maximum number of entries
+	 * @return The entries (ordered by id)
+	 * @throws IOException If entries could not be read
+	 */
+	public List<DeadLetterTo> find(int streamId, long after, int limit) throws IOException {
+		
+		List<DeadLetterTo> tos = new ArrayList<>();
+		Letters l = letters(streamId);
+		long from;
+		synchronized (l) {
+			l.init();
+			from = Math.max(after, l.cursor);
+		}
+		
+		// files are read without blocking writers (only a rotation waits for readers)
+		l.rotation.readLock().lock();
+		try {
+			for (Path path : new Path[]{l.rotated, l.current}) {
+				if (tos.size() < limit && Files.exists(path)) {
+					read(path, (to) -> {
+						if (to.getId() > from) {
+							tos.add(to);
+						}
+						return tos.size() < limit;
+					});
+				}
+			}
+		} finally {
+			l.rotation.readLock().unlock();
+		}
+		return tos;
+	}
+	
+	/**
+	 * Mark entries as replayed.
+	 * @param streamId The stream id
+	 * @param upTo The id of the last replayed entry
+	 * @throws IOException If the cursor could not be saved
+	 */
+	public void acknowledge(int streamId, long upTo) throws IOException {
+		
+		Letters l = letters(streamId);
+		synchronized (l) {
+			l.init();
+			if (upTo <= l.cursor) {
+				return;
+			}
+			Path tmp = folder.resolve("stream-" + streamId + ".cursor.tmp");
+			Files.write(tmp, Long.toString(upTo).getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, l.cursorPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			l.cursor = upTo;
+		}
+	}
+	
+	/**
+	 * Delete the entries (and the cursor) of a stream after it was deleted.
+	 * @param streamId The stream id
+	 */
+	public void remove(int streamId) {
+		
+		Letters removed = letters.remove(streamId);
+		Letters l = removed != null ? removed : new Letters(streamId);
+		synchronized (l) {
+			l.removed = true;
+			l.close();
+			l.rotation.writeLock().lock();
+			try {
+				for (Path path : new Path[]{l.current, l.rotated, l.cursorPath, 
+						  folder.resolve("stream-" + streamId + ".cursor.tmp")}) {
+					Files.deleteIfExists(path);
+				}
+			} catch (IOException ex) {
+				LOG.warn("Could not delete dead letters of stream '" + streamId + "': " + ex.getMessage());
+			} finally {
+				l.rotation.writeLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Read the entries of a file, up to the first invalid or incomplete one (ex: 
+	 * a write interrupted by a crash, or still in progress).
+	 * @return The size of the valid part of the file
+	 */
+	private long read(Path path, EntryConsumer consumer) throws IOException {
+		
+		long valid = 0;
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			int b;
+			while ((b = in.read()) != -1) {
+				if (b != NEW_LINE) {
+					line.write(b);
+					continue;
+				}
+				DeadLetterTo to;
+				try {
+					to = om.readValue(line.toByteArray(), DeadLetterTo.class);
+				} catch (JsonProcessingException ex) {
+					return valid;
+				}
+				valid += line.size() + 1;
+				line.reset();
+				if (!consumer.accept(to)) {
+					break;
+				}
+			}
+		}
+		return valid;
+	}
+	
+	private Letters letters(int streamId) {
+		
+		// lock-free once created
+		Letters l = letters.get(streamId);
+		return l != null ? l : letters.computeIfAbsent(streamId, (id) -> new Letters(id));
+	}
+	
+	/**
+	 * The files of one stream (not thread-safe, except for reading the files 
+	 * under the rotation lock).
+	 */
+	private class Letters {
+		
+		private final Path current;
+		private final Path rotated;
+		private final Path cursorPath;
+		private final ReadWriteLock rotation;
+		private boolean initialized;
+		private boolean removed;
+		private FileChannel channel;
+		private long size;
+		private long lastId;
+		private long cursor;
+
+		private Letters(int streamId) {
+			this.current = folder.resolve("stream-" + streamId + ".ndjson");
+			this.rotated = folder.resolve("stream-" + streamId + ".1.ndjson");
+			this.cursorPath = folder.resolve("stream-" + streamId + ".cursor");
+			this.rotation = new ReentrantReadWriteLock();
+		}
+		
+		/**
+		 * Read the cursor and the last id from disk (on first use).
+		 */
+		private void init() throws IOException {
+			
+			if (initialized) {
+				return;
+			}
+			if (Files.exists(cursorPath)) {
+				cursor = Long.parseLong(new String(Files.readAllBytes(cursorPath), StandardCharsets.UTF_8).trim());
+			}
+			lastId = cursor;
+			for (Path path : new Path[]{rotated, current}) {
+				if (!Files.exists(path)) {
+					continue;
+				}
+				long valid = read(path, (to) -> {
+					lastId = Math.max(lastId, to.getId());
+					return true;
+				});
+				
+				// new entries must not follow a torn one
+				if (path == current && valid < Files.size(current)) {
+					LOG.warn("Ignoring the end of file '" + current + "': invalid entry at offset " + valid);
+					try (FileChannel c = FileChannel.open(current, StandardOpenOption.WRITE)) {
+						c.truncate(valid);
+					}
+				}
+			}
+			size = Files.exists(current) ? Files.size(current) : 0;
+			initialized = true;
+		}
+		
+		private void append(byte[] bytes) throws IOException {
+			
+			if (channel == null) {
+				channel = FileChannel.open(current, 
+						  StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				size = channel.size();
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 1);
+			buffer.put(bytes).put(NEW_LINE).flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			size += bytes.length + 1;
+		}
+		
+		private void rotate() throws IOException {
+			close();
+			rotation.writeLock().lock();
+			try {
+				if (Files.exists(current)) {
+					Files.move(current, rotated, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				rotation.writeLock().unlock();
+			}
+			size = 0;
+		}
+		
+		private void close() {
+			if (channel == null) {
+				return;
+			}
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				LOG.warn("Could not close file '" + current + "': " + ex.getMessage());
+			}
+			channel = null;
+		}
+	}
+	
+	@FunctionalInterface
+	private interface EntryConsumer {
+		
+		/**
+		 * @return False to stop reading
+		 */
+		boolean accept(DeadLetterTo to);
+	}
+}
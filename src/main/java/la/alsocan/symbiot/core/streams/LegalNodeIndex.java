@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import la.alsocan.jsonshapeshifter.schemas.SchemaNode;
+import la.alsocan.symbiot.api.to.SourceNodeTo;
+import la.alsocan.symbiot.api.to.bindings.ArrayConstantBindingTo;
+import la.alsocan.symbiot.api.to.bindings.ArrayNodeBindingTo;
+import la.alsocan.symbiot.api.to.bindings.BindingTo;
+import la.alsocan.symbiot.api.to.inputs.InputTo;
+
+/**
+ * Thread-safe index of the source nodes which can legally be bound to a 
+ * target node.
+ * <p>
+ * Legal source nodes only depend on the source schema, on the type of the 
+ * target node and on its array context (the bindings of the arrays enclosing 
+ * the target node). They are computed once per (driver, input definition, 
+ * target type, array context) and shared by all the streams of all the inputs 
+ * using that definition.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class LegalNodeIndex {
+	
+	private final Map<String, SortedSet<SourceNodeTo>> index;
+	private final Meter hits;
+	private final Meter misses;
+
+	public LegalNodeIndex(MetricRegistry metrics) {
+		this.index = new ConcurrentHashMap<>();
+		this.hits = metrics.meter(MetricRegistry.name(LegalNodeIndex.class, "hits"));
+		this.misses = metrics.meter(MetricRegistry.name(LegalNodeIndex.class, "misses"));
+	}
+	
+	/**
+	 * Lookup the legal source nodes for a target node, computing them if needed.
+	 * @param inputTo The input of the stream
+	 * @param s The compiled stream
+	 * @param target The target node
+	 * @param bindings The current bindings of the stream
+	 * @return The legal source nodes (sorted, not to be modified)
+	 */
+	public SortedSet<SourceNodeTo> get(InputTo inputTo, Stream s, SchemaNode target, Iterable<BindingTo> bindings) {
+		
+		if (inputTo == null) {
+			return compute(s, target);
+		}
+		String key = key(inputTo.getDriverId(), inputTo.getInputDefinitionId(), 
+				  target.getType().toString(), arrayContext(target.getSchemaPointer(), bindings));
+		SortedSet<SourceNodeTo> nodes = index.get(key);
+		if (nodes != null) {
+			hits.mark();
+			return nodes;
+		}
+		return index.computeIfAbsent(key, (k) -> {
+			misses.mark();
+			return compute(s, target);
+		});
+	}
+	
+	/**
+	 * Forget all legal source nodes computed for the given driver.
+	 * @param driverId The driver id
+	 */
+	public void invalidate(String driverId) {
+		index.keySet().removeIf((key) -> key.startsWith(driverId + '|'));
+	}
+	
+	public int size() {
+		return index.size();
+	}
+	
+	private static SortedSet<SourceNodeTo> compute(Stream s, SchemaNode target) {
+		return Collections.unmodifiableSortedSet(s.getT().legalNodesFor(target).stream()
+				  .map((node) -> new SourceNodeTo(node.getSchemaPointer(), node.getType().toString()))
+				  .collect(Collectors.toCollection(TreeSet::new)));
+	}
+	
+	/**
+	 * @return The bindings of the arrays enclosing the target node, outermost first
+	 */
+	private static String arrayContext(String targetPointer, Iterable<BindingTo> bindings) {
+		
+		SortedSet<BindingTo> enclosing = new TreeSet<>(Comparator.comparing((b) -> b.getTargetNode().length()));
+		for (BindingTo binding : bindings) {
+			if ((binding instanceof ArrayNodeBindingTo || binding instanceof ArrayConstantBindingTo)
+					  && targetPointer.startsWith(binding.getTargetNode() + '/')) {
+				enclosing.add(binding);
+			}
+		}
+		return enclosing.stream()
+				  .map((b) -> b instanceof ArrayNodeBindingTo ? ((ArrayNodeBindingTo)b).getSourceNode() : "#constant")
+				  .collect(Collectors.joining(","));
+	}
+	
+	private static String key(String driverId, String definitionId, String targetType, String arrayContext) {
+		return driverId + '|' + definitionId + '|' + targetType + '|' + arrayContext;
+	}
+}
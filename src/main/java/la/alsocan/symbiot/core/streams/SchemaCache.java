@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import la.alsocan.jsonshapeshifter.schemas.Schema;
+
+/**
+ * Thread-safe cache of compiled schemas.
+ * <p>
+ * A schema only needs to be built once per (driver, definition, direction), 
+ * until the definition changes (drivers are hot-reloaded).
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class SchemaCache {
+	
+	public enum Direction { INPUT, OUTPUT }
+	
+	private final Map<String, Schema> schemas;
+	private final Meter hits;
+	private final Meter misses;
+
+	public SchemaCache(MetricRegistry metrics) {
+		this.schemas = new ConcurrentHashMap<>();
+		this.hits = metrics.meter(MetricRegistry.name(SchemaCache.class, "hits"));
+		this.misses = metrics.meter(MetricRegistry.name(SchemaCache.class, "misses"));
+	}
+	
+	/**
+	 * Lookup a compiled schema, building it if needed.
+	 * @param driverId The driver id
+	 * @param definitionId The input or output definition id
+	 * @param direction Whether the definition is an input or an output definition
+	 * @param schemaNode The schema definition (only used on a cache miss)
+	 * @return The compiled schema
+	 */
+	public Schema get(String driverId, String definitionId, Direction direction, JsonNode schemaNode) {
+		
+		String key = key(driverId, definitionId, direction);
+		Schema schema = schemas.get(key);
+		if (schema != null) {
+			hits.mark();
+			return schema;
+		}
+		return schemas.computeIfAbsent(key, (k) -> {
+			misses.mark();
+			return Schema.buildSchema(schemaNode);
+		});
+	}
+	
+	/**
+	 * Forget all schemas built for the given driver.
+	 * @param driverId The driver id
+	 */
+	public void invalidate(String driverId) {
+		schemas.keySet().removeIf((key) -> key.startsWith(driverId + '|'));
+	}
+	
+	public int size() {
+		return schemas.size();
+	}
+	
+	private static String key(String driverId, String definitionId, Direction direction) {
+		return driverId + '|' + definitionId + '|' + direction;
+	}
+}
@@ -23,7 +23,11 @@
  */
 package la.alsocan.symbiot.core.streams;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import la.alsocan.jsonshapeshifter.Transformation;
+import la.alsocan.jsonshapeshifter.schemas.SchemaNode;
 
 /**
  *
@@ -31,12 +35,30 @@ import la.alsocan.jsonshapeshifter.Transformation;
  */
 public class Stream {
 	
+	private final int id;
+	private final int inputId;
+	private final int outputId;
 	private Transformation t;
 
-	public Stream(Transformation t) {
+	public Stream(int id, int inputId, int outputId, Transformation t) {
+		this.id = id;
+		this.inputId = inputId;
+		this.outputId = outputId;
 		this.t = t;
 	}
 
+	public int getId() {
+		return id;
+	}
+
+	public int getInputId() {
+		return inputId;
+	}
+
+	public int getOutputId() {
+		return outputId;
+	}
+
 	public Transformation getT() {
 		return t;
 	}
@@ -44,4 +66,20 @@ public class Stream {
 	public void setT(Transformation t) {
 		this.t = t;
 	}
+	
+	/**
+	 * Walk the target schema to find the nodes which remain to be bound. This 
+	 * is expensive for large schemas: the result is stored along with the stream 
+	 * and only recomputed when its bindings change.
+	 * @return The pointers of the nodes to bind, in binding order
+	 */
+	public List<String> unboundNodes() {
+		
+		List<String> nodes = new ArrayList<>();
+		Iterator<SchemaNode> it = t.toBind();
+		while (it.hasNext()) {
+			nodes.add(it.next().getSchemaPointer());
+		}
+		return nodes;
+	}
 }
@@ -24,6 +24,7 @@
 package la.alsocan.symbiot.core.streams;
 
 import java.util.List;
+import org.skife.jdbi.v2.Handle;
 import la.alsocan.jsonshapeshifter.Transformation;
 import la.alsocan.jsonshapeshifter.schemas.Schema;
 import la.alsocan.symbiot.access.DriverDao;
@@ -31,7 +32,6 @@ import la.alsocan.symbiot.access.InputDao;
 import la.alsocan.symbiot.access.OutputDao;
 import la.alsocan.symbiot.api.to.StreamTo;
 import la.alsocan.symbiot.api.to.bindings.BindingTo;
-import la.alsocan.symbiot.api.to.drivers.DriverTo;
 import la.alsocan.symbiot.api.to.drivers.InputDefinitionTo;
 import la.alsocan.symbiot.api.to.drivers.OutputDefinitionTo;
 import la.alsocan.symbiot.api.to.inputs.InputTo;
@@ -42,33 +42,39 @@ import la.alsocan.symbiot.api.to.outputs.OutputTo;
  */
 public class StreamBuilder {
 	
-	public static Stream build(StreamTo to, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, List<BindingTo> bindings) {
+	public static Stream build(StreamTo to, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, SchemaCache schemaCache, List<BindingTo> bindings) {
+		return build(to, inputDao.findById(to.getInputId()), outputDao.findById(to.getOutputId()), driverDao, schemaCache, bindings);
+	}
+	
+	/**
+	 * Same as above, using the given handle to lookup the input and the output.
+	 */
+	public static Stream build(Handle h, StreamTo to, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, SchemaCache schemaCache, List<BindingTo> bindings) {
+		return build(to, inputDao.findById(h, to.getInputId()), outputDao.findById(h, to.getOutputId()), driverDao, schemaCache, bindings);
+	}
+	
+	/**
+	 * Same as above, when the input and the output were already loaded (ex: in batch).
+	 */
+	public static Stream build(StreamTo to, InputTo inputTo, OutputTo outputTo, DriverDao driverDao, SchemaCache schemaCache, List<BindingTo> bindings) {
 	
 		// lookup what is needed
-		InputTo inputTo = inputDao.findById(to.getInputId());
-		DriverTo driver = driverDao.findById(inputTo.getDriverId());
-		if (driver == null) {
-			return null;
-		}
-		InputDefinitionTo inputDef = driver.getInputDefinition(inputTo.getInputDefinitionId());
+		InputDefinitionTo inputDef = driverDao.findInputDefinition(inputTo.getDriverId(), inputTo.getInputDefinitionId());
 		if (inputDef == null) {
 			return null;
 		}
-		OutputTo outputTo = outputDao.findById(to.getOutputId());
-		driver = driverDao.findById(outputTo.getDriverId());
-		if (driver == null) {
-			return null;
-		}
-		OutputDefinitionTo outputDef = driver.getOutputDefinition(outputTo.getOutputDefinitionId());
+		OutputDefinitionTo outputDef = driverDao.findOutputDefinition(outputTo.getDriverId(), outputTo.getOutputDefinitionId());
 		if (outputDef == null) {
 			return null;
 		}
 		
 		// build schema and transformation (Json-Shapeshifter stuff)
-		Schema sourceSchema = Schema.buildSchema(inputDef.getSchemaNode());
-		Schema targetSchema = Schema.buildSchema(outputDef.getSchemaNode());
+		Schema sourceSchema = schemaCache.get(inputTo.getDriverId(), inputDef.getId(), 
+				  SchemaCache.Direction.INPUT, inputDef.getSchemaNode());
+		Schema targetSchema = schemaCache.get(outputTo.getDriverId(), outputDef.getId(), 
+				  SchemaCache.Direction.OUTPUT, outputDef.getSchemaNode());
 		Transformation t  = new Transformation(sourceSchema, targetSchema);
-		Stream s = new Stream(t);
+		Stream s = new Stream(to.getId(), to.getInputId(), to.getOutputId(), t);
 		bindings.stream().forEach((binding) -> {
 			t.bind(t.getTarget().at(binding.getTargetNode()), binding.build(s));
 		});
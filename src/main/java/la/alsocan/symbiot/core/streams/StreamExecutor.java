@@ -0,0 +1,506 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.lifecycle.Managed;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import la.alsocan.symbiot.api.to.RuntimeStatusTo;
+import la.alsocan.symbiot.api.to.StreamStatusTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.outputs.OutputDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs payloads received by an input through all of its streams, and queues 
+ * the results for delivery. This is the execution path shared by all input types.
+ * <p>
+ * Payloads are executed by a fixed number of shards, each being a single 
+ * worker with a bounded queue. A payload is pinned to a shard by its input (and 
+ * device key, if any), so that the payloads of a device are always transformed 
+ * in the order they were received, while different devices use all cores.
+ * <p>
+ * Each stream has a lifecycle state, only kept in memory (streams are running 
+ * after a restart): a paused or stopped stream skips payloads, and a draining 
+ * stream only processes the payloads submitted before it was drained, then stops.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class StreamExecutor implements Managed {
+	
+	public enum State { RUNNING, PAUSED, DRAINING, STOPPED }
+	
+	private static final Logger LOG = LoggerFactory.getLogger(StreamExecutor.class);
+	
+	private final StreamRuntimeConfiguration conf;
+	private final StreamRegistry streamRegistry;
+	private final OutputDispatcher outputDispatcher;
+	private final DeadLetterStore deadLetterStore;
+	private final StageMetrics stageMetrics;
+	private final Shard[] shards;
+	private final Map<Integer, StreamControl> controls;
+	private final AtomicLong sequence;
+	private final Meter submitted;
+	private final Meter rejected;
+	private final Meter failed;
+	private final Meter errors;
+	private ExecutorService drainer;
+	private volatile boolean running;
+
+	public StreamExecutor(StreamRuntimeConfiguration conf, StreamRegistry streamRegistry, 
+			  OutputDispatcher outputDispatcher, DeadLetterStore deadLetterStore, StageMetrics stageMetrics, 
+			  MetricRegistry metrics) {
+		this.conf = conf;
+		this.streamRegistry = streamRegistry;
+		this.outputDispatcher = outputDispatcher;
+		this.deadLetterStore = deadLetterStore;
+		this.stageMetrics = stageMetrics;
+		this.shards = new Shard[conf.resolveShards()];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard(i, conf.getQueueDepth());
+		}
+		this.controls = new ConcurrentHashMap<>();
+		this.sequence = new AtomicLong();
+		this.submitted = metrics.meter(MetricRegistry.name(StreamExecutor.class, "submitted"));
+		this.rejected = metrics.meter(MetricRegistry.name(StreamExecutor.class, "rejected"));
+		this.failed = metrics.meter(MetricRegistry.name(StreamExecutor.class, "failed"));
+		this.errors = metrics.meter(MetricRegistry.name(StreamExecutor.class, "errors"));
+	}
+
+	@Override
+	public void start() throws Exception {
+		
+		running = true;
+		for (Shard shard : shards) {
+			shard.worker = new Thread(() -> work(shard), "stream-shard-" + shard.index);
+			shard.worker.setDaemon(true);
+			shard.worker.start();
+		}
+		drainer = Executors.newSingleThreadExecutor((r) -> {
+			Thread t = new Thread(r, "stream-drainer");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void stop() throws Exception {
+		
+		// stop accepting payloads, then let the shards empty their queues
+		running = false;
+		drainer.shutdownNow();
+		long deadline = System.currentTimeMillis() + conf.getDrainTimeout().toMilliseconds();
+		for (Shard shard : shards) {
+			shard.queue.offer(Task.POISON, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		}
+		for (Shard shard : shards) {
+			shard.worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+			if (shard.worker.isAlive()) {
+				LOG.warn("Shard " + shard.index + " could not be drained before shutdown (" 
+						  + shard.queue.size() + " payload(s) lost)");
+				shard.worker.interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Submit a payload, waiting up to <code>maxBlockTime</code> if its shard is busy.
+	 * @param inputId The input which received the payload
+	 * @param key The device key (payloads with the same input and key are 
+	 * processed in order), or null to only use the input
+	 * @param payload The payload
+	 * @return False if the payload was rejected (the shard is full)
+	 */
+	public boolean submit(int inputId, String key, JsonNode payload) {
+		return submit(inputId, key, payload, null);
+	}
+	
+	/**
+	 * Same as above, calling back once each result of the payload was delivered 
+	 * by its output handler or dead-lettered.
+	 * @param done Called from a shard or output worker (not called if the 
+	 * payload is rejected, fails unexpectedly, or is lost on shutdown)
+	 */
+	public boolean submit(int inputId, String key, JsonNode payload, Runnable done) {
+		return submit(inputId, key, payload, done, conf.getMaxBlockTime().toMilliseconds());
+	}
+	
+	/**
+	 * Same as above, without waiting if the shard is busy (for inputs which can 
+	 * fetch the payload again later, like pulled APIs).
+	 */
+	public boolean offer(int inputId, String key, JsonNode payload) {
+		return submit(inputId, key, payload, null, 0);
+	}
+	
+	/**
+	 * Same as above, waiting until the shard has room (for inputs which can 
+	 * slow down, like files).
+	 */
+	public boolean submitAndWait(int inputId, String key, JsonNode payload) {
+		return submit(inputId, key, payload, null, Long.MAX_VALUE);
+	}
+	
+	public boolean submitAndWait(int inputId, String key, JsonNode payload, Runnable done) {
+		return submit(inputId, key, payload, done, Long.MAX_VALUE);
+	}
+	
+	private boolean submit(int inputId, String key, JsonNode payload, Runnable done, long maxBlockTime) {
+		
+		if (!running) {
+			rejected.mark();
+			return false;
+		}
+		Task task = new Task(sequence.incrementAndGet(), inputId, key, payload, done);
+		boolean accepted;
+		try {
+			accepted = shardOf(inputId, key).queue.offer(task, maxBlockTime, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			accepted = false;
+		}
+		if (accepted) {
+			submitted.mark();
+		} else {
+			rejected.mark();
+		}
+		return accepted;
+	}
+	
+	/**
+	 * @param streamId The stream id
+	 * @return The state of the stream
+	 */
+	public State getState(int streamId) {
+		StreamControl control = controls.get(streamId);
+		return control == null ? State.RUNNING : control.state;
+	}
+	
+	public void start(int streamId) {
+		control(streamId).state = State.RUNNING;
+	}
+	
+	public void pause(int streamId) {
+		control(streamId).state = State.PAUSED;
+	}
+	
+	public void stop(int streamId) {
+		control(streamId).state = State.STOPPED;
+	}
+	
+	/**
+	 * Stop a stream once the payloads submitted so far went through it (the 
+	 * stream is stopped asynchronously, when every shard reached this point).
+	 * @param streamId The stream id
+	 */
+	public void drain(int streamId) {
+		
+		StreamControl control = control(streamId);
+		synchronized (control) {
+			if (control.state == State.STOPPED || control.state == State.DRAINING) {
+				return;
+			}
+			control.drainSequence = sequence.get();
+			control.state = State.DRAINING;
+		}
+		
+		// a marker goes through every shard (queues may be full, so not from the caller thread)
+		CountDownLatch reached = new CountDownLatch(shards.length);
+		drainer.execute(() -> {
+			try {
+				for (Shard shard : shards) {
+					shard.queue.put(new Task(reached));
+				}
+				reached.await();
+				synchronized (control) {
+					if (control.state == State.DRAINING) {
+						control.state = State.STOPPED;
+					}
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+	}
+	
+	/**
+	 * Forget the state and counters of a deleted stream.
+	 * @param streamId The stream id
+	 */
+	public void forget(int streamId) {
+		controls.remove(streamId);
+	}
+	
+	public StreamStatusTo status(int streamId) {
+		
+		StreamControl control = controls.get(streamId);
+		StreamStatusTo to = new StreamStatusTo();
+		to.setStreamId(streamId);
+		to.setState((control == null ? State.RUNNING : control.state).name());
+		if (control != null) {
+			to.setProcessed(control.processed.sum());
+			to.setSkipped(control.skipped.sum());
+			to.setFailed(control.failed.sum());
+			to.setRejected(control.rejected.sum());
+			to.setLastError(control.lastError);
+		}
+		return to;
+	}
+	
+	public RuntimeStatusTo status() {
+		
+		RuntimeStatusTo to = new RuntimeStatusTo();
+		to.setSubmitted(submitted.getCount());
+		to.setRejected(rejected.getCount());
+		List<RuntimeStatusTo.ShardTo> shardTos = new ArrayList<>(shards.length);
+		for (Shard shard : shards) {
+			shardTos.add(new RuntimeStatusTo.ShardTo(shard.index, shard.queue.size(), shard.processed.sum()));
+		}
+		to.setShards(shardTos);
+		return to;
+	}
+	
+	private StreamControl control(int streamId) {
+		
+		// lock-free once created
+		StreamControl control = controls.get(streamId);
+		return control != null ? control : controls.computeIfAbsent(streamId, (id) -> new StreamControl());
+	}
+	
+	private Shard shardOf(int inputId, String key) {
+		
+		int h = key == null ? inputId : 31 * inputId + key.hashCode();
+		h ^= (h >>> 16);
+		return shards[Math.floorMod(h, shards.length)];
+	}
+	
+	private void work(Shard shard) {
+		
+		while (true) {
+			Task task;
+			try {
+				task = shard.queue.take();
+			} catch (InterruptedException ex) {
+				return;
+			}
+			if (task == Task.POISON) {
+				return;
+			} else if (task.barrier != null) {
+				task.barrier.countDown();
+				continue;
+			}
+			
+			// an unexpected error must not stop the shard (its queue would never be consumed again)
+			try {
+				StageMetrics.record(stageMetrics.input(task.inputId).getQueueing(), task.enqueuedAt);
+				process(task);
+				shard.processed.increment();
+			} catch (RuntimeException ex) {
+				errors.mark();
+				LOG.error("Shard " + shard.index + " could not process a payload of input '" + task.inputId + "'", ex);
+			}
+		}
+	}
+	
+	private void process(Task task) {
+		
+		// the payload is settled even if something fails unexpectedly (it would block the checkpoint)
+		Completion completion = task.done == null ? null : new Completion(task.done);
+		try {
+			long start = System.nanoTime();
+			List<Stream> streams = streamRegistry.findByInput(task.inputId);
+			StageMetrics.record(stageMetrics.input(task.inputId).getLookup(), start);
+			for (Stream s : streams) {
+				StreamControl control = control(s.getId());
+				if (!control.accepts(task.sequence)) {
+					control.skipped.increment();
+					continue;
+				}
+				OutputTo outputTo = streamRegistry.findOutput(s.getOutputId());
+				if (outputTo == null) {
+					continue;
+				}
+				
+				JsonNode result;
+				try {
+					start = System.nanoTime();
+					result = s.getT().apply(task.payload);
+					StageMetrics.record(stageMetrics.stream(s.getId()).getTransformation(), start);
+				} catch (RuntimeException ex) {
+					failed.mark();
+					control.failed.increment();
+					control.lastError = ex.getMessage();
+					deadLetterStore.add(s.getId(), DeadLetterStore.Stage.TRANSFORMATION, task.payload, ex.getMessage());
+					continue;
+				}
+				
+				dispatch(task, s, control, outputTo, result, completion);
+			}
+		} finally {
+			if (completion != null) {
+				completion.run();
+			}
+		}
+	}
+	
+	private void dispatch(Task task, Stream s, StreamControl control, OutputTo outputTo, JsonNode result, 
+			  Completion completion) {
+		
+		if (completion != null) {
+			completion.expect();
+		}
+		boolean accepted = false;
+		String error = "Output queue is full";
+		try {
+			accepted = outputDispatcher.dispatch(s.getId(), task.key, outputTo, result, completion);
+			if (!accepted) {
+				control.rejected.increment();
+			}
+		} catch (RuntimeException ex) {
+			error = ex.getMessage();
+			failed.mark();
+			control.failed.increment();
+			control.lastError = error;
+		} finally {
+			
+			// a result which was not queued is settled here
+			if (!accepted && completion != null) {
+				completion.run();
+			}
+		}
+		if (accepted) {
+			control.processed.increment();
+		} else {
+			deadLetterStore.add(s.getId(), DeadLetterStore.Stage.DISPATCH, task.payload, error);
+		}
+	}
+	
+	private static class Shard {
+		
+		private final int index;
+		private final BlockingQueue<Task> queue;
+		private final LongAdder processed;
+		private Thread worker;
+
+		public Shard(int index, int queueDepth) {
+			this.index = index;
+			this.queue = new ArrayBlockingQueue<>(queueDepth);
+			this.processed = new LongAdder();
+		}
+	}
+	
+	private static class Task {
+		
+		private static final Task POISON = new Task(0, 0, null, null, null);
+		
+		private final long sequence;
+		private final int inputId;
+		private final String key;
+		private final JsonNode payload;
+		private final Runnable done;
+		private final CountDownLatch barrier;
+		private final long enqueuedAt;
+
+		public Task(long sequence, int inputId, String key, JsonNode payload, Runnable done) {
+			this.sequence = sequence;
+			this.inputId = inputId;
+			this.key = key;
+			this.payload = payload;
+			this.done = done;
+			this.barrier = null;
+			this.enqueuedAt = System.nanoTime();
+		}
+		
+		public Task(CountDownLatch barrier) {
+			this.sequence = 0;
+			this.inputId = 0;
+			this.key = null;
+			this.payload = null;
+			this.done = null;
+			this.barrier = barrier;
+			this.enqueuedAt = System.nanoTime();
+		}
+	}
+	
+	/**
+	 * Calls back once the payload went through all its streams, and each of its 
+	 * results was settled (one count per result, plus one for the shard).
+	 */
+	private static class Completion implements Runnable {
+		
+		private final Runnable done;
+		private final AtomicInteger remaining = new AtomicInteger(1);
+
+		private Completion(Runnable done) {
+			this.done = done;
+		}
+		
+		private void expect() {
+			remaining.incrementAndGet();
+		}
+
+		@Override
+		public void run() {
+			if (remaining.decrementAndGet() == 0) {
+				done.run();
+			}
+		}
+	}
+	
+	/**
+	 * Lifecycle state and counters of a stream (created on first use).
+	 */
+	private static class StreamControl {
+		
+		private volatile State state = State.RUNNING;
+		private volatile long drainSequence;
+		private volatile String lastError;
+		private final LongAdder processed = new LongAdder();
+		private final LongAdder skipped = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		
+		boolean accepts(long sequence) {
+			
+			State s = state;
+			return s == State.RUNNING || (s == State.DRAINING && sequence <= drainSequence);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import la.alsocan.symbiot.access.BindingDao;
+import la.alsocan.symbiot.access.DriverChange;
+import la.alsocan.symbiot.access.DriverDao;
+import la.alsocan.symbiot.access.InputDao;
+import la.alsocan.symbiot.access.OutputDao;
+import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.access.StreamMapper;
+import la.alsocan.symbiot.api.to.StreamTo;
+import la.alsocan.symbiot.api.to.bindings.BindingTo;
+import la.alsocan.symbiot.api.to.inputs.InputTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory registry of compiled streams (and of their inputs and outputs), 
+ * indexed by input.
+ * <p>
+ * Reads are lock-free and never hit the database, so that payloads can be 
+ * processed without rebuilding transformations. Any code modifying an input, 
+ * an output, a stream or a binding must notify the registry.
+ * 
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class StreamRegistry {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(StreamRegistry.class);
+	private static final int LOAD_PAGE_SIZE = 500;
+	
+	private final BindingDao bindingDao;
+	private final DriverDao driverDao;
+	private final InputDao inputDao;
+	private final OutputDao outputDao;
+	private final StreamDao streamDao;
+	private final SchemaCache schemaCache;
+	
+	private final Map<Integer, InputTo> inputs;
+	private final Map<Integer, OutputTo> outputs;
+	private final Map<Integer, List<Stream>> streamsByInput;
+	private final Map<Integer, Stream> streams;
+	
+	// streams which could not be compiled (retried on each driver change)
+	private final Set<Integer> failed;
+
+	public StreamRegistry(BindingDao bindingDao, DriverDao driverDao, InputDao inputDao, OutputDao outputDao, StreamDao streamDao, SchemaCache schemaCache) {
+		this.bindingDao = bindingDao;
+		this.driverDao = driverDao;
+		this.inputDao = inputDao;
+		this.outputDao = outputDao;
+		this.streamDao = streamDao;
+		this.schemaCache = schemaCache;
+		this.inputs = new ConcurrentHashMap<>();
+		this.outputs = new ConcurrentHashMap<>();
+		this.streamsByInput = new ConcurrentHashMap<>();
+		this.streams = new ConcurrentHashMap<>();
+		this.failed = ConcurrentHashMap.newKeySet();
+	}
+	
+	/**
+	 * (Re)load all inputs, outputs and streams from the database.
+	 */
+	public synchronized void loadAll() {
+		
+		inputs.clear();
+		outputs.clear();
+		streamsByInput.clear();
+		streams.clear();
+		failed.clear();
+		inputDao.findAll().stream().forEach((inputTo) -> {
+			inputs.put(inputTo.getId(), inputTo);
+		});
+		outputDao.findAll().stream().forEach((outputTo) -> {
+			outputs.put(outputTo.getId(), outputTo);
+		});
+		
+		// bindings are loaded in batch (one page of streams at a time)
+		int count = 0;
+		int cursor = 0;
+		List<StreamTo> page;
+		do {
+			page = streamDao.findPage(cursor, LOAD_PAGE_SIZE);
+			Map<Integer, List<BindingTo>> bindings = bindingDao.findAllByStreams(
+					  page.stream().map(StreamTo::getId).collect(Collectors.toList()));
+			for (StreamTo streamTo : page) {
+				Stream s = compile(streamTo, inputs.get(streamTo.getInputId()), outputs.get(streamTo.getOutputId()), 
+						  bindings.getOrDefault(streamTo.getId(), Collections.emptyList()));
+				if (s != null) {
+					
+					// streams stored before unbound nodes were tracked
+					if (streamTo.getUnboundNodes() == null) {
+						streamDao.updateUnboundNodes(s.getId(), StreamMapper.encodeNodes(s.unboundNodes()));
+					}
+					register(s);
+					count++;
+				} else {
+					failed.add(streamTo.getId());
+				}
+				cursor = streamTo.getId();
+			}
+		} while (page.size() == LOAD_PAGE_SIZE);
+		LOG.info("Loaded " + count + " stream(s) for " + inputs.size() + " input(s)");
+	}
+	
+	public InputTo findInput(int inputId) {
+		return inputs.get(inputId);
+	}
+	
+	public Collection<InputTo> findAllInputs() {
+		return Collections.unmodifiableCollection(inputs.values());
+	}
+	
+	public OutputTo findOutput(int outputId) {
+		return outputs.get(outputId);
+	}
+	
+	/**
+	 * @param inputId The input id
+	 * @return The (immutable) list of compiled streams fed by the given input
+	 */
+	public List<Stream> findByInput(int inputId) {
+		return streamsByInput.getOrDefault(inputId, Collections.emptyList());
+	}
+	
+	/**
+	 * @param streamId The stream id
+	 * @return The compiled stream (not to be modified), or null if unknown
+	 */
+	public Stream findStream(int streamId) {
+		return streams.get(streamId);
+	}
+	
+	/**
+	 * Reload an input from the database (or forget it, if it was deleted).
+	 * @param inputId The input id
+	 */
+	public synchronized void refreshInput(int inputId) {
+		
+		InputTo inputTo = inputDao.findById(inputId);
+		if (inputTo == null) {
+			inputs.remove(inputId);
+		} else {
+			inputs.put(inputId, inputTo);
+		}
+	}
+	
+	/**
+	 * Reload an output from the database (or forget it, if it was deleted).
+	 * @param outputId The output id
+	 */
+	public synchronized void refreshOutput(int outputId) {
+		
+		OutputTo outputTo = outputDao.findById(outputId);
+		if (outputTo == null) {
+			outputs.remove(outputId);
+		} else {
+			outputs.put(outputId, outputTo);
+		}
+	}
+	
+	/**
+	 * Recompile a stream from the database (or forget it, if it was deleted).
+	 * @param streamId The stream id
+	 */
+	public synchronized void refreshStream(int streamId) {
+		
+		refresh(streamId);
+	}
+	
+	private Stream refresh(int streamId) {
+		
+		StreamTo streamTo = streamDao.findById(streamId);
+		Stream s;
+		try {
+			s = streamTo == null ? null : compile(streamTo);
+		} catch (RuntimeException ex) {
+			remove(streamId);
+			failed.add(streamId);
+			throw ex;
+		}
+		if (s == null) {
+			remove(streamId);
+			if (streamTo != null) {
+				failed.add(streamId);
+			}
+		} else {
+			register(s);
+		}
+		return s;
+	}
+	
+	/**
+	 * Recompile the streams whose input or output definition changed (streams 
+	 * which could not be compiled before are retried), and store their unbound 
+	 * nodes (the target schema may have changed).
+	 * @param change The driver changes
+	 */
+	public synchronized void recompile(DriverChange change) {
+		
+		Set<Integer> streamIds = new TreeSet<>(failed);
+		inputs.values().stream()
+				  .filter((i) -> change.isInputDefinitionChanged(i.getDriverId(), i.getInputDefinitionId()))
+				  .forEach((i) -> streamDao.findByInput(i.getId()).forEach((to) -> streamIds.add(to.getId())));
+		outputs.values().stream()
+				  .filter((o) -> change.isOutputDefinitionChanged(o.getDriverId(), o.getOutputDefinitionId()))
+				  .forEach((o) -> streamDao.findByOutput(o.getId()).forEach((to) -> streamIds.add(to.getId())));
+		streamIds.forEach((streamId) -> {
+			try {
+				Stream s = refresh(streamId);
+				if (s != null) {
+					streamDao.updateUnboundNodes(streamId, StreamMapper.encodeNodes(s.unboundNodes()));
+				}
+			} catch (RuntimeException ex) {
+				
+				// ex: a binding which is not legal anymore
+				LOG.warn("Stream '" + streamId + "' could not be recompiled: " + ex.getMessage());
+			}
+		});
+		if (!streamIds.isEmpty()) {
+			LOG.info("Recompiled " + streamIds.size() + " stream(s) after a driver change");
+		}
+	}
+	
+	/**
+	 * Register a compiled stream, replacing any previous version of it.
+	 * @param s The stream (must reflect what is stored in the database)
+	 */
+	public synchronized void register(Stream s) {
+		
+		remove(s.getId());
+		List<Stream> inputStreams = new ArrayList<>(findByInput(s.getInputId()));
+		inputStreams.add(s);
+		streamsByInput.put(s.getInputId(), Collections.unmodifiableList(inputStreams));
+		streams.put(s.getId(), s);
+	}
+	
+	public synchronized void remove(int streamId) {
+		
+		failed.remove(streamId);
+		Stream previous = streams.remove(streamId);
+		if (previous == null) {
+			return;
+		}
+		List<Stream> inputStreams = new ArrayList<>(findByInput(previous.getInputId()));
+		inputStreams.removeIf((s) -> s.getId() == streamId);
+		if (inputStreams.isEmpty()) {
+			streamsByInput.remove(previous.getInputId());
+		} else {
+			streamsByInput.put(previous.getInputId(), Collections.unmodifiableList(inputStreams));
+		}
+	}
+	
+	private Stream compile(StreamTo streamTo) {
+		return compile(streamTo, inputDao.findById(streamTo.getInputId()), outputDao.findById(streamTo.getOutputId()), 
+				  bindingDao.findAll(streamTo.getId()));
+	}
+	
+	private Stream compile(StreamTo streamTo, InputTo inputTo, OutputTo outputTo, List<BindingTo> bindings) {
+		
+		Stream s = StreamBuilder.build(streamTo, inputTo, outputTo, driverDao, schemaCache, bindings);
+		if (s == null) {
+			LOG.warn("Stream '" + streamTo.getId() + "' could not be compiled (missing driver or definition)");
+		}
+		return s;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Florian Poulin - https://github.com/fpoulin.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package la.alsocan.symbiot.core.streams;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration of the stream runtime.
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class StreamRuntimeConfiguration {
+	
+	// 0 means one shard per available core
+	@Min(0)
+	@JsonProperty
+	private int shards = 0;
+	
+	@Min(1)
+	@JsonProperty
+	private int queueDepth = 1024;
+	
+	@NotNull
+	@JsonProperty
+	private Duration maxBlockTime = Duration.milliseconds(100);
+	
+	@NotNull
+	@JsonProperty
+	private Duration drainTimeout = Duration.seconds(10);
+
+	public int getShards() {
+		return shards;
+	}
+
+	public void setShards(int shards) {
+		this.shards = shards;
+	}
+	
+	/**
+	 * @return The actual number of shards (resolves the default)
+	 */
+	public int resolveShards() {
+		return shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public Duration getMaxBlockTime() {
+		return maxBlockTime;
+	}
+
+	public void setMaxBlockTime(Duration maxBlockTime) {
+		this.maxBlockTime = maxBlockTime;
+	}
+
+	public Duration getDrainTimeout() {
+		return drainTimeout;
+	}
+
+	public void setDrainTimeout(Duration drainTimeout) {
+		this.drainTimeout = drainTimeout;
+	}
+}
@@ -0,0 +1,116 @@
+package la.alsocan.symbiot.access.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import la.alsocan.symbiot.access.BindingDao;
+import la.alsocan.symbiot.access.InputDao;
+import la.alsocan.symbiot.access.OutputDao;
+import la.alsocan.symbiot.access.StreamDao;
+import la.alsocan.symbiot.access.storage.Migration.Step;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class SchemaMigratorTest {
+	
+	private static int databases = 0;
+	private Connection c;
+	
+	@Before
+	public void setUp() throws Exception {
+		c = DriverManager.getConnection("jdbc:h2:mem:migrator" + (databases++));
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		c.close();
+	}
+	
+	@Test
+	public void emptyDatabaseShouldBeFullyMigrated() throws Exception {
+		
+		SchemaMigrator migrator = new SchemaMigrator();
+		assertThat(migrator.migrate(c), is(equalTo(migrator.getLatestVersion())));
+		assertThat(migrator.currentVersion(c), is(equalTo(migrator.getLatestVersion())));
+		assertTrue(SchemaMigrator.hasIndex(c.getMetaData(), BindingDao.TABLE_NAME, BindingDao.TARGET_INDEX));
+		
+		// nothing left to do
+		assertThat(migrator.migrate(c), is(equalTo(0)));
+	}
+	
+	@Test
+	public void legacyDatabaseShouldBeBaselined() throws Exception {
+		
+		// tables created by drop-and-create-db, before migrations existed
+		try (Statement s = c.createStatement()) {
+			s.executeUpdate(InputDao.DDL);
+			s.executeUpdate(OutputDao.DDL);
+			s.executeUpdate(StreamDao.DDL);
+			s.executeUpdate(BindingDao.DDL);
+		}
+		
+		SchemaMigrator migrator = new SchemaMigrator();
+		assertThat(migrator.currentVersion(c), is(equalTo(1)));
+		assertThat(migrator.migrate(c), is(equalTo(migrator.getLatestVersion() - 1)));
+		assertTrue(SchemaMigrator.hasColumn(c.getMetaData(), StreamDao.TABLE_NAME, "unboundNodes"));
+	}
+	
+	@Test
+	public void failedMigrationShouldStopAndNotBeRecorded() throws Exception {
+		
+		SchemaMigrator migrator = new SchemaMigrator(Arrays.asList(
+			new Migration(1, "ok", (meta) -> false, "CREATE TABLE a (id INTEGER)"),
+			new Migration(2, "broken", (meta) -> false, "INSERT INTO a VALUES (1)", "NOT SQL"),
+			new Migration(3, "never", (meta) -> false, "CREATE TABLE c (id INTEGER)")));
+		try {
+			migrator.migrate(c);
+			fail("Expected the second migration to fail");
+		} catch (SQLException ex) {
+			// expected
+		}
+		assertThat(migrator.currentVersion(c), is(equalTo(1)));
+		assertFalse(SchemaMigrator.hasTable(c.getMetaData(), "c"));
+		try (Statement s = c.createStatement(); 
+				  ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM a")) {
+			rs.next();
+			assertThat(rs.getInt(1), is(equalTo(0)));
+		}
+	}
+	
+	@Test
+	public void partiallyAppliedMigrationShouldBeRetried() throws Exception {
+		
+		// H2 commits the DDL statement before the failure, the rollback cannot undo it
+		Step createB = new Step((meta) -> SchemaMigrator.hasTable(meta, "b"), "CREATE TABLE b (id INTEGER)");
+		SchemaMigrator broken = new SchemaMigrator(Arrays.asList(
+			new Migration(1, "broken", (meta) -> false, createB, new Step((meta) -> false, "NOT SQL"))));
+		try {
+			broken.migrate(c);
+			fail("Expected the migration to fail");
+		} catch (SQLException ex) {
+			// expected
+		}
+		assertThat(broken.currentVersion(c), is(equalTo(0)));
+		assertTrue(SchemaMigrator.hasTable(c.getMetaData(), "b"));
+		
+		// the step already applied is skipped
+		SchemaMigrator fixed = new SchemaMigrator(Arrays.asList(
+			new Migration(1, "fixed", (meta) -> false, createB, 
+					  new Step((meta) -> false, "CREATE TABLE d (id INTEGER)"))));
+		assertThat(fixed.migrate(c), is(equalTo(1)));
+		assertTrue(SchemaMigrator.hasTable(c.getMetaData(), "d"));
+	}
+}
@@ -0,0 +1,68 @@
+package la.alsocan.symbiot.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Random;
+import la.alsocan.symbiot.cli.PayloadGenerator.Variant;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class PayloadGeneratorTest {
+	
+	private static final String SCHEMA = "{"
+			  + "\"type\": \"object\","
+			  + "\"properties\": {"
+			  + "  \"id\": {\"type\": \"string\", \"minLength\": 4, \"maxLength\": 8},"
+			  + "  \"level\": {\"type\": \"integer\", \"minimum\": 1, \"maximum\": 5},"
+			  + "  \"unit\": {\"enum\": [\"C\", \"F\"]},"
+			  + "  \"readings\": {\"type\": \"array\", \"minItems\": 2, \"items\": {\"type\": \"number\"}}"
+			  + "},"
+			  + "\"required\": [\"id\", \"readings\"]}";
+	
+	@Test
+	public void payloadsShouldFollowTheSchema() throws Exception {
+		
+		ObjectMapper om = new ObjectMapper();
+		PayloadGenerator generator = new PayloadGenerator(om, om.readTree(SCHEMA));
+		Random random = new Random(42);
+		for (int i = 0; i < 100; i++) {
+			JsonNode full = generator.generate(Variant.FULL, random);
+			assertThat(full.size(), is(equalTo(4)));
+			assertTrue(full.get("id").asText().length() >= 4 && full.get("id").asText().length() <= 8);
+			assertTrue(full.get("level").asInt() >= 1 && full.get("level").asInt() <= 5);
+			assertTrue(full.get("unit").asText().matches("C|F"));
+			assertTrue(full.get("readings").size() >= 2);
+			assertTrue(full.get("readings").get(0).isNumber());
+		}
+		
+		JsonNode minimal = generator.generate(Variant.MINIMAL, random);
+		assertThat(minimal.size(), is(equalTo(2)));
+		assertThat(minimal.get("readings").size(), is(equalTo(2)));
+		
+		JsonNode invalid = generator.generate(Variant.INVALID, random);
+		assertFalse(invalid.has("id"));
+	}
+	
+	@Test
+	public void mixShouldBeParsedAsWeights() throws Exception {
+		
+		int[] weights = BenchPushCommand.parseMix("full:80, invalid:20");
+		assertThat(weights[Variant.FULL.ordinal()], is(equalTo(80)));
+		assertThat(weights[Variant.MINIMAL.ordinal()], is(equalTo(0)));
+		assertThat(weights[Variant.INVALID.ordinal()], is(equalTo(20)));
+		assertThat(BenchPushCommand.pick(weights, new Random()), is(not(Variant.MINIMAL)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownVariantsShouldBeRejected() throws Exception {
+		BenchPushCommand.parseMix("full:80,huge:20");
+	}
+}
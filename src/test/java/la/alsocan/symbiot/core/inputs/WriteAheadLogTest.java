@@ -0,0 +1,144 @@
+package la.alsocan.symbiot.core.inputs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.util.Size;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.metrics.StageMetricsConfiguration;
+import la.alsocan.symbiot.core.streams.StreamExecutor;
+import la.alsocan.symbiot.core.streams.StreamRuntimeConfiguration;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class WriteAheadLogTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ObjectMapper om = new ObjectMapper();
+	private final List<JsonNode> replayed = new ArrayList<>();
+	private WriteAheadLogConfiguration conf;
+	private StreamExecutor executor;
+	
+	@Before
+	public void setUp() throws Exception {
+		conf = new WriteAheadLogConfiguration();
+		conf.setFolder(folder.getRoot().getPath());
+		conf.setSegmentSize(Size.megabytes(1));
+		
+		// records what is replayed and completes it right away
+		executor = new StreamExecutor(new StreamRuntimeConfiguration(), null, null, null, null, new MetricRegistry()) {
+			@Override
+			public boolean submitAndWait(int inputId, String key, JsonNode payload, Runnable done) {
+				replayed.add(payload);
+				done.run();
+				return true;
+			}
+		};
+	}
+	
+	@Test
+	public void completedPayloadsShouldNotBeReplayed() throws Exception {
+		
+		WriteAheadLog wal = start();
+		for (int i = 0; i < 3; i++) {
+			long sequence = wal.append(1, "device", payload(i));
+			wal.awaitSync(sequence);
+			wal.complete(sequence);
+		}
+		wal.stop();
+		
+		start().recover();
+		assertThat(replayed.size(), is(equalTo(0)));
+	}
+	
+	@Test
+	public void undeliveredPayloadsShouldBeReplayedAfterCrash() throws Exception {
+		
+		WriteAheadLog wal = start();
+		wal.append(1, null, payload(0));
+		wal.awaitSync(wal.append(1, "device", payload(1)));
+		
+		// no stop (crash)
+		WriteAheadLog recovered = start();
+		recovered.recover();
+		assertThat(replayed.size(), is(equalTo(2)));
+		assertThat(replayed.get(0).get("i").asInt(), is(equalTo(0)));
+		assertThat(replayed.get(1).get("i").asInt(), is(equalTo(1)));
+		
+		// replayed payloads are completed, so they are not replayed twice
+		recovered.stop();
+		replayed.clear();
+		start().recover();
+		assertThat(replayed.size(), is(equalTo(0)));
+	}
+	
+	@Test
+	public void tornRecordShouldBeIgnored() throws Exception {
+		
+		WriteAheadLog wal = start();
+		wal.append(1, null, payload(0));
+		wal.awaitSync(wal.append(1, null, payload(1)));
+		
+		// corrupt the last byte of the second record
+		Path segment = folder.getRoot().toPath().resolve("wal-00000000000000000001.log");
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer length = ByteBuffer.allocate(4);
+			channel.read(length, 0);
+			int second = 8 + length.getInt(0);
+			channel.read(length, second);
+			long last = second + 8 + length.getInt(0) - 1;
+			channel.write(ByteBuffer.wrap(new byte[]{'x'}), last);
+		}
+		
+		start().recover();
+		assertThat(replayed.size(), is(equalTo(1)));
+		assertThat(replayed.get(0).get("i").asInt(), is(equalTo(0)));
+	}
+	
+	@Test
+	public void unreadableSegmentShouldNotBlockTheCheckpoint() throws Exception {
+		
+		WriteAheadLog wal = start();
+		wal.append(1, null, payload(0));
+		wal.awaitSync(wal.append(1, null, payload(1)));
+		
+		// no stop (crash), then the segment cannot be read anymore
+		WriteAheadLog recovered = start();
+		Files.delete(folder.getRoot().toPath().resolve("wal-00000000000000000001.log"));
+		recovered.recover();
+		recovered.stop();
+		assertThat(replayed.size(), is(equalTo(0)));
+		String checkpoint = new String(Files.readAllBytes(folder.getRoot().toPath().resolve("checkpoint")), 
+				  StandardCharsets.UTF_8);
+		assertThat(Long.parseLong(checkpoint.trim()), is(equalTo(2L)));
+	}
+	
+	private WriteAheadLog start() throws Exception {
+		WriteAheadLog wal = new WriteAheadLog(conf, om, executor, 
+				  new StageMetrics(new StageMetricsConfiguration(), new MetricRegistry()), new MetricRegistry());
+		wal.start();
+		return wal;
+	}
+	
+	private JsonNode payload(int i) {
+		return om.createObjectNode().put("i", i);
+	}
+}
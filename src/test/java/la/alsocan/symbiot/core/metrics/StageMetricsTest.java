@@ -0,0 +1,53 @@
+package la.alsocan.symbiot.core.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class StageMetricsTest {
+	
+	@Test
+	public void idsBeyondTheCapShouldShareMetrics() throws Exception {
+		
+		StageMetricsConfiguration conf = new StageMetricsConfiguration();
+		conf.setMaxInputs(2);
+		MetricRegistry registry = new MetricRegistry();
+		StageMetrics metrics = new StageMetrics(conf, registry);
+		
+		assertThat(metrics.input(1), is(sameInstance(metrics.input(1))));
+		assertThat(metrics.input(1), is(not(sameInstance(metrics.input(2)))));
+		assertThat(metrics.input(3), is(sameInstance(metrics.input(4))));
+		assertThat(metrics.input(1), is(not(sameInstance(metrics.input(3)))));
+		
+		// 3 sets of 4 timers
+		assertThat(registry.getTimers().size(), is(equalTo(12)));
+		assertTrue(registry.getTimers().containsKey("symbiot.inputs.other.parse"));
+	}
+	
+	@Test
+	public void removedIdsShouldFreeTheirSlot() throws Exception {
+		
+		StageMetricsConfiguration conf = new StageMetricsConfiguration();
+		conf.setMaxStreams(1);
+		MetricRegistry registry = new MetricRegistry();
+		StageMetrics metrics = new StageMetrics(conf, registry);
+		
+		StageMetrics.StreamStages first = metrics.stream(1);
+		metrics.removeStream(1);
+		assertFalse(registry.getTimers().containsKey("symbiot.streams.1.transformation"));
+		
+		// the next stream gets its own metrics
+		assertThat(metrics.stream(2), is(not(sameInstance(first))));
+		assertTrue(registry.getTimers().containsKey("symbiot.streams.2.transformation"));
+		assertThat(registry.getTimers().size(), is(equalTo(1)));
+	}
+}
@@ -0,0 +1,164 @@
+package la.alsocan.symbiot.core.outputs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.dropwizard.util.Duration;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import la.alsocan.symbiot.api.to.DeadLetterTo;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.api.to.outputs.WebhookOutputTo;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.metrics.StageMetricsConfiguration;
+import la.alsocan.symbiot.core.streams.DeadLetterConfiguration;
+import la.alsocan.symbiot.core.streams.DeadLetterStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class OutputDispatcherTest {
+	
+	private static final int STREAM_ID = 10;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ObjectMapper om = new ObjectMapper();
+	private final MetricRegistry metrics = new MetricRegistry();
+	private final List<List<JsonNode>> delivered = new CopyOnWriteArrayList<>();
+	private final Random random = new Random();
+	private volatile boolean failing;
+	private DeadLetterStore deadLetterStore;
+	private OutputDispatcher dispatcher;
+	
+	@Before
+	public void setUp() throws Exception {
+		DeadLetterConfiguration conf = new DeadLetterConfiguration();
+		conf.setFolder(folder.getRoot().getPath());
+		deadLetterStore = new DeadLetterStore(conf, om, metrics);
+		deadLetterStore.start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		dispatcher.stop();
+		deadLetterStore.stop();
+	}
+	
+	@Test
+	public void resultsOfAKeyShouldBeDeliveredInOrder() throws Exception {
+		
+		start(1, Duration.milliseconds(0));
+		String[] keys = {"a", "b", "c", "d", "e", "f"};
+		CountDownLatch settled = new CountDownLatch(keys.length * 50);
+		for (int i = 0; i < 50; i++) {
+			for (String key : keys) {
+				assertTrue(dispatcher.dispatch(STREAM_ID, key, output(), result(i).put("key", key), settled::countDown));
+			}
+		}
+		
+		assertTrue(settled.await(10, TimeUnit.SECONDS));
+		Map<String, Integer> last = new HashMap<>();
+		for (List<JsonNode> results : delivered) {
+			JsonNode result = results.get(0);
+			int previous = last.getOrDefault(result.get("key").asText(), -1);
+			assertThat(result.get("i").asInt(), is(equalTo(previous + 1)));
+			last.put(result.get("key").asText(), previous + 1);
+		}
+	}
+	
+	@Test
+	public void resultsShouldBeBatchedWithinTheWindow() throws Exception {
+		
+		start(3, Duration.milliseconds(200));
+		CountDownLatch settled = new CountDownLatch(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(dispatcher.dispatch(STREAM_ID, null, output(), result(i), settled::countDown));
+		}
+		
+		assertTrue(settled.await(5, TimeUnit.SECONDS));
+		assertThat(delivered.size(), is(equalTo(2)));
+		assertThat(delivered.get(0).size(), is(equalTo(3)));
+		assertThat(delivered.get(1).get(0).get("i").asInt(), is(equalTo(3)));
+	}
+	
+	@Test
+	public void failedBatchesShouldBeDeadLettered() throws Exception {
+		
+		failing = true;
+		start(2, Duration.seconds(1));
+		CountDownLatch settled = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			assertTrue(dispatcher.dispatch(STREAM_ID, null, output(), result(i), settled::countDown));
+		}
+		
+		assertTrue(settled.await(5, TimeUnit.SECONDS));
+		List<DeadLetterTo> tos = deadLetterStore.find(STREAM_ID, 0, 10);
+		assertThat(tos.size(), is(equalTo(2)));
+		assertThat(tos.get(1).getStage(), is(equalTo(DeadLetterStore.Stage.DELIVERY.name())));
+		assertThat(tos.get(1).getPayload().get("i").asInt(), is(equalTo(1)));
+	}
+	
+	private void start(int batchSize, Duration batchWindow) throws Exception {
+		
+		OutputHandler handler = new OutputHandler() {
+			@Override
+			public void handle(OutputTo output, JsonNode result) throws Exception {
+				handle(output, Collections.singletonList(result));
+			}
+			
+			@Override
+			public void handle(OutputTo output, List<JsonNode> results) throws Exception {
+				if (failing) {
+					throw new IOException("unreachable");
+				}
+				delivered.add(results);
+				Thread.sleep(random.nextInt(2));
+			}
+			
+			@Override
+			public int getBatchSize() {
+				return batchSize;
+			}
+			
+			@Override
+			public Duration getBatchWindow() {
+				return batchWindow;
+			}
+		};
+		StageMetrics stageMetrics = new StageMetrics(new StageMetricsConfiguration(), metrics);
+		DispatchConfiguration conf = new DispatchConfiguration();
+		conf.setMaxConcurrencyPerOutput(4);
+		dispatcher = new OutputDispatcher(conf, handler, deadLetterStore, stageMetrics, metrics);
+		dispatcher.start();
+	}
+	
+	private OutputTo output() {
+		
+		OutputTo to = new WebhookOutputTo();
+		to.setId(1);
+		return to;
+	}
+	
+	private ObjectNode result(int i) {
+		return om.createObjectNode().put("i", i);
+	}
+}
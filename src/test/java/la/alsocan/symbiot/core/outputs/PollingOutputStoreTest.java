@@ -0,0 +1,117 @@
+package la.alsocan.symbiot.core.outputs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.util.Size;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import la.alsocan.symbiot.api.to.PollResultTo;
+import la.alsocan.symbiot.api.to.outputs.PollingOutputTo;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertFalse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class PollingOutputStoreTest {
+	
+	private final ObjectMapper om = new ObjectMapper();
+	private PollingConfiguration conf;
+	private PollingOutputStore store;
+	
+	@Before
+	public void setUp() throws Exception {
+		conf = new PollingConfiguration();
+		conf.setMaxEntriesPerOutput(4);
+		store = new PollingOutputStore(conf, om);
+		store.start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		store.stop();
+	}
+	
+	@Test
+	public void cursorShouldAllowIncrementalReads() throws Exception {
+		
+		append(3);
+		PollResultTo first = poll(0, 2, 0);
+		assertThat(first.getResults().size(), is(equalTo(2)));
+		assertThat(first.getCursor(), is(equalTo(2L)));
+		
+		PollResultTo second = poll(first.getCursor(), 10, 0);
+		assertThat(second.getResults().size(), is(equalTo(1)));
+		assertThat(second.getResults().get(0).get("i").asInt(), is(equalTo(2)));
+		assertThat(second.getCursor(), is(equalTo(3L)));
+		
+		PollResultTo third = poll(second.getCursor(), 10, 0);
+		assertThat(third.getResults().size(), is(equalTo(0)));
+		assertThat(third.getCursor(), is(equalTo(3L)));
+	}
+	
+	@Test
+	public void oldestResultsShouldBeEvictedWhenFull() throws Exception {
+		
+		append(6);
+		PollResultTo result = poll(0, 10, 0);
+		assertThat(result.getResults().size(), is(equalTo(4)));
+		assertThat(result.getResults().get(0).get("i").asInt(), is(equalTo(2)));
+		assertThat(result.getCursor(), is(equalTo(6L)));
+	}
+	
+	@Test
+	public void sizeCapShouldBeEnforced() throws Exception {
+		
+		conf.setMaxBytesPerOutput(Size.bytes(16));
+		append(3);
+		PollResultTo result = poll(0, 10, 0);
+		assertThat(result.getResults().size(), is(equalTo(2)));
+	}
+	
+	@Test
+	public void expiredResultsShouldNotBeReturned() throws Exception {
+		
+		PollingOutputTo output = output();
+		output.setTtl(0);
+		store.handle(output, om.createObjectNode().put("i", 0));
+		assertThat(poll(0, 10, 0).getResults().size(), is(equalTo(0)));
+	}
+	
+	@Test
+	public void longPollShouldWakeUpOnNewResult() throws Exception {
+		
+		CompletableFuture<PollResultTo> future = new CompletableFuture<>();
+		store.poll(1, 0, 10, 10000, future::complete);
+		assertFalse(future.isDone());
+		
+		append(1);
+		PollResultTo result = future.get(5, TimeUnit.SECONDS);
+		assertThat(result.getResults().size(), is(equalTo(1)));
+	}
+	
+	private void append(int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			store.handle(output(), om.createObjectNode().put("i", i));
+		}
+	}
+	
+	private PollResultTo poll(long since, int max, long waitMs) throws Exception {
+		
+		CompletableFuture<PollResultTo> future = new CompletableFuture<>();
+		store.poll(1, since, max, waitMs, future::complete);
+		
+		// round-trip through JSON, as a client would see it
+		return om.readValue(om.writeValueAsBytes(future.get(5, TimeUnit.SECONDS)), PollResultTo.class);
+	}
+	
+	private PollingOutputTo output() {
+		PollingOutputTo to = new PollingOutputTo();
+		to.setId(1);
+		return to;
+	}
+}
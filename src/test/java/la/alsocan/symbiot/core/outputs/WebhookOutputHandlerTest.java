@@ -0,0 +1,160 @@
+package la.alsocan.symbiot.core.outputs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.dropwizard.util.Duration;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import la.alsocan.symbiot.api.to.drivers.WebhookOutputDefinitionTo;
+import la.alsocan.symbiot.api.to.outputs.WebhookOutputTo;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class WebhookOutputHandlerTest {
+	
+	private final ObjectMapper om = new ObjectMapper();
+	private final List<JsonNode> received = new CopyOnWriteArrayList<>();
+	private final AtomicInteger failuresToSimulate = new AtomicInteger();
+	private CountDownLatch latch;
+	private WebhookOutputDefinitionTo definition;
+	private HttpServer stub;
+	private WebhookConfiguration conf;
+	private WebhookOutputHandler handler;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// embedded stub, collects (gunzipped) bodies
+		stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		stub.createContext("/hook", (exchange) -> {
+			if (failuresToSimulate.getAndDecrement() > 0) {
+				exchange.sendResponseHeaders(503, -1);
+			} else {
+				boolean gzipped = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+				try (InputStream in = gzipped 
+						  ? new GZIPInputStream(exchange.getRequestBody()) 
+						  : exchange.getRequestBody()) {
+					received.add(om.readTree(in));
+				}
+				exchange.sendResponseHeaders(204, -1);
+			}
+			exchange.close();
+			latch.countDown();
+		});
+		stub.start();
+		
+		conf = new WebhookConfiguration();
+		conf.setInitialBackoff(Duration.milliseconds(10));
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		handler.stop();
+		stub.stop(0);
+	}
+	
+	@Test
+	public void batchesShouldBeSentAsGzippedArrays() throws Exception {
+		
+		conf.setBatchSize(3);
+		conf.setGzip(true);
+		start(1);
+		
+		List<JsonNode> results = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			results.add(om.createObjectNode().put("i", i));
+		}
+		handler.handle(output(), results);
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertThat(received.size(), is(equalTo(1)));
+		assertThat(received.get(0).size(), is(equalTo(3)));
+		assertThat(received.get(0).get(2).get("i").asInt(), is(equalTo(2)));
+	}
+	
+	@Test
+	public void failedCallsShouldBeRetried() throws Exception {
+		
+		failuresToSimulate.set(2);
+		start(3);
+		
+		handler.handle(output(), om.createObjectNode().put("hello", "world"));
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertThat(received.size(), is(equalTo(1)));
+		assertThat(received.get(0).get("hello").asText(), is(equalTo("world")));
+	}
+	
+	@Test
+	public void exhaustedRetriesShouldFailTheDelivery() throws Exception {
+		
+		failuresToSimulate.set(10);
+		conf.setMaxRetries(1);
+		start(2);
+		
+		try {
+			handler.handle(output(), om.createObjectNode().put("hello", "world"));
+			fail("The delivery should have failed");
+		} catch (IOException ex) {
+			assertThat(ex.getMessage().contains("HTTP 503"), is(true));
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertThat(received.isEmpty(), is(true));
+	}
+	
+	@Test
+	public void urlShouldDefaultToTheDefinition() throws Exception {
+		
+		definition = new WebhookOutputDefinitionTo();
+		definition.setUrl("http://localhost:" + stub.getAddress().getPort() + "/hook");
+		start(1);
+		
+		WebhookOutputTo to = output();
+		to.setUrl(null);
+		to.setMethod(null);
+		handler.handle(to, om.createObjectNode().put("hello", "world"));
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertThat(received.size(), is(equalTo(1)));
+	}
+	
+	private void start(int expectedCalls) throws Exception {
+		
+		latch = new CountDownLatch(expectedCalls);
+		handler = new WebhookOutputHandler(conf, null, om, new MetricRegistry()) {
+			@Override
+			protected WebhookOutputDefinitionTo definition(WebhookOutputTo output) {
+				return definition;
+			}
+		};
+		handler.start();
+	}
+	
+	private WebhookOutputTo output() {
+		
+		WebhookOutputTo to = new WebhookOutputTo();
+		to.setId(1);
+		to.setUrl("http://localhost:" + stub.getAddress().getPort() + "/hook");
+		to.setMethod("POST");
+		return to;
+	}
+}
@@ -0,0 +1,130 @@
+package la.alsocan.symbiot.core.streams;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.util.Size;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import la.alsocan.symbiot.api.to.DeadLetterTo;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class DeadLetterStoreTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ObjectMapper om = new ObjectMapper();
+	private DeadLetterConfiguration conf;
+	private DeadLetterStore store;
+	
+	@Before
+	public void setUp() throws Exception {
+		conf = new DeadLetterConfiguration();
+		conf.setFolder(folder.getRoot().getPath());
+		store = start();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		store.stop();
+	}
+	
+	@Test
+	public void entriesShouldBeListedInOrder() throws Exception {
+		
+		add(1, 3);
+		add(2, 1);
+		List<DeadLetterTo> tos = store.find(1, 0, 10);
+		assertThat(tos.size(), is(equalTo(3)));
+		assertThat(tos.get(0).getId(), is(equalTo(1L)));
+		assertThat(tos.get(2).getPayload().get("i").asInt(), is(equalTo(2)));
+		assertThat(tos.get(2).getStage(), is(equalTo(DeadLetterStore.Stage.TRANSFORMATION.name())));
+		
+		List<DeadLetterTo> next = store.find(1, tos.get(1).getId(), 10);
+		assertThat(next.size(), is(equalTo(1)));
+	}
+	
+	@Test
+	public void replayedEntriesShouldNotBeListed() throws Exception {
+		
+		add(1, 3);
+		store.acknowledge(1, 2);
+		
+		// also after a restart (ids keep growing)
+		store.stop();
+		store = start();
+		add(1, 1);
+		List<DeadLetterTo> tos = store.find(1, 0, 10);
+		assertThat(tos.size(), is(equalTo(2)));
+		assertThat(tos.get(0).getId(), is(equalTo(3L)));
+		assertThat(tos.get(1).getId(), is(equalTo(4L)));
+	}
+	
+	@Test
+	public void sizeShouldBeBounded() throws Exception {
+		
+		conf.setMaxBytesPerStream(Size.kilobytes(4));
+		add(1, 200);
+		long size = Files.size(folder.getRoot().toPath().resolve("stream-1.ndjson")) 
+				  + Files.size(folder.getRoot().toPath().resolve("stream-1.1.ndjson"));
+		assertTrue(size <= 4096);
+		
+		// oldest entries were discarded
+		List<DeadLetterTo> tos = store.find(1, 0, 1000);
+		assertTrue(tos.size() < 200);
+		assertThat(tos.get(tos.size() - 1).getId(), is(equalTo(200L)));
+	}
+	
+	@Test
+	public void tornEntryShouldBeDiscarded() throws Exception {
+		
+		add(1, 2);
+		store.stop();
+		
+		// a write interrupted by a crash
+		Files.write(folder.getRoot().toPath().resolve("stream-1.ndjson"), 
+				  "{\"id\":3,\"str".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		store = start();
+		assertThat(store.find(1, 0, 10).size(), is(equalTo(2)));
+		
+		add(1, 1);
+		List<DeadLetterTo> tos = store.find(1, 0, 10);
+		assertThat(tos.size(), is(equalTo(3)));
+		assertThat(tos.get(2).getId(), is(equalTo(3L)));
+	}
+	
+	@Test
+	public void removedStreamsShouldHaveNoEntries() throws Exception {
+		
+		add(1, 3);
+		store.acknowledge(1, 1);
+		store.remove(1);
+		assertThat(store.find(1, 0, 10).isEmpty(), is(true));
+		assertThat(folder.getRoot().list().length, is(equalTo(0)));
+	}
+	
+	private DeadLetterStore start() throws Exception {
+		DeadLetterStore s = new DeadLetterStore(conf, om, new MetricRegistry());
+		s.start();
+		return s;
+	}
+	
+	private void add(int streamId, int count) {
+		for (int i = 0; i < count; i++) {
+			store.add(streamId, DeadLetterStore.Stage.TRANSFORMATION, om.createObjectNode().put("i", i), "boom");
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package la.alsocan.symbiot.core.streams;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import la.alsocan.jsonshapeshifter.Transformation;
+import la.alsocan.jsonshapeshifter.schemas.Schema;
+import la.alsocan.symbiot.api.to.outputs.OutputTo;
+import la.alsocan.symbiot.api.to.outputs.WebhookOutputTo;
+import la.alsocan.symbiot.core.metrics.StageMetrics;
+import la.alsocan.symbiot.core.metrics.StageMetricsConfiguration;
+import la.alsocan.symbiot.core.outputs.DispatchConfiguration;
+import la.alsocan.symbiot.core.outputs.OutputDispatcher;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Florian Poulin - https://github.com/fpoulin
+ */
+public class StreamExecutorTest {
+	
+	private static final int STREAM_ID = 10;
+	private static final int INPUT_ID = 1;
+	private static final int BROKEN_INPUT_ID = 2;
+	
+	private final ObjectMapper om = new ObjectMapper();
+	private final MetricRegistry metrics = new MetricRegistry();
+	private final Map<String, List<Integer>> results = new ConcurrentHashMap<>();
+	private final List<Runnable> unsettled = Collections.synchronizedList(new ArrayList<>());
+	private volatile boolean settle = true;
+	private StreamExecutor executor;
+	
+	@After
+	public void tearDown() throws Exception {
+		executor.stop();
+	}
+	
+	@Test
+	public void payloadsOfAKeyShouldBeProcessedInOrder() throws Exception {
+		
+		executor = start(4);
+		CountDownLatch done = new CountDownLatch(4 * 500);
+		for (int i = 0; i < 500; i++) {
+			for (String key : new String[]{"a", "b", "c", "d"}) {
+				assertTrue(executor.submitAndWait(INPUT_ID, key, payload(key, i), done::countDown));
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (String key : new String[]{"a", "b", "c", "d"}) {
+			List<Integer> received = results.get(key);
+			assertThat(received.size(), is(equalTo(500)));
+			for (int i = 0; i < 500; i++) {
+				assertThat(received.get(i), is(equalTo(i)));
+			}
+		}
+	}
+	
+	@Test
+	public void pausedDrainedAndStoppedStreamsShouldSkipPayloads() throws Exception {
+		
+		executor = start(2);
+		executor.pause(STREAM_ID);
+		process(3);
+		assertThat(executor.status(STREAM_ID).getSkipped(), is(equalTo(3L)));
+		
+		executor.start(STREAM_ID);
+		process(2);
+		assertThat(executor.status(STREAM_ID).getProcessed(), is(equalTo(2L)));
+		
+		// stopped once every shard went past the payloads submitted before
+		executor.drain(STREAM_ID);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (executor.getState(STREAM_ID) != StreamExecutor.State.STOPPED && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(executor.getState(STREAM_ID), is(equalTo(StreamExecutor.State.STOPPED)));
+		process(1);
+		assertThat(executor.status(STREAM_ID).getSkipped(), is(equalTo(4L)));
+		
+		executor.start(STREAM_ID);
+		executor.stop(STREAM_ID);
+		process(1);
+		assertThat(executor.status(STREAM_ID).getSkipped(), is(equalTo(5L)));
+		assertThat(executor.status(STREAM_ID).getProcessed(), is(equalTo(2L)));
+	}
+	
+	@Test
+	public void shardShouldSurviveAFailingTask() throws Exception {
+		
+		executor = start(1);
+		assertTrue(executor.submit(BROKEN_INPUT_ID, null, payload("a", 0)));
+		assertTrue(executor.submit(INPUT_ID, null, payload("a", 1), () -> {
+			throw new IllegalStateException("failing callback");
+		}));
+		process(1);
+		assertThat(executor.status(STREAM_ID).getProcessed(), is(equalTo(2L)));
+		assertThat(metrics.meter(MetricRegistry.name(StreamExecutor.class, "errors")).getCount(), is(equalTo(2L)));
+	}
+	
+	@Test
+	public void doneShouldBeCalledWhenAPayloadFails() throws Exception {
+		
+		executor = start(1);
+		CountDownLatch done = new CountDownLatch(1);
+		assertTrue(executor.submit(BROKEN_INPUT_ID, null, payload("a", 0), done::countDown));
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void doneShouldWaitForTheResultsToBeSettled() throws Exception {
+		
+		executor = start(1);
+		settle = false;
+		CountDownLatch done = new CountDownLatch(1);
+		assertTrue(executor.submit(INPUT_ID, null, payload("a", 0), done::countDown));
+		long deadline = System.currentTimeMillis() + 10000;
+		while (unsettled.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(unsettled.size(), is(equalTo(1)));
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		
+		// the output worker delivered the result
+		unsettled.get(0).run();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+	
+	private StreamExecutor start(int shards) throws Exception {
+		
+		Schema schema = Schema.buildSchema(om.readTree("{\"type\":\"object\"}"));
+		Stream stream = new Stream(STREAM_ID, INPUT_ID, 1, new Transformation(schema, schema) {
+			@Override
+			public JsonNode apply(JsonNode payload) {
+				return payload;
+			}
+		});
+		OutputTo outputTo = new WebhookOutputTo();
+		outputTo.setId(1);
+		
+		StreamRegistry registry = new StreamRegistry(null, null, null, null, null, null) {
+			@Override
+			public List<Stream> findByInput(int inputId) {
+				if (inputId == BROKEN_INPUT_ID) {
+					throw new IllegalStateException("broken input");
+				}
+				return inputId == INPUT_ID ? Collections.singletonList(stream) : Collections.emptyList();
+			}
+			
+			@Override
+			public OutputTo findOutput(int outputId) {
+				return outputTo;
+			}
+		};
+		StageMetrics stageMetrics = new StageMetrics(new StageMetricsConfiguration(), metrics);
+		OutputDispatcher dispatcher = new OutputDispatcher(new DispatchConfiguration(), null, null, stageMetrics, metrics) {
+			@Override
+			public boolean dispatch(int streamId, String key, OutputTo output, JsonNode result, Runnable settled) {
+				results.computeIfAbsent(result.get("key").asText(), (k) -> Collections.synchronizedList(new ArrayList<>()))
+						  .add(result.get("i").asInt());
+				if (settled != null && settle) {
+					settled.run();
+				} else if (settled != null) {
+					unsettled.add(settled);
+				}
+				return true;
+			}
+		};
+		
+		StreamRuntimeConfiguration conf = new StreamRuntimeConfiguration();
+		conf.setShards(shards);
+		StreamExecutor e = new StreamExecutor(conf, registry, dispatcher, null, stageMetrics, metrics);
+		e.start();
+		return e;
+	}
+	
+	private void process(int count) throws Exception {
+		
+		CountDownLatch done = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			assertTrue(executor.submitAndWait(INPUT_ID, null, payload("z", i), done::countDown));
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+	
+	private JsonNode payload(String key, int i) {
+		return om.createObjectNode().put("key", key).put("i", i);
+	}
+}